@@ -0,0 +1,776 @@
+package mc.sbm.OperaWebSocket.client;
+
+import mc.sbm.OperaWebSocket.config.OracleHospitalityConfig;
+import mc.sbm.OperaWebSocket.service.OffsetCheckpointService;
+import mc.sbm.OperaWebSocket.service.StreamingMetrics;
+import mc.sbm.OperaWebSocket.websocket.AssembledMessage;
+import mc.sbm.OperaWebSocket.websocket.BufferPool;
+import mc.sbm.OperaWebSocket.websocket.GraphQLWSProtocolHandler;
+import mc.sbm.OperaWebSocket.websocket.MessageAssembler;
+import mc.sbm.OperaWebSocket.websocket.MessageIngestQueue;
+import mc.sbm.OperaWebSocket.websocket.OracleEventMessageProcessor;
+import mc.sbm.OperaWebSocket.websocket.WebSocketConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Streaming session of a single chain.
+ * <p>
+ * Owns the chain's WebSocket session, GraphQL-WS protocol state, message assembler, ingest
+ * queue and reconnect state. The WebSocket container, scheduler, processing executor, buffer
+ * pool and Kafka producer are shared with the other chains of the same
+ * {@link OracleHospitalityStreamingClient}.
+ * <p>
+ * Connecting never blocks the caller: the handshake runs on the WebSocket client's executor and
+ * each attempt is a future completed once the subscription is sent. The session lock only guards
+ * state transitions; every transition to DISCONNECTED bumps a generation counter, so callbacks of
+ * an abandoned attempt or a replaced session are recognised and ignored.
+ * <p>
+ * With a hot {@link StandbyConnection}, a lost connection is replaced by the standby, which only
+ * needs the subscription; the standby's callbacks arrive on this handler and are routed to it.
+ */
+public class ChainStreamingSession extends AbstractWebSocketHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChainStreamingSession.class);
+    private static final String PROTOCOL = "graphql-transport-ws";
+    private static final long HANDSHAKE_TIMEOUT_SECONDS = 30;
+    private static final long COMPLETE_GRACE_MILLIS = 500;
+
+    /**
+     * Lifecycle of the chain's connection
+     */
+    public enum ConnectionState {
+        DISCONNECTED,
+        /** WebSocket handshake in progress */
+        CONNECTING,
+        /** connection_init sent, waiting for connection_ack */
+        AWAITING_ACK,
+        /** Subscription sent, events streaming */
+        SUBSCRIBED
+    }
+
+    private final OracleHospitalityConfig config;
+    private final OracleHospitalityConfig.ChainConfig chain;
+    private final OracleEventMessageProcessor messageProcessor;
+    private final OffsetCheckpointService checkpointService;
+    private final StreamingMetrics metrics;
+    private final ScheduledExecutorService scheduler;
+    private final WebSocketConnectionManager connectionManager;
+    private final GraphQLWSProtocolHandler protocolHandler;
+    private final MessageAssembler messageAssembler;
+    private final MessageIngestQueue ingestQueue;
+    private final ReconnectScheduler reconnects;
+    private final KeepAliveManager keepAlive;
+    private final StandbyConnection standby;
+    private final StandbyConnection.Mode standbyMode;
+
+    private final Object sendLock = new Object();
+
+    // Connection lifecycle, guarded by this; the lock is never held across I/O or waits
+    private volatile ConnectionState state = ConnectionState.DISCONNECTED;
+    private long generation;
+    private CompletableFuture<Void> pendingConnect;
+    private volatile WebSocketSession activeSession;
+    private ScheduledFuture<?> ackTimeoutTask;
+
+    public ChainStreamingSession(
+            OracleHospitalityConfig config,
+            OracleHospitalityConfig.ChainConfig chain,
+            StandardWebSocketClient webSocketClient,
+            ScheduledExecutorService scheduler,
+            ExecutorService processingExecutor,
+            BufferPool bufferPool,
+            OracleEventMessageProcessor messageProcessor,
+            OffsetCheckpointService checkpointService,
+            StreamingMetrics metrics) {
+        this.config = config;
+        this.chain = chain;
+        this.messageProcessor = messageProcessor;
+        this.checkpointService = checkpointService;
+        this.metrics = metrics;
+        this.scheduler = scheduler;
+        this.connectionManager = new WebSocketConnectionManager(webSocketClient);
+        this.protocolHandler = new GraphQLWSProtocolHandler(chain.getSubscriptionFields());
+        OracleHospitalityConfig.IngestConfig ingestConfig = config.getIngest();
+        this.messageAssembler = new MessageAssembler(
+                bufferPool, messageProcessor.getEnvelopeExtractor().createIncrementalParser(),
+                ingestConfig.getBufferCompactThresholdBytes());
+
+        this.ingestQueue = new MessageIngestQueue(
+                "ohip-" + chain.getChainCode(),
+                ingestConfig.getQueueCapacity(),
+                ingestConfig.getBackpressurePolicy(),
+                Paths.get(ingestConfig.getSpillDirectory()),
+                ingestConfig.getSpillMaxBytes(),
+                processingExecutor,
+                payload -> messageProcessor.processMessage(payload, protocolHandler.getSessionId(), chain.getChainCode()),
+                this::handleProcessingError
+        );
+
+        this.reconnects = new ReconnectScheduler(chain.getChainCode(), config, scheduler, this::connectAsync, metrics);
+        this.keepAlive = new KeepAliveManager(chain.getChainCode(), config, scheduler, connectionManager,
+                () -> sendMessage(protocolHandler.createPingMessage()), this::connectionLost, metrics);
+
+        this.standbyMode = config.getStandby().getMode();
+        this.standby = new StandbyConnection(chain.getChainCode(), config, scheduler, this::openWebSocket,
+                this::sendMessage,
+                () -> protocolHandler.createAuthenticationMessage(chain.getOauthToken(), chain.getAppKey()),
+                protocolHandler::createPingMessage, messageProcessor.getEnvelopeExtractor());
+        if (standbyMode == StandbyConnection.Mode.ON_DEGRADED) {
+            keepAlive.setDegradationListener(config.getStandby().getDegradedRoundTripMillis(),
+                    reason -> standby.warm("primary degraded: " + reason));
+        }
+        if (standbyMode != StandbyConnection.Mode.OFF && !config.getDedup().isEnabled()) {
+            logger.warn("Hot standby is enabled for chain {} without offset dedup; events around a failover "
+                    + "will be published twice", chain.getChainCode());
+        }
+
+        // A failed or stuck Kafka send is replayed by resubscribing from the checkpoint
+        checkpointService.setStallListener(chain.getChainCode(), this::checkpointStalled);
+
+        metrics.bindConnection(chain.getChainCode(), connectionManager);
+        metrics.bindReconnects(chain.getChainCode(), reconnects);
+        metrics.bindKeepAlive(chain.getChainCode(), keepAlive);
+        metrics.bindStandby(chain.getChainCode(), standby);
+        metrics.bindIngestQueue(ingestQueue);
+    }
+
+    /**
+     * Starts connecting, reconnecting with backoff if the attempt fails. Returns immediately;
+     * the handshake runs on the WebSocket client's executor.
+     *
+     * @return future completed once the subscription is sent, or exceptionally if the attempt fails
+     */
+    public CompletableFuture<Void> connect() {
+        CompletableFuture<Void> attempt = connectAsync();
+        attempt.whenComplete((result, ex) -> {
+            if (ex == null) {
+                reconnects.connected();
+            } else {
+                scheduleReconnect("connect failed");
+            }
+        });
+        return attempt;
+    }
+
+    /**
+     * Opens the connection unless one is open or being opened, in which case the pending attempt
+     * (or a completed future) is returned. The session lock is only held for state changes.
+     */
+    private CompletableFuture<Void> connectAsync() {
+        CompletableFuture<Void> attempt;
+        long attemptGeneration;
+        synchronized (this) {
+            if (state != ConnectionState.DISCONNECTED) {
+                logger.debug("Chain {} already {}", chain.getChainCode(), state);
+                return pendingConnect != null ? pendingConnect : CompletableFuture.completedFuture(null);
+            }
+            state = ConnectionState.CONNECTING;
+            attempt = new CompletableFuture<>();
+            pendingConnect = attempt;
+            attemptGeneration = ++generation;
+        }
+
+        try {
+            logger.info("Connecting chain {} to Oracle Hospitality Streaming API at {}", chain.getChainCode(), config.getUrl());
+            openWebSocket().whenComplete((session, ex) -> {
+                if (ex != null) {
+                    failConnect(attemptGeneration, ex);
+                } else {
+                    onHandshakeComplete(attemptGeneration, session);
+                }
+            });
+        } catch (Exception e) {
+            failConnect(attemptGeneration, e);
+        }
+        return attempt;
+    }
+
+    /**
+     * Starts a WebSocket handshake with this session as handler
+     */
+    private CompletableFuture<WebSocketSession> openWebSocket() {
+        String hashedKey = GraphQLWSProtocolHandler.generateSha256Hash(chain.getAppKey());
+        String urlWithParams = String.format("%s?key=%s", config.getUrl(), hashedKey);
+
+        WebSocketHttpHeaders headers = new WebSocketHttpHeaders();
+        headers.add("Sec-WebSocket-Protocol", PROTOCOL);
+
+        return connectionManager.getWebSocketClient().execute(this, headers, URI.create(urlWithParams))
+                .orTimeout(HANDSHAKE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private void onHandshakeComplete(long attemptGeneration, WebSocketSession session) {
+        boolean current;
+        synchronized (this) {
+            current = attemptGeneration == generation;
+            if (current) {
+                activeSession = session;
+                connectionManager.setSession(session);
+                // Subscribes as soon as the server acknowledges connection_init, see onConnectionAck
+                state = ConnectionState.AWAITING_ACK;
+                ackTimeoutTask = scheduler.schedule(() -> onAckTimeout(attemptGeneration),
+                        config.getConnectionAckTimeoutSeconds(), TimeUnit.SECONDS);
+            }
+        }
+        if (!current) {
+            // Disconnected while the handshake was running
+            closeQuietly(session);
+            return;
+        }
+        logger.info("WebSocket connection established for chain {}. Session ID: {}", chain.getChainCode(), session.getId());
+
+        try {
+            sendAuthenticationMessage();
+        } catch (Exception e) {
+            failConnect(attemptGeneration, e);
+            return;
+        }
+        keepAlive.start();
+    }
+
+    /**
+     * Ends a connection attempt that failed before the subscription was sent
+     */
+    private void failConnect(long attemptGeneration, Throwable cause) {
+        CompletableFuture<Void> attempt;
+        synchronized (this) {
+            if (attemptGeneration != generation) {
+                return;
+            }
+            attempt = resetState();
+        }
+        logger.error("Failed to connect chain {} to streaming API", chain.getChainCode(), cause);
+        connectionManager.closeSession();
+        if (attempt != null) {
+            attempt.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * Handles the loss of the active connection, whatever the cause, and reconnects
+     */
+    private void connectionLost(String reason) {
+        if (connectionManager.shouldReconnect() && standbyMode != StandbyConnection.Mode.OFF) {
+            WebSocketSession promoted = standby.take();
+            if (promoted != null) {
+                failover(promoted, reason);
+                return;
+            }
+        }
+        CompletableFuture<Void> attempt;
+        synchronized (this) {
+            attempt = resetState();
+        }
+        connectionManager.closeSession();
+        if (attempt != null) {
+            attempt.completeExceptionally(new IOException("Connection lost: " + reason));
+        }
+        scheduleReconnect(reason);
+    }
+
+    /**
+     * Replaces the lost connection with the authenticated standby and subscribes on it from the
+     * resume offset. Events the old connection delivered after that offset come again and are
+     * dropped as duplicates.
+     */
+    private void failover(WebSocketSession promoted, String reason) {
+        long start = System.nanoTime();
+        CompletableFuture<Void> previousAttempt;
+        CompletableFuture<Void> attempt = new CompletableFuture<>();
+        synchronized (this) {
+            previousAttempt = resetState();
+            activeSession = promoted;
+            state = ConnectionState.AWAITING_ACK;
+            pendingConnect = attempt;
+        }
+        logger.warn("Connection of chain {} lost ({}); failing over to standby session {}",
+                chain.getChainCode(), reason, promoted.getId());
+        if (previousAttempt != null) {
+            previousAttempt.completeExceptionally(new IOException("Connection lost: " + reason));
+        }
+
+        WebSocketSession replaced = connectionManager.swapSession(promoted);
+        if (replaced != null) {
+            closeQuietly(replaced);
+        }
+        // A partial message of the old connection must not prefix the new one
+        messageAssembler.clear();
+
+        attempt.whenComplete((result, ex) -> {
+            if (ex == null) {
+                metrics.recordFailover(chain.getChainCode(), System.nanoTime() - start);
+                reconnects.connected();
+            } else {
+                scheduleReconnect("failover failed");
+            }
+        });
+        keepAlive.start();
+        // The standby was acknowledged when it was opened, so it only needs the subscription
+        onConnectionAck();
+    }
+
+    /**
+     * Returns to DISCONNECTED, invalidating callbacks of the current attempt and session
+     *
+     * @return the pending connect attempt, to be completed by the caller outside the lock
+     */
+    private CompletableFuture<Void> resetState() {
+        generation++;
+        state = ConnectionState.DISCONNECTED;
+        activeSession = null;
+        keepAlive.stop();
+        if (ackTimeoutTask != null) {
+            ackTimeoutTask.cancel(false);
+            ackTimeoutTask = null;
+        }
+        CompletableFuture<Void> attempt = pendingConnect;
+        pendingConnect = null;
+        return attempt;
+    }
+
+    /**
+     * Gracefully disconnects from the streaming API: sends complete and closes the session
+     * shortly after, without holding up the caller
+     *
+     * @return future completed once the session is closed
+     */
+    public CompletableFuture<Void> disconnect() {
+        logger.info("Disconnecting chain {} from Oracle Hospitality Streaming API", chain.getChainCode());
+        connectionManager.setShouldReconnect(false);
+        reconnects.cancel();
+
+        standby.close();
+        WebSocketSession closing;
+        CompletableFuture<Void> attempt;
+        synchronized (this) {
+            closing = activeSession;
+            attempt = resetState();
+        }
+        if (attempt != null) {
+            attempt.completeExceptionally(new CancellationException("Disconnected"));
+        }
+        if (closing == null) {
+            connectionManager.closeSession();
+            return CompletableFuture.completedFuture(null);
+        }
+
+        try {
+            if (closing.isOpen()) {
+                sendMessage(closing, protocolHandler.createCompleteMessage());
+                logger.info("Complete message sent for graceful disconnection");
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to send complete message during disconnect", e);
+        }
+
+        // Give the server a moment to process the complete message
+        CompletableFuture<Void> closed = new CompletableFuture<>();
+        try {
+            scheduler.schedule(() -> {
+                connectionManager.closeSession(closing);
+                closed.complete(null);
+            }, COMPLETE_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            connectionManager.closeSession(closing);
+            closed.complete(null);
+        }
+        return closed;
+    }
+
+    /**
+     * Re-enables reconnection after a manual {@link #disconnect()} and starts connecting
+     */
+    public CompletableFuture<Void> reconnect() {
+        connectionManager.setShouldReconnect(true);
+        return connect();
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        logger.info("WebSocket connection established callback - Chain: {} - Session: {}",
+                chain.getChainCode(), session.getId());
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+        if (standby.owns(session)) {
+            standby.handleFrame(message.getPayload(), message.isLast());
+            return;
+        }
+        if (isStale(session)) {
+            return;
+        }
+        connectionManager.updateLastMessageReceived();
+
+        try {
+            String payload = message.getPayload();
+            int sizeBefore = messageAssembler.getBufferSize();
+            messageAssembler.appendFragment(payload);
+            metrics.recordTextFrame(messageAssembler.getBufferSize() - sizeBefore);
+
+            if (!message.isLast()) {
+                logger.debug("Received partial message chunk ({} chars), accumulating...", payload.length());
+                return;
+            }
+
+            enqueueCompleteMessage();
+
+        } catch (Exception e) {
+            logger.error("Error assembling received message", e);
+            messageAssembler.clear();
+        }
+    }
+
+    @Override
+    protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) {
+        if (standby.owns(session)) {
+            standby.handleFrame(message.getPayload(), message.isLast());
+            return;
+        }
+        if (isStale(session)) {
+            return;
+        }
+        connectionManager.updateLastMessageReceived();
+
+        try {
+            ByteBuffer payload = message.getPayload();
+            int length = payload.remaining();
+            messageAssembler.appendFragment(payload);
+            metrics.recordBinaryFrame(length);
+
+            if (!message.isLast()) {
+                logger.debug("Received partial binary chunk ({} bytes), accumulating...", length);
+                return;
+            }
+
+            enqueueCompleteMessage();
+
+        } catch (Exception e) {
+            logger.error("Error assembling received binary message", e);
+            messageAssembler.clear();
+        }
+    }
+
+    private void enqueueCompleteMessage() {
+        AssembledMessage completeMessage = messageAssembler.getCompleteMessage();
+        metrics.recordAssembled(completeMessage);
+        // Control messages are recognised here rather than after the ingest queue, so a backlog
+        // neither delays the subscription nor inflates the ping round trip
+        if (state == ConnectionState.AWAITING_ACK || keepAlive.isAwaitingPong()) {
+            String type = readType(completeMessage);
+            if ("connection_ack".equals(type)) {
+                onConnectionAck();
+            } else if ("pong".equals(type)) {
+                keepAlive.pongReceived();
+            }
+        }
+        logger.debug("Queueing complete message: {} bytes", completeMessage.length());
+        ingestQueue.offer(completeMessage);
+    }
+
+    private String readType(AssembledMessage message) {
+        try {
+            return messageProcessor.getEnvelopeExtractor().readType(message);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Subscribes on the receive thread as soon as connection_init is acknowledged, rather than
+     * waiting for the ack to pass through the ingest queue
+     */
+    private void onConnectionAck() {
+        long attemptGeneration;
+        synchronized (this) {
+            if (state != ConnectionState.AWAITING_ACK) {
+                return;
+            }
+            attemptGeneration = generation;
+            if (ackTimeoutTask != null) {
+                ackTimeoutTask.cancel(false);
+                ackTimeoutTask = null;
+            }
+        }
+        logger.info("Connection acknowledged for chain {}; subscribing", chain.getChainCode());
+
+        try {
+            sendSubscriptionMessage();
+        } catch (Exception e) {
+            failConnect(attemptGeneration, e);
+            return;
+        }
+
+        CompletableFuture<Void> attempt;
+        synchronized (this) {
+            if (attemptGeneration != generation) {
+                return;
+            }
+            state = ConnectionState.SUBSCRIBED;
+            attempt = pendingConnect;
+            pendingConnect = null;
+        }
+        if (attempt != null) {
+            attempt.complete(null);
+        }
+        if (standbyMode == StandbyConnection.Mode.WARM) {
+            standby.warm("primary subscribed");
+        }
+    }
+
+    private void onAckTimeout(long attemptGeneration) {
+        synchronized (this) {
+            if (attemptGeneration != generation || state != ConnectionState.AWAITING_ACK) {
+                return;
+            }
+        }
+        failConnect(attemptGeneration, new TimeoutException(
+                "No connection_ack within " + config.getConnectionAckTimeoutSeconds() + " seconds"));
+    }
+
+    /**
+     * Resubscribes from the checkpoint so offsets that were not published are delivered again
+     */
+    private void checkpointStalled(String reason) {
+        if (state != ConnectionState.SUBSCRIBED) {
+            // The next subscription resumes from the checkpoint anyway
+            return;
+        }
+        logger.warn("Checkpoint of chain {} stalled ({}). Resubscribing from offset {}", chain.getChainCode(),
+                reason, checkpointService.getResumeOffset(chain.getChainCode()));
+        // Usually called on the Kafka producer thread, which must not wait for the close
+        scheduler.execute(() -> connectionLost("checkpoint stalled: " + reason));
+    }
+
+    /**
+     * Invoked on the processing executor when a queued message fails to process
+     */
+    private void handleProcessingError(Exception e) {
+        logger.error("Error processing received message for chain {}", chain.getChainCode(), e);
+
+        if (isServerError(e)) {
+            connectionLost("server error");
+        }
+    }
+
+    private static boolean isServerError(Throwable e) {
+        for (Throwable current = e; current != null; current = current.getCause()) {
+            if (current.getMessage() != null && current.getMessage().contains("Server error")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) {
+        if (standby.owns(session)) {
+            standby.closed(session, "transport error: " + exception);
+            return;
+        }
+        if (isStale(session)) {
+            logger.debug("Ignoring transport error of replaced session {} for chain {}", session.getId(), chain.getChainCode());
+            return;
+        }
+        logger.error("WebSocket transport error occurred for chain {}", chain.getChainCode(), exception);
+        connectionLost("transport error");
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        if (standby.owns(session)) {
+            standby.closed(session, "closed (" + status.getCode() + ")");
+            return;
+        }
+        if (isStale(session)) {
+            logger.debug("Ignoring close of replaced session {} for chain {}", session.getId(), chain.getChainCode());
+            return;
+        }
+        logger.warn("WebSocket connection closed for chain {} - Status: {} - Reason: {}",
+                chain.getChainCode(), status.getCode(), status.getReason());
+        connectionLost("connection closed (" + status.getCode() + ")");
+    }
+
+    /**
+     * Checks if a callback is about a session other than the active one, i.e. one that was
+     * already closed or replaced
+     */
+    private boolean isStale(WebSocketSession session) {
+        return session != activeSession;
+    }
+
+    private static void closeQuietly(WebSocketSession session) {
+        try {
+            session.close();
+        } catch (IOException e) {
+            logger.debug("Failed to close abandoned WebSocket session", e);
+        }
+    }
+
+    private void sendAuthenticationMessage() throws IOException {
+        String authMessage = protocolHandler.createAuthenticationMessage(
+                chain.getOauthToken(),
+                chain.getAppKey()
+        );
+        sendMessage(authMessage);
+        logger.info("Authentication message sent");
+    }
+
+    private void sendSubscriptionMessage() throws IOException {
+        // Resume from the last offset produced or spilled; replaying that single event is harmless
+        checkpointService.resubscribed(chain.getChainCode());
+        long offset = Math.max(checkpointService.getResumeOffset(chain.getChainCode()), 0);
+        String hotelCode = messageProcessor.getSubscriptionHotelCode(chain.getChainCode());
+        String subscriptionMessage = protocolHandler.createSubscriptionMessage(chain.getChainCode(), offset, hotelCode);
+        sendMessage(subscriptionMessage);
+        logger.info("Subscription message sent for chainCode: {} from offset {}{}", chain.getChainCode(), offset,
+                hotelCode != null ? " (hotel " + hotelCode + ")" : "");
+    }
+
+    private void sendMessage(String message) throws IOException {
+        sendMessage(connectionManager.getSession(), message);
+    }
+
+    /**
+     * Sends a text message. Sends are serialised since pings, the subscription and disconnects
+     * run on different threads and a WebSocket session allows one send at a time.
+     */
+    private void sendMessage(WebSocketSession session, String message) throws IOException {
+        if (session == null || !session.isOpen()) {
+            throw new IOException("WebSocket session is not open");
+        }
+        synchronized (sendLock) {
+            session.sendMessage(new TextMessage(message));
+        }
+    }
+
+    private void scheduleReconnect(String reason) {
+        if (!connectionManager.shouldReconnect()) {
+            logger.info("Reconnection disabled. Not scheduling reconnect.");
+            return;
+        }
+        reconnects.trigger(reason);
+    }
+
+    /**
+     * Gets a future completed once every queued message has been processed and every direct
+     * Kafka send acknowledged, so the committed offset covers everything this session received
+     * apart from offsets held durably by the Kafka spill. Used after {@link #disconnect()} before
+     * handing the chain to another node.
+     */
+    public CompletableFuture<Void> whenDrained() {
+        // Nothing is sent once the queue is idle, so the sends are only awaited afterwards
+        return ingestQueue.whenIdle().thenCompose(idle -> checkpointService.whenSent(chain.getChainCode()));
+    }
+
+    /**
+     * Closes the session for good and discards queued messages
+     */
+    public void shutdown() {
+        connectionManager.setShouldReconnect(false);
+        reconnects.cancel();
+        standby.close();
+        CompletableFuture<Void> attempt;
+        synchronized (this) {
+            attempt = resetState();
+        }
+        if (attempt != null) {
+            attempt.completeExceptionally(new CancellationException("Shut down"));
+        }
+        connectionManager.closeSession();
+        ingestQueue.shutdown();
+    }
+
+    // Monitoring getters
+    public String getChainCode() {
+        return chain.getChainCode();
+    }
+
+    public boolean isConnected() {
+        return connectionManager.isConnected();
+    }
+
+    public ConnectionState getConnectionState() {
+        return state;
+    }
+
+    public StandbyConnection.State getStandbyState() {
+        return standby.getState();
+    }
+
+    /**
+     * Gets the round trip of the last answered ping in milliseconds, or -1 if none was answered yet
+     */
+    public double getPingRoundTripMillis() {
+        return keepAlive.getLastRoundTripMillis();
+    }
+
+    public String getSessionId() {
+        return protocolHandler.getSessionId();
+    }
+
+    public Instant getLastMessageReceived() {
+        return connectionManager.getLastMessageReceived();
+    }
+
+    public ReconnectScheduler.State getReconnectState() {
+        return reconnects.getState();
+    }
+
+    /**
+     * Gets the number of reconnect attempts in the current outage
+     */
+    public int getReconnectAttempts() {
+        return reconnects.getAttempts();
+    }
+
+    /**
+     * Gets the duration of the current outage, or 0 when connected
+     */
+    public long getOutageMillis() {
+        return reconnects.getOutageMillis();
+    }
+
+    public long getCommittedOffset() {
+        return checkpointService.getOffset(chain.getChainCode());
+    }
+
+    /**
+     * Gets the number of direct Kafka sends waiting for their acknowledgement, excluding events
+     * held by the Kafka spill
+     */
+    public int getPendingKafkaAcks() {
+        return checkpointService.getSendingCount(chain.getChainCode());
+    }
+
+    public MessageIngestQueue getIngestQueue() {
+        return ingestQueue;
+    }
+
+    @Override
+    public boolean supportsPartialMessages() {
+        return true;
+    }
+}
@@ -0,0 +1,236 @@
+package mc.sbm.OperaWebSocket.client;
+
+import mc.sbm.OperaWebSocket.config.OracleHospitalityConfig;
+import mc.sbm.OperaWebSocket.service.StreamingMetrics;
+import mc.sbm.OperaWebSocket.websocket.WebSocketConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Keep-alive of a chain's connection.
+ * <p>
+ * Owns the session's only ping task: {@link #start()} replaces any task left by a previous
+ * connection, so reconnects never add pings. A ping is sent every ping interval to keep the server
+ * from closing the connection, and also as a probe once nothing has been received for the idle
+ * probe time, so a silently dropped link is not left to the 240 s interval. One ping is
+ * outstanding at a time and the next pong answers it, which gives the round-trip time. A ping not
+ * answered within the pong timeout is re-sent at once; after the configured number of missed pongs
+ * the link is reported dead. A link that stops answering is therefore detected within about
+ * idle probe + missed pongs x pong timeout (90 s with the defaults) rather than at the 300 s
+ * stale-connection threshold. Slow or missed pongs short of that can be reported to a degradation
+ * listener.
+ */
+public class KeepAliveManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(KeepAliveManager.class);
+
+    private static final long CHECK_PERIOD_SECONDS = 1;
+
+    /**
+     * Sends a GraphQL-WS ping on the current session
+     */
+    @FunctionalInterface
+    public interface PingSender {
+        void sendPing() throws IOException;
+    }
+
+    private final String chainCode;
+    private final ScheduledExecutorService scheduler;
+    private final WebSocketConnectionManager connectionManager;
+    private final PingSender pingSender;
+    private final Consumer<String> onDead;
+    private final StreamingMetrics metrics;
+    private final long intervalSeconds;
+    private final long intervalNanos;
+    private final Duration idleProbeThreshold;
+    private final long pongTimeoutSeconds;
+    private final int maxMissedPongs;
+    private final Duration staleThreshold;
+
+    private ScheduledFuture<?> pingTask;
+    private ScheduledFuture<?> pongTimeoutTask;
+    private volatile boolean awaitingPong;
+    private long pingSentNanos;
+    private long pingSequence;
+    private int missedPongs;
+    private volatile long lastRoundTripNanos = -1;
+    private volatile long degradedRoundTripNanos = Long.MAX_VALUE;
+    private volatile Consumer<String> onDegraded;
+
+    /**
+     * @param onDead invoked with a reason once the link is considered dead; the task is stopped first
+     */
+    public KeepAliveManager(String chainCode, OracleHospitalityConfig config, ScheduledExecutorService scheduler,
+                            WebSocketConnectionManager connectionManager, PingSender pingSender,
+                            Consumer<String> onDead, StreamingMetrics metrics) {
+        OracleHospitalityConfig.KeepAliveConfig keepAlive = config.getKeepAlive();
+        this.chainCode = chainCode;
+        this.scheduler = scheduler;
+        this.connectionManager = connectionManager;
+        this.pingSender = pingSender;
+        this.onDead = onDead;
+        this.metrics = metrics;
+        this.intervalSeconds = config.getPingIntervalSeconds();
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(intervalSeconds);
+        this.idleProbeThreshold = keepAlive.getIdleProbeSeconds() > 0
+                ? Duration.ofSeconds(keepAlive.getIdleProbeSeconds()) : null;
+        this.pongTimeoutSeconds = keepAlive.getPongTimeoutSeconds();
+        this.maxMissedPongs = Math.max(1, keepAlive.getMaxMissedPongs());
+        this.staleThreshold = Duration.ofSeconds(keepAlive.getStaleConnectionSeconds());
+    }
+
+    /**
+     * Reports pongs slower than the threshold, and missed pongs that do not yet make the link
+     * dead, to the listener. Invoked on the receive or scheduler thread; must not block.
+     */
+    public void setDegradationListener(long roundTripThresholdMillis, Consumer<String> listener) {
+        this.degradedRoundTripNanos = TimeUnit.MILLISECONDS.toNanos(roundTripThresholdMillis);
+        this.onDegraded = listener;
+    }
+
+    /**
+     * Starts pinging the current connection, replacing the task of any previous one
+     */
+    public synchronized void start() {
+        stop();
+        pingSentNanos = System.nanoTime();
+        pingTask = scheduler.scheduleAtFixedRate(this::tick, CHECK_PERIOD_SECONDS, CHECK_PERIOD_SECONDS,
+                TimeUnit.SECONDS);
+        logger.info("Keep-alive started for chain {} - Ping interval: {}s, Idle probe: {}s, Pong timeout: {}s",
+                chainCode, intervalSeconds, idleProbeThreshold != null ? idleProbeThreshold.getSeconds() : 0,
+                pongTimeoutSeconds);
+    }
+
+    /**
+     * Stops pinging and forgets the outstanding ping, if any
+     */
+    public synchronized void stop() {
+        if (pingTask != null) {
+            pingTask.cancel(false);
+            pingTask = null;
+        }
+        cancelPongTimeout();
+        awaitingPong = false;
+        missedPongs = 0;
+    }
+
+    private void tick() {
+        boolean intervalElapsed;
+        synchronized (this) {
+            if (awaitingPong || !connectionManager.isConnected()) {
+                // The pong timeout owns an unanswered ping
+                return;
+            }
+            intervalElapsed = System.nanoTime() - pingSentNanos >= intervalNanos;
+        }
+        if (connectionManager.isConnectionStale(staleThreshold)) {
+            dead("no messages for " + staleThreshold.getSeconds() + " seconds");
+            return;
+        }
+        if (intervalElapsed || (idleProbeThreshold != null && connectionManager.isConnectionStale(idleProbeThreshold))) {
+            ping();
+        }
+    }
+
+    private void ping() {
+        long sequence;
+        synchronized (this) {
+            sequence = ++pingSequence;
+            awaitingPong = true;
+            pingSentNanos = System.nanoTime();
+            pongTimeoutTask = scheduler.schedule(() -> onPongTimeout(sequence), pongTimeoutSeconds, TimeUnit.SECONDS);
+        }
+        try {
+            pingSender.sendPing();
+            logger.debug("Ping {} sent for chain {}", sequence, chainCode);
+        } catch (Exception e) {
+            logger.error("Failed to send ping for chain {}", chainCode, e);
+            dead("ping failed");
+        }
+    }
+
+    /**
+     * Records a pong, answering the outstanding ping
+     */
+    public void pongReceived() {
+        long roundTrip;
+        synchronized (this) {
+            if (!awaitingPong) {
+                return;
+            }
+            roundTrip = System.nanoTime() - pingSentNanos;
+            awaitingPong = false;
+            missedPongs = 0;
+            cancelPongTimeout();
+        }
+        lastRoundTripNanos = roundTrip;
+        metrics.recordPingRoundTrip(chainCode, roundTrip);
+        logger.debug("Pong received for chain {} after {} ms", chainCode, TimeUnit.NANOSECONDS.toMillis(roundTrip));
+        if (roundTrip > degradedRoundTripNanos) {
+            degraded("ping round trip " + TimeUnit.NANOSECONDS.toMillis(roundTrip) + " ms");
+        }
+    }
+
+    private void onPongTimeout(long sequence) {
+        int missed;
+        synchronized (this) {
+            if (!awaitingPong || sequence != pingSequence) {
+                return;
+            }
+            awaitingPong = false;
+            pongTimeoutTask = null;
+            missed = ++missedPongs;
+        }
+        metrics.recordPongMissed(chainCode);
+        if (missed >= maxMissedPongs) {
+            dead(missed + " pong(s) missed");
+        } else {
+            logger.warn("No pong within {}s for chain {} ({} of {} missed). Pinging again",
+                    pongTimeoutSeconds, chainCode, missed, maxMissedPongs);
+            degraded("pong missed");
+            ping();
+        }
+    }
+
+    private void degraded(String reason) {
+        Consumer<String> listener = onDegraded;
+        if (listener != null) {
+            listener.accept(reason);
+        }
+    }
+
+    private void dead(String reason) {
+        stop();
+        logger.warn("Keep-alive of chain {} detected a dead connection: {}. Reconnecting...", chainCode, reason);
+        onDead.accept(reason);
+    }
+
+    private void cancelPongTimeout() {
+        if (pongTimeoutTask != null) {
+            pongTimeoutTask.cancel(false);
+            pongTimeoutTask = null;
+        }
+    }
+
+    /**
+     * Checks if a ping is waiting for its pong, i.e. whether incoming messages need to be checked for one
+     */
+    public boolean isAwaitingPong() {
+        return awaitingPong;
+    }
+
+    /**
+     * Gets the round trip of the last answered ping in milliseconds, or -1 if none was answered yet
+     */
+    public double getLastRoundTripMillis() {
+        long roundTrip = lastRoundTripNanos;
+        return roundTrip < 0 ? -1 : roundTrip / 1_000_000.0;
+    }
+}
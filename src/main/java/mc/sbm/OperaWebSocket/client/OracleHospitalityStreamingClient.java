@@ -3,66 +3,100 @@ package mc.sbm.OperaWebSocket.client;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import mc.sbm.OperaWebSocket.config.OracleHospitalityConfig;
-import mc.sbm.OperaWebSocket.websocket.GraphQLWSProtocolHandler;
-import mc.sbm.OperaWebSocket.websocket.MessageAssembler;
+import mc.sbm.OperaWebSocket.service.ChainOwnershipCoordinator;
+import mc.sbm.OperaWebSocket.service.OffsetCheckpointService;
+import mc.sbm.OperaWebSocket.service.StreamingMetrics;
+import mc.sbm.OperaWebSocket.websocket.BufferPool;
 import mc.sbm.OperaWebSocket.websocket.OracleEventMessageProcessor;
 import mc.sbm.OperaWebSocket.websocket.WebSocketConnectionManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
-import org.springframework.web.socket.CloseStatus;
-import org.springframework.web.socket.TextMessage;
-import org.springframework.web.socket.WebSocketHttpHeaders;
-import org.springframework.web.socket.WebSocketSession;
-import org.springframework.web.socket.handler.TextWebSocketHandler;
-
-import java.io.IOException;
-import java.net.URI;
-import java.time.Duration;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Oracle Hospitality Integration Platform Streaming API Client
  * <p>
- * Orchestrates WebSocket connection, message handling, and reconnection logic
+ * Runs one {@link ChainStreamingSession} per configured chain. All sessions share a single
+ * WebSocket container, scheduler pool, processing executor, buffer pool and Kafka producer,
+ * so one instance can ingest many tenants concurrently.
+ * <p>
+ * Which chains this instance actually streams is decided by the {@link ChainOwnershipCoordinator}.
+ * In cluster mode each chain is owned by one node at a time, and is handed over with its
+ * committed offset when the owner leaves.
  */
 @Service
-public class OracleHospitalityStreamingClient extends TextWebSocketHandler {
+public class OracleHospitalityStreamingClient {
 
     private static final Logger logger = LoggerFactory.getLogger(OracleHospitalityStreamingClient.class);
-    private static final String PROTOCOL = "graphql-transport-ws";
-    private static final Duration STALE_CONNECTION_THRESHOLD = Duration.ofMinutes(5);
 
     private final OracleHospitalityConfig config;
     private final OracleEventMessageProcessor messageProcessor;
-    private final WebSocketConnectionManager connectionManager;
-    private final GraphQLWSProtocolHandler protocolHandler;
-    private final MessageAssembler messageAssembler;
+    private final OffsetCheckpointService checkpointService;
+    private final StreamingMetrics metrics;
+    private final ChainOwnershipCoordinator ownership;
+    private final BufferPool bufferPool;
+    private final Map<String, ChainStreamingSession> sessions = new LinkedHashMap<>();
 
-    private ScheduledExecutorService pingScheduler;
-    private ScheduledExecutorService reconnectScheduler;
+    private ScheduledExecutorService scheduler;
+    private ExecutorService processingExecutor;
+    private boolean ownershipStarted;
 
     public OracleHospitalityStreamingClient(
             OracleHospitalityConfig config,
-            OracleEventMessageProcessor messageProcessor) {
+            OracleEventMessageProcessor messageProcessor,
+            OffsetCheckpointService checkpointService,
+            StreamingMetrics metrics,
+            ChainOwnershipCoordinator ownership) {
         this.config = config;
         this.messageProcessor = messageProcessor;
-        this.connectionManager = new WebSocketConnectionManager();
-        this.protocolHandler = new GraphQLWSProtocolHandler();
-        this.messageAssembler = new MessageAssembler();
+        this.checkpointService = checkpointService;
+        this.metrics = metrics;
+        this.ownership = ownership;
+        this.bufferPool = new BufferPool(
+                config.getIngest().getBufferSegmentSize(),
+                config.getIngest().getBufferPoolMaxBytes(),
+                config.getIngest().getBufferMaxInUseBytes()
+        );
     }
 
     @PostConstruct
     public void init() {
-        connectionManager.configureContainer(config.getMaxTextMessageBufferSize());
-
         if (config.getProxy().isEnabled() && !config.getProxy().getHost().isEmpty()) {
-            connectionManager.configureProxy(config.getProxy().getHost(), config.getProxy().getPort());
+            WebSocketConnectionManager.installProxy(config.getProxy().getHost(), config.getProxy().getPort());
         }
+        StandardWebSocketClient webSocketClient =
+                WebSocketConnectionManager.createClient(config.getMaxTextMessageBufferSize());
 
-        initializeSchedulers();
+        List<OracleHospitalityConfig.ChainConfig> chains = config.getEffectiveChains();
+        initializeExecutors();
+        metrics.bindBufferPool(bufferPool);
+
+        for (OracleHospitalityConfig.ChainConfig chain : chains) {
+            if (sessions.containsKey(chain.getChainCode())) {
+                throw new IllegalStateException("Chain " + chain.getChainCode() + " is configured more than once");
+            }
+            sessions.put(chain.getChainCode(), new ChainStreamingSession(
+                    config, chain, webSocketClient, scheduler, processingExecutor, bufferPool,
+                    messageProcessor, checkpointService, metrics));
+        }
+        logger.info("Configured {} chain(s): {} (cluster mode {}, node {})", sessions.size(), sessions.keySet(),
+                config.getCluster().getMode(), ownership.getNodeId());
 
         if (config.isAutoStart()) {
             logger.info("Auto-start enabled. Initiating connection to Oracle Hospitality Streaming API");
@@ -72,262 +106,178 @@ public class OracleHospitalityStreamingClient extends TextWebSocketHandler {
         }
     }
 
-    private void initializeSchedulers() {
-        pingScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
-            Thread thread = new Thread(r, "ohip-ping-scheduler");
+    private void initializeExecutors() {
+        // Handshakes run on the WebSocket client's executor; the scheduler only runs short tasks
+        AtomicInteger schedulerCounter = new AtomicInteger();
+        scheduler = Executors.newScheduledThreadPool(2, r -> {
+            Thread thread = new Thread(r, "ohip-scheduler-" + schedulerCounter.incrementAndGet());
             thread.setDaemon(true);
             return thread;
         });
-        reconnectScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
-            Thread thread = new Thread(r, "ohip-reconnect-scheduler");
+
+        AtomicInteger processingCounter = new AtomicInteger();
+        processingExecutor = Executors.newFixedThreadPool(config.getIngest().getProcessingThreads(), r -> {
+            Thread thread = new Thread(r, "ohip-processing-" + processingCounter.incrementAndGet());
             thread.setDaemon(true);
             return thread;
         });
     }
 
     /**
-     * Establishes WebSocket connection
+     * Starts connecting every owned chain that is not already connected. Returns without
+     * waiting for the handshakes, which run concurrently.
+     * <p>
+     * The first call starts competing for chain ownership; chains are then connected as they
+     * are acquired.
      */
     public synchronized void connect() {
-        if (connectionManager.isConnected()) {
-            logger.warn("Already connected to streaming API");
+        if (!ownershipStarted) {
+            ownershipStarted = true;
+            ownership.start(sessions.keySet(), new OwnershipListener());
             return;
         }
+        for (ChainStreamingSession session : sessions.values()) {
+            if (!session.isConnected()) {
+                connectIfOwned(session);
+            }
+        }
+    }
 
-        try {
-            logger.info("Connecting to Oracle Hospitality Streaming API at {}", config.getUrl());
-
-            String hashedKey = GraphQLWSProtocolHandler.generateSha256Hash(config.getAppKey());
-            String urlWithParams = String.format("%s?key=%s", config.getUrl(), hashedKey);
-
-            WebSocketHttpHeaders headers = new WebSocketHttpHeaders();
-            headers.add("Sec-WebSocket-Protocol", PROTOCOL);
-
-            WebSocketSession session = connectionManager.getWebSocketClient().execute(
-                    this,
-                    headers,
-                    URI.create(urlWithParams)
-            ).get(30, TimeUnit.SECONDS);
-
-            connectionManager.setSession(session);
-            logger.info("WebSocket connection established. Session ID: {}", session.getId());
-
-            sendAuthenticationMessage();
-            reconnectScheduler.schedule(this::sendSubscriptionMessage, 2, TimeUnit.SECONDS);
-            startPingScheduler();
-
-        } catch (Exception e) {
-            logger.error("Failed to connect to streaming API", e);
-            connectionManager.setConnected(false);
-            scheduleReconnect();
+    private void connectIfOwned(ChainStreamingSession session) {
+        if (ownership.owns(session.getChainCode())) {
+            session.reconnect();
         }
     }
 
     /**
-     * Gracefully disconnects from the streaming API
+     * Gracefully disconnects every chain from the streaming API. Owned chains stay owned by
+     * this node until it shuts down.
      */
-    public synchronized void disconnect() {
-        logger.info("Disconnecting from Oracle Hospitality Streaming API");
-        connectionManager.setShouldReconnect(false);
-
-        // Send complete message before closing connection
-        try {
-            if (connectionManager.isConnected()) {
-                String completeMessage = protocolHandler.createCompleteMessage();
-                sendMessage(completeMessage);
-                logger.info("Complete message sent for graceful disconnection");
-
-                // Give server a moment to process the complete message
-                Thread.sleep(500);
-            }
-        } catch (Exception e) {
-            logger.warn("Failed to send complete message during disconnect", e);
+    public void disconnect() {
+        for (ChainStreamingSession session : sessions.values()) {
+            session.disconnect();
         }
-
-        connectionManager.closeSession();
-    }
-
-    @Override
-    public void afterConnectionEstablished(WebSocketSession session) {
-        logger.info("WebSocket connection established callback - Session: {}", session.getId());
     }
 
-    @Override
-    protected void handleTextMessage(WebSocketSession session, TextMessage message) {
-        connectionManager.updateLastMessageReceived();
-
-        try {
-            String payload = message.getPayload();
-
-            if (!message.isLast()) {
-                logger.debug("Received partial message chunk ({} bytes), accumulating...", payload.length());
-                messageAssembler.appendFragment(payload);
-                return;
-            }
-
-            String completePayload;
-            if (messageAssembler.hasFragments()) {
-                messageAssembler.appendFragment(payload);
-                completePayload = messageAssembler.getCompleteMessage();
-            } else {
-                completePayload = payload;
-            }
+    @PreDestroy
+    public void cleanup() {
+        logger.info("Shutting down Oracle Hospitality Streaming Client");
 
-            logger.debug("Processing complete message: {} bytes", completePayload.length());
-            messageProcessor.processMessage(completePayload, protocolHandler.getSessionId());
+        // Owned chains are disconnected and drained before they are handed over
+        ownership.stop();
+        for (ChainStreamingSession session : sessions.values()) {
+            session.shutdown();
+        }
+        shutdownScheduler(scheduler, "Session");
+        shutdownScheduler(processingExecutor, "Processing");
 
-        } catch (Exception e) {
-            logger.error("Error processing received message", e);
-            messageAssembler.clear();
+        logger.info("Oracle Hospitality Streaming Client shutdown complete");
+    }
 
-            if (e.getMessage().contains("Server error")) {
-                connectionManager.closeSession();
-                scheduleReconnect();
+    private void shutdownScheduler(ExecutorService scheduler, String name) {
+        if (scheduler != null && !scheduler.isShutdown()) {
+            scheduler.shutdown();
+            try {
+                if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
+                    scheduler.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                scheduler.shutdownNow();
+                Thread.currentThread().interrupt();
             }
+            logger.info("{} scheduler shut down", name);
         }
     }
 
-    @Override
-    public void handleTransportError(WebSocketSession session, Throwable exception) {
-        logger.error("WebSocket transport error occurred", exception);
-        connectionManager.setConnected(false);
-        connectionManager.closeSession();
-        scheduleReconnect();
-    }
-
-    @Override
-    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
-        logger.warn("WebSocket connection closed - Status: {} - Reason: {}",
-                status.getCode(), status.getReason());
-        connectionManager.setConnected(false);
-        connectionManager.setSession(null);
+    // Monitoring getters
 
-        if (connectionManager.shouldReconnect()) {
-            scheduleReconnect();
-        } else {
-            logger.info("Reconnection disabled. Not attempting to reconnect.");
-        }
+    /**
+     * Checks if every chain owned by this node is connected
+     */
+    public boolean isConnected() {
+        List<ChainStreamingSession> owned = getOwnedSessions();
+        return !owned.isEmpty() && owned.stream().allMatch(ChainStreamingSession::isConnected);
     }
 
-    private void sendAuthenticationMessage() {
-        try {
-            String authMessage = protocolHandler.createAuthenticationMessage(
-                    config.getOauthToken(),
-                    config.getAppKey()
-            );
-            sendMessage(authMessage);
-            logger.info("Authentication message sent");
-        } catch (Exception e) {
-            logger.error("Failed to send authentication message", e);
-            connectionManager.closeSession();
-            scheduleReconnect();
-        }
+    /**
+     * Checks if this node currently owns a chain
+     */
+    public boolean owns(String chainCode) {
+        return ownership.owns(chainCode);
     }
 
-    private void sendSubscriptionMessage() {
-        try {
-            String subscriptionMessage = protocolHandler.createSubscriptionMessage(config.getChainCode());
-            sendMessage(subscriptionMessage);
-            logger.info("Subscription message sent for chainCode: {}", config.getChainCode());
-        } catch (Exception e) {
-            logger.error("Failed to send subscription message", e);
-            connectionManager.closeSession();
-            scheduleReconnect();
-        }
+    public String getNodeId() {
+        return ownership.getNodeId();
     }
 
-    private void sendPingMessage() {
-        try {
-            if (!connectionManager.isConnected()) {
-                logger.debug("Not connected, skipping ping");
-                return;
-            }
-
-            if (connectionManager.isConnectionStale(STALE_CONNECTION_THRESHOLD)) {
-                logger.warn("No messages received in 5+ minutes. Connection may be dead. Reconnecting...");
-                connectionManager.closeSession();
-                scheduleReconnect();
-                return;
-            }
-
-            String pingMessage = protocolHandler.createPingMessage();
-            sendMessage(pingMessage);
-            logger.debug("Ping message sent");
-
-        } catch (Exception e) {
-            logger.error("Failed to send ping message", e);
-            connectionManager.closeSession();
-            scheduleReconnect();
-        }
+    /**
+     * Gets the session of a chain
+     *
+     * @return the session, or null if the chain is not configured
+     */
+    public ChainStreamingSession getSession(String chainCode) {
+        return sessions.get(chainCode);
     }
 
-    private void sendMessage(String message) throws IOException {
-        WebSocketSession session = connectionManager.getSession();
-        if (session != null && session.isOpen()) {
-            session.sendMessage(new TextMessage(message));
-        } else {
-            throw new IOException("WebSocket session is not open");
-        }
+    public Collection<ChainStreamingSession> getSessions() {
+        return Collections.unmodifiableCollection(sessions.values());
     }
 
-    private void startPingScheduler() {
-        pingScheduler.scheduleAtFixedRate(
-                this::sendPingMessage,
-                config.getPingIntervalSeconds(),
-                config.getPingIntervalSeconds(),
-                TimeUnit.SECONDS
-        );
-        logger.info("Ping scheduler started with interval of {} seconds", config.getPingIntervalSeconds());
+    /**
+     * Gets the sessions of the chains currently owned by this node
+     */
+    public List<ChainStreamingSession> getOwnedSessions() {
+        return sessions.values().stream().filter(session -> owns(session.getChainCode())).toList();
     }
 
-    private void scheduleReconnect() {
-        if (!connectionManager.shouldReconnect()) {
-            logger.info("Reconnection disabled. Not scheduling reconnect.");
-            return;
-        }
-
-        logger.info("Scheduling reconnection attempt in {} seconds", config.getReconnectDelaySeconds());
-        reconnectScheduler.schedule(this::connect, config.getReconnectDelaySeconds(), TimeUnit.SECONDS);
+    public BufferPool getBufferPool() {
+        return bufferPool;
     }
 
-    @PreDestroy
-    public void cleanup() {
-        logger.info("Shutting down Oracle Hospitality Streaming Client");
-        connectionManager.setShouldReconnect(false);
-        connectionManager.closeSession();
+    /**
+     * Starts and stops chain sessions as ownership moves between nodes
+     */
+    private class OwnershipListener implements ChainOwnershipCoordinator.Listener {
 
-        shutdownScheduler(pingScheduler, "Ping");
-        shutdownScheduler(reconnectScheduler, "Reconnect");
+        @Override
+        public void onChainAcquired(String chainCode) {
+            ChainStreamingSession session = sessions.get(chainCode);
+            if (session != null) {
+                connectIfOwned(session);
+            }
+        }
 
-        logger.info("Oracle Hospitality Streaming Client shutdown complete");
-    }
+        @Override
+        public void onChainsReleased(Collection<String> chainCodes) {
+            // Every chain stops first so they drain concurrently against one deadline
+            List<ChainStreamingSession> released = new ArrayList<>();
+            for (String chainCode : chainCodes) {
+                ChainStreamingSession session = sessions.get(chainCode);
+                if (session != null) {
+                    session.disconnect();
+                    released.add(session);
+                }
+            }
+            if (released.isEmpty()) {
+                return;
+            }
 
-    private void shutdownScheduler(ScheduledExecutorService scheduler, String name) {
-        if (scheduler != null && !scheduler.isShutdown()) {
-            scheduler.shutdown();
+            List<CompletableFuture<Void>> drained = released.stream().map(ChainStreamingSession::whenDrained).toList();
             try {
-                if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
-                    scheduler.shutdownNow();
+                CompletableFuture.allOf(drained.toArray(new CompletableFuture[0]))
+                        .get(config.getCluster().getHandoverDrainTimeoutMillis(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException | ExecutionException e) {
+                for (int i = 0; i < released.size(); i++) {
+                    ChainStreamingSession session = released.get(i);
+                    if (!drained.get(i).isDone()) {
+                        logger.warn("Chain {} released with {} queued message(s) and {} pending Kafka ack(s). "
+                                        + "The next owner will replay them", session.getChainCode(),
+                                session.getIngestQueue().getDepth(), session.getPendingKafkaAcks());
+                    }
                 }
             } catch (InterruptedException e) {
-                scheduler.shutdownNow();
                 Thread.currentThread().interrupt();
             }
-            logger.info("{} scheduler shut down", name);
         }
     }
-
-    @Override
-    public boolean supportsPartialMessages() {
-        return true;
-    }
-
-    // Monitoring getters
-    public boolean isConnected() {
-        return connectionManager.isConnected();
-    }
-
-    public String getSessionId() {
-        return protocolHandler.getSessionId();
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,219 @@
+package mc.sbm.OperaWebSocket.client;
+
+import mc.sbm.OperaWebSocket.config.OracleHospitalityConfig;
+import mc.sbm.OperaWebSocket.service.StreamingMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Reconnect state machine of a chain.
+ * <p>
+ * Every error path reports a lost connection through {@link #trigger}; while an attempt is
+ * scheduled or running further triggers are coalesced into it, so one outage produces one
+ * sequence of attempts. The first attempt runs almost immediately, since most drops (proxy or
+ * load balancer resets) recover right away. Later attempts back off exponentially up to the
+ * configured cap, each delay reduced by a random share so chains and nodes that lost their
+ * connections together do not reconnect in lockstep.
+ * <p>
+ * A connection that drops again before it has been up for the stable period continues the
+ * previous backoff instead of starting over, so a server that accepts and immediately closes
+ * connections is not hammered.
+ * <p>
+ * Attempts are asynchronous: an attempt only starts the connection and its outcome is handled
+ * when the returned future completes, so no scheduler thread waits on a handshake.
+ */
+public class ReconnectScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReconnectScheduler.class);
+
+    public enum State {
+        /** Connected, or disconnected without reconnecting */
+        IDLE,
+        /** An attempt is waiting for its delay */
+        SCHEDULED,
+        /** An attempt is in progress */
+        CONNECTING
+    }
+
+    private final String chainCode;
+    private final ScheduledExecutorService scheduler;
+    private final Supplier<? extends CompletableFuture<?>> connectAttempt;
+    private final StreamingMetrics metrics;
+    private final long initialDelayMillis;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final double multiplier;
+    private final double jitter;
+    private final long stableNanos;
+
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    private State state = State.IDLE;
+    private ScheduledFuture<?> pending;
+    private int attempts;
+    private long outageStartNanos;
+    private long connectedAtNanos;
+
+    /**
+     * @param connectAttempt starts opening the connection, returning a future completed once it
+     *                       is established or exceptionally if it fails
+     */
+    public ReconnectScheduler(String chainCode, OracleHospitalityConfig config, ScheduledExecutorService scheduler,
+                              Supplier<? extends CompletableFuture<?>> connectAttempt, StreamingMetrics metrics) {
+        OracleHospitalityConfig.ReconnectConfig reconnect = config.getReconnect();
+        this.chainCode = chainCode;
+        this.scheduler = scheduler;
+        this.connectAttempt = connectAttempt;
+        this.metrics = metrics;
+        this.initialDelayMillis = reconnect.getInitialDelayMillis();
+        this.baseDelayMillis = reconnect.getBaseDelayMillis();
+        this.maxDelayMillis = TimeUnit.SECONDS.toMillis(config.getReconnectDelaySeconds());
+        this.multiplier = reconnect.getMultiplier();
+        this.jitter = reconnect.getJitter();
+        this.stableNanos = TimeUnit.SECONDS.toNanos(reconnect.getStableAfterSeconds());
+    }
+
+    /**
+     * Reports a lost connection. Starts reconnecting unless an attempt is already pending.
+     *
+     * @param reason what was observed, for the log
+     */
+    public synchronized void trigger(String reason) {
+        if (state != State.IDLE) {
+            coalescedCount.incrementAndGet();
+            logger.debug("Reconnect of chain {} already {}; ignoring trigger: {}", chainCode, state, reason);
+            return;
+        }
+        long now = System.nanoTime();
+        if (outageStartNanos == 0) {
+            outageStartNanos = now;
+            if (connectedAtNanos == 0 || now - connectedAtNanos >= stableNanos) {
+                attempts = 0;
+            }
+        }
+        scheduleAttempt(reason);
+    }
+
+    private void scheduleAttempt(String reason) {
+        long delay = nextDelayMillis(attempts);
+        attempts++;
+        state = State.SCHEDULED;
+        metrics.recordReconnectAttempt(chainCode);
+        logger.info("Reconnect attempt {} for chain {} in {} ms: {}", attempts, chainCode, delay, reason);
+        pending = scheduler.schedule(this::runAttempt, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Gets the delay before the attempt following the given number of attempts
+     */
+    long nextDelayMillis(int previousAttempts) {
+        if (previousAttempts == 0) {
+            return initialDelayMillis;
+        }
+        double backoff = Math.min(maxDelayMillis, baseDelayMillis * Math.pow(multiplier, previousAttempts - 1));
+        double jittered = backoff * (1 - jitter * ThreadLocalRandom.current().nextDouble());
+        return Math.max(initialDelayMillis, (long) jittered);
+    }
+
+    private void runAttempt() {
+        synchronized (this) {
+            if (state != State.SCHEDULED) {
+                return;
+            }
+            state = State.CONNECTING;
+            pending = null;
+        }
+
+        CompletableFuture<?> attempt;
+        try {
+            attempt = connectAttempt.get();
+        } catch (Exception e) {
+            attempt = CompletableFuture.failedFuture(e);
+        }
+        attempt.whenComplete((result, ex) -> onAttemptComplete(ex));
+    }
+
+    private synchronized void onAttemptComplete(Throwable failure) {
+        if (state != State.CONNECTING) {
+            // Cancelled, or connected by someone else while this attempt ran
+            return;
+        }
+        if (failure == null) {
+            onConnected();
+        } else {
+            logger.warn("Reconnect attempt {} for chain {} failed: {}", attempts, chainCode, failure.toString());
+            scheduleAttempt("attempt " + attempts + " failed");
+        }
+    }
+
+    /**
+     * Records a connection established outside a scheduled attempt, e.g. a manual connect
+     */
+    public synchronized void connected() {
+        if (pending != null) {
+            pending.cancel(false);
+            pending = null;
+        }
+        onConnected();
+    }
+
+    private void onConnected() {
+        state = State.IDLE;
+        long now = System.nanoTime();
+        if (outageStartNanos != 0) {
+            long outageNanos = now - outageStartNanos;
+            metrics.recordReconnected(chainCode, outageNanos, attempts);
+            logger.info("Chain {} reconnected after {} attempt(s) and {} ms", chainCode, attempts,
+                    TimeUnit.NANOSECONDS.toMillis(outageNanos));
+            outageStartNanos = 0;
+        }
+        connectedAtNanos = now;
+    }
+
+    /**
+     * Stops reconnecting, e.g. on a manual disconnect. A later trigger starts a new outage.
+     */
+    public synchronized void cancel() {
+        if (pending != null) {
+            pending.cancel(false);
+            pending = null;
+        }
+        state = State.IDLE;
+        attempts = 0;
+        outageStartNanos = 0;
+        connectedAtNanos = 0;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Gets the number of attempts made in the current outage
+     */
+    public synchronized int getAttempts() {
+        return outageStartNanos != 0 ? attempts : 0;
+    }
+
+    /**
+     * Gets the duration of the current outage, or 0 when connected
+     */
+    public synchronized long getOutageMillis() {
+        return outageStartNanos != 0 ? TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - outageStartNanos) : 0;
+    }
+
+    /**
+     * Gets the number of triggers absorbed by an attempt already pending
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+}
@@ -0,0 +1,355 @@
+package mc.sbm.OperaWebSocket.client;
+
+import mc.sbm.OperaWebSocket.config.OracleHospitalityConfig;
+import mc.sbm.OperaWebSocket.websocket.AssembledMessage;
+import mc.sbm.OperaWebSocket.websocket.EnvelopeExtractor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Hot standby connection of a chain.
+ * <p>
+ * A second WebSocket that is opened and authenticated but not subscribed, so it carries only
+ * control messages. When the primary connection is lost the session {@link #take() takes} the
+ * standby and subscribes on it from the resume offset, skipping the reconnect delay and the
+ * handshake. Events the old connection had already delivered arrive again and are dropped by
+ * the offset deduplicator.
+ * <p>
+ * The standby is pinged like the primary; one that stops answering, is closed by the server or
+ * never acknowledges connection_init is closed and, while it should be kept warm, reopened after
+ * the reconnect delay.
+ */
+public class StandbyConnection {
+
+    private static final Logger logger = LoggerFactory.getLogger(StandbyConnection.class);
+
+    /**
+     * When a standby connection is kept
+     */
+    public enum Mode {
+        /** No standby; failover reconnects */
+        OFF,
+        /** A standby is kept warm whenever the primary is subscribed */
+        WARM,
+        /** A standby is opened once the primary's pings slow down or go unanswered */
+        ON_DEGRADED
+    }
+
+    public enum State {
+        CLOSED,
+        CONNECTING,
+        AWAITING_ACK,
+        /** Authenticated and ready to take over */
+        READY
+    }
+
+    /**
+     * Sends a text message on a WebSocket session
+     */
+    @FunctionalInterface
+    public interface Sender {
+        void send(WebSocketSession session, String message) throws IOException;
+    }
+
+    private final String chainCode;
+    private final ScheduledExecutorService scheduler;
+    private final Supplier<CompletableFuture<WebSocketSession>> opener;
+    private final Sender sender;
+    private final Supplier<String> authMessage;
+    private final Supplier<String> pingMessage;
+    private final EnvelopeExtractor envelopeExtractor;
+    private final long pingIntervalSeconds;
+    private final long livenessNanos;
+    private final long ackTimeoutSeconds;
+    private final long retryDelaySeconds;
+
+    // Guarded by this; the lock is never held across I/O
+    private State state = State.CLOSED;
+    private long generation;
+    private boolean keepWarm;
+    private ScheduledFuture<?> pingTask;
+    private ScheduledFuture<?> timeoutTask;
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+    private volatile WebSocketSession session;
+    private volatile long lastReceivedNanos;
+
+    /**
+     * @param opener starts the WebSocket handshake, with the chain session as handler
+     */
+    public StandbyConnection(String chainCode, OracleHospitalityConfig config, ScheduledExecutorService scheduler,
+                             Supplier<CompletableFuture<WebSocketSession>> opener, Sender sender,
+                             Supplier<String> authMessage, Supplier<String> pingMessage,
+                             EnvelopeExtractor envelopeExtractor) {
+        this.chainCode = chainCode;
+        this.scheduler = scheduler;
+        this.opener = opener;
+        this.sender = sender;
+        this.authMessage = authMessage;
+        this.pingMessage = pingMessage;
+        this.envelopeExtractor = envelopeExtractor;
+        this.pingIntervalSeconds = config.getPingIntervalSeconds();
+        this.livenessNanos = TimeUnit.SECONDS.toNanos(
+                config.getPingIntervalSeconds() + config.getKeepAlive().getPongTimeoutSeconds());
+        this.ackTimeoutSeconds = config.getConnectionAckTimeoutSeconds();
+        this.retryDelaySeconds = config.getReconnectDelaySeconds();
+    }
+
+    /**
+     * Opens the standby unless one is open or opening, and keeps reopening it until it is
+     * {@link #take() taken} or {@link #close() closed}
+     *
+     * @param reason why the standby is wanted, for the log
+     */
+    public void warm(String reason) {
+        long attemptGeneration;
+        synchronized (this) {
+            keepWarm = true;
+            if (state != State.CLOSED) {
+                return;
+            }
+            state = State.CONNECTING;
+            attemptGeneration = ++generation;
+        }
+        logger.info("Opening standby connection for chain {}: {}", chainCode, reason);
+        CompletableFuture<WebSocketSession> handshake;
+        try {
+            handshake = opener.get();
+        } catch (Exception e) {
+            handshake = CompletableFuture.failedFuture(e);
+        }
+        handshake.whenComplete((opened, ex) -> {
+            if (ex != null) {
+                lost(attemptGeneration, "handshake failed: " + ex);
+            } else {
+                onOpened(attemptGeneration, opened);
+            }
+        });
+    }
+
+    private void onOpened(long attemptGeneration, WebSocketSession opened) {
+        boolean current;
+        synchronized (this) {
+            current = attemptGeneration == generation;
+            if (current) {
+                session = opened;
+                lastReceivedNanos = System.nanoTime();
+                state = State.AWAITING_ACK;
+                timeoutTask = scheduler.schedule(() -> lost(attemptGeneration, "no connection_ack"),
+                        ackTimeoutSeconds, TimeUnit.SECONDS);
+            }
+        }
+        if (!current) {
+            // Closed or taken while the handshake was running
+            closeQuietly(opened);
+            return;
+        }
+        try {
+            sender.send(opened, authMessage.get());
+        } catch (Exception e) {
+            lost(attemptGeneration, "authentication failed: " + e);
+        }
+    }
+
+    /**
+     * Checks if a WebSocket callback is about the standby rather than the primary
+     */
+    public boolean owns(WebSocketSession webSocketSession) {
+        return webSocketSession != null && webSocketSession == session;
+    }
+
+    /**
+     * Handles a text frame received on the standby
+     */
+    public void handleFrame(String payload, boolean last) {
+        handleFrame(payload.getBytes(StandardCharsets.UTF_8), last);
+    }
+
+    /**
+     * Handles a binary frame received on the standby
+     */
+    public void handleFrame(ByteBuffer payload, boolean last) {
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        handleFrame(bytes, last);
+    }
+
+    private void handleFrame(byte[] bytes, boolean last) {
+        lastReceivedNanos = System.nanoTime();
+        byte[] message;
+        long currentGeneration;
+        synchronized (this) {
+            pending.write(bytes, 0, bytes.length);
+            if (!last) {
+                return;
+            }
+            message = pending.toByteArray();
+            pending.reset();
+            currentGeneration = generation;
+        }
+
+        String type;
+        try {
+            type = envelopeExtractor.readType(AssembledMessage.wrap(message, System.nanoTime()));
+        } catch (IOException e) {
+            logger.warn("Unreadable message on standby connection of chain {}", chainCode, e);
+            return;
+        }
+        if ("connection_ack".equals(type)) {
+            onConnectionAck(currentGeneration);
+        } else if ("error".equals(type) || "complete".equals(type)) {
+            lost(currentGeneration, type + " received");
+        }
+    }
+
+    private void onConnectionAck(long attemptGeneration) {
+        synchronized (this) {
+            if (attemptGeneration != generation || state != State.AWAITING_ACK) {
+                return;
+            }
+            cancelTasks();
+            state = State.READY;
+            pingTask = scheduler.scheduleAtFixedRate(() -> ping(attemptGeneration),
+                    pingIntervalSeconds, pingIntervalSeconds, TimeUnit.SECONDS);
+        }
+        logger.info("Standby connection of chain {} ready", chainCode);
+    }
+
+    private void ping(long attemptGeneration) {
+        WebSocketSession current = session;
+        if (System.nanoTime() - lastReceivedNanos > livenessNanos) {
+            lost(attemptGeneration, "no pong");
+            return;
+        }
+        try {
+            sender.send(current, pingMessage.get());
+        } catch (Exception e) {
+            lost(attemptGeneration, "ping failed: " + e);
+        }
+    }
+
+    /**
+     * Handles the close of, or a transport error on, the standby
+     */
+    public void closed(WebSocketSession webSocketSession, String reason) {
+        long currentGeneration;
+        synchronized (this) {
+            if (webSocketSession != session) {
+                return;
+            }
+            currentGeneration = generation;
+        }
+        lost(currentGeneration, reason);
+    }
+
+    private void lost(long attemptGeneration, String reason) {
+        WebSocketSession closing;
+        boolean retry;
+        synchronized (this) {
+            if (attemptGeneration != generation) {
+                return;
+            }
+            closing = reset();
+            retry = keepWarm;
+        }
+        logger.warn("Standby connection of chain {} lost: {}{}", chainCode, reason,
+                retry ? ". Reopening in " + retryDelaySeconds + "s" : "");
+        if (closing != null) {
+            closeQuietly(closing);
+        }
+        if (retry) {
+            try {
+                scheduler.schedule(() -> {
+                    synchronized (this) {
+                        if (!keepWarm) {
+                            return;
+                        }
+                    }
+                    warm("retry");
+                }, retryDelaySeconds, TimeUnit.SECONDS);
+            } catch (RejectedExecutionException e) {
+                logger.debug("Scheduler shut down; not reopening standby of chain {}", chainCode);
+            }
+        }
+    }
+
+    /**
+     * Hands over the standby if it is ready. The caller owns the returned session, which is
+     * authenticated but not subscribed. No new standby is opened until {@link #warm} is called.
+     *
+     * @return the standby session, or null if none is ready
+     */
+    public synchronized WebSocketSession take() {
+        if (state != State.READY) {
+            return null;
+        }
+        WebSocketSession taken = session;
+        session = null;
+        reset();
+        keepWarm = false;
+        return taken;
+    }
+
+    /**
+     * Closes the standby and stops reopening it
+     */
+    public void close() {
+        WebSocketSession closing;
+        synchronized (this) {
+            keepWarm = false;
+            closing = reset();
+        }
+        if (closing != null) {
+            closeQuietly(closing);
+        }
+    }
+
+    private WebSocketSession reset() {
+        generation++;
+        state = State.CLOSED;
+        cancelTasks();
+        pending.reset();
+        WebSocketSession previous = session;
+        session = null;
+        return previous;
+    }
+
+    private void cancelTasks() {
+        if (pingTask != null) {
+            pingTask.cancel(false);
+            pingTask = null;
+        }
+        if (timeoutTask != null) {
+            timeoutTask.cancel(false);
+            timeoutTask = null;
+        }
+    }
+
+    private void closeQuietly(WebSocketSession closing) {
+        try {
+            closing.close();
+        } catch (IOException e) {
+            logger.debug("Failed to close standby connection of chain {}", chainCode, e);
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public boolean isReady() {
+        return getState() == State.READY;
+    }
+}
@@ -0,0 +1,41 @@
+package mc.sbm.OperaWebSocket.config;
+
+import mc.sbm.OperaWebSocket.service.ChainOwnershipCoordinator;
+import mc.sbm.OperaWebSocket.service.FileLockChainOwnership;
+import mc.sbm.OperaWebSocket.service.KafkaGroupChainOwnership;
+import mc.sbm.OperaWebSocket.service.OffsetCheckpointService;
+import mc.sbm.OperaWebSocket.service.StaticChainOwnership;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.lang.management.ManagementFactory;
+
+@Configuration
+public class ClusterConfiguration {
+
+    @Value("${spring.kafka.bootstrap-servers}")
+    private String bootstrapServers;
+
+    /**
+     * Creates the chain ownership coordinator selected by the cluster mode.
+     * The streaming client stops it on shutdown.
+     */
+    @Bean(destroyMethod = "")
+    public ChainOwnershipCoordinator chainOwnershipCoordinator(OracleHospitalityConfig config,
+                                                               OffsetCheckpointService checkpointService) {
+        OracleHospitalityConfig.ClusterConfig cluster = config.getCluster();
+        String nodeId = cluster.getNodeId() != null && !cluster.getNodeId().isEmpty()
+                ? cluster.getNodeId()
+                : ManagementFactory.getRuntimeMXBean().getName();
+
+        switch (cluster.getMode()) {
+            case FILE_LOCK:
+                return new FileLockChainOwnership(cluster, nodeId, checkpointService);
+            case KAFKA_GROUP:
+                return new KafkaGroupChainOwnership(cluster, bootstrapServers, nodeId, checkpointService);
+            default:
+                return new StaticChainOwnership(nodeId);
+        }
+    }
+}
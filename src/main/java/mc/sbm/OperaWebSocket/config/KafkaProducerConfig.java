@@ -1,12 +1,16 @@
 package mc.sbm.OperaWebSocket.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import mc.sbm.OperaWebSocket.service.ProducerBatchTuner;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.core.DefaultKafkaProducerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.MicrometerProducerListener;
 import org.springframework.kafka.core.ProducerFactory;
 
 import java.util.HashMap;
@@ -15,6 +19,22 @@ import java.util.Map;
 @Configuration
 public class KafkaProducerConfig {
 
+    /**
+     * Producer settings presets, selected per deployment
+     */
+    public enum ProducerProfile {
+        /** One request in flight per connection and short linger; the original settings */
+        CONSERVATIVE,
+        /**
+         * Up to five requests in flight, which the idempotent producer keeps in order, with
+         * larger batches sized from observed traffic
+         */
+        THROUGHPUT
+    }
+
+    @Value("${oracle.hospitality.kafka.producer-profile:CONSERVATIVE}")
+    private ProducerProfile profile;
+
     @Value("${spring.kafka.bootstrap-servers}")
     private String bootstrapServers;
 
@@ -42,6 +62,27 @@ public class KafkaProducerConfig {
     @Value("${spring.kafka.producer.properties.enable.idempotence:true}")
     private boolean enableIdempotence;
 
+    @Value("${spring.kafka.producer.properties.max.block.ms:10000}")
+    private long maxBlockMs;
+
+    @Value("${oracle.hospitality.kafka.throughput.adaptive:true}")
+    private boolean adaptiveBatching;
+
+    @Value("${oracle.hospitality.kafka.throughput.min-batch-size:16384}")
+    private int minBatchSize;
+
+    @Value("${oracle.hospitality.kafka.throughput.max-batch-size:262144}")
+    private int maxBatchSize;
+
+    @Value("${oracle.hospitality.kafka.throughput.min-linger-ms:1}")
+    private int minLingerMs;
+
+    @Value("${oracle.hospitality.kafka.throughput.max-linger-ms:20}")
+    private int maxLingerMs;
+
+    @Value("${oracle.hospitality.kafka.throughput.tune-interval-seconds:60}")
+    private long tuneIntervalSeconds;
+
     /**
      * Creates producer configuration map
      */
@@ -52,7 +93,8 @@ public class KafkaProducerConfig {
         // Basic configuration
         props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        // Values are the raw UTF-8 event bytes received from the WebSocket, published without re-encoding
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
 
         // Reliability configuration
         props.put(ProducerConfig.ACKS_CONFIG, acks);
@@ -65,23 +107,50 @@ public class KafkaProducerConfig {
         props.put(ProducerConfig.BUFFER_MEMORY_CONFIG, bufferMemory);
         props.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, compressionType);
         props.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+        // Fail sends quickly when brokers are unreachable so events move to the spill log
+        props.put(ProducerConfig.MAX_BLOCK_MS_CONFIG, maxBlockMs);
+
+        if (profile == ProducerProfile.THROUGHPUT) {
+            // Ordering with several requests in flight relies on the idempotent producer
+            props.put(ProducerConfig.ACKS_CONFIG, "all");
+            props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+            props.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, 5);
+            props.put(ProducerConfig.RETRIES_CONFIG, Integer.MAX_VALUE);
+            props.put(ProducerConfig.BATCH_SIZE_CONFIG, Math.max(batchSize, 4 * minBatchSize));
+            props.put(ProducerConfig.LINGER_MS_CONFIG, maxLingerMs);
+        }
 
         return props;
     }
 
     /**
-     * Creates producer factory
+     * Creates producer factory. The producer's own metrics (batch size, records per request,
+     * request latency, buffer usage) are published to Micrometer as kafka.producer.*
+     */
+    @Bean
+    public ProducerFactory<String, byte[]> producerFactory(MeterRegistry meterRegistry) {
+        DefaultKafkaProducerFactory<String, byte[]> factory = new DefaultKafkaProducerFactory<>(producerConfigs());
+        factory.addListener(new MicrometerProducerListener<>(meterRegistry));
+        return factory;
+    }
+
+    /**
+     * Creates the batch tuner, active only with the THROUGHPUT profile. Sends go through the
+     * tuner's current template, which it replaces when it retunes the producer.
      */
     @Bean
-    public ProducerFactory<String, String> producerFactory() {
-        return new DefaultKafkaProducerFactory<>(producerConfigs());
+    public ProducerBatchTuner producerBatchTuner(KafkaTemplate<String, byte[]> kafkaTemplate,
+                                                 MeterRegistry meterRegistry) {
+        return new ProducerBatchTuner(kafkaTemplate, meterRegistry,
+                profile == ProducerProfile.THROUGHPUT && adaptiveBatching,
+                minBatchSize, maxBatchSize, minLingerMs, maxLingerMs, tuneIntervalSeconds);
     }
 
     /**
      * Creates KafkaTemplate for sending messages
      */
     @Bean
-    public KafkaTemplate<String, String> kafkaTemplate() {
-        return new KafkaTemplate<>(producerFactory());
+    public KafkaTemplate<String, byte[]> kafkaTemplate(ProducerFactory<String, byte[]> producerFactory) {
+        return new KafkaTemplate<>(producerFactory);
     }
 }
\ No newline at end of file
@@ -1,9 +1,17 @@
 
 package mc.sbm.OperaWebSocket.config;
 
+import mc.sbm.OperaWebSocket.client.StandbyConnection;
+import mc.sbm.OperaWebSocket.websocket.KafkaKeyExtractor;
+import mc.sbm.OperaWebSocket.websocket.MessageIngestQueue;
+import mc.sbm.OperaWebSocket.websocket.SubscriptionQueryBuilder;
+import mc.sbm.OperaWebSocket.websocket.TopicRouter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Configuration properties for Oracle Hospitality Streaming API
  */
@@ -15,11 +23,26 @@ public class OracleHospitalityConfig {
     private String appKey;
     private String oauthToken;
     private String chainCode;
+    private List<ChainConfig> chains = new ArrayList<>();
+    private List<String> subscriptionFields = new ArrayList<>(SubscriptionQueryBuilder.DEFAULT_FIELDS);
     private boolean autoStart = true;
     private int reconnectDelaySeconds = 30;
     private int pingIntervalSeconds = 240;
+    private int connectionAckTimeoutSeconds = 10;
+    private ReconnectConfig reconnect = new ReconnectConfig();
+    private KeepAliveConfig keepAlive = new KeepAliveConfig();
+    private StandbyConfig standby = new StandbyConfig();
     private int maxTextMessageBufferSize = 10485760;
     private ProxyConfig proxy = new ProxyConfig();
+    private IngestConfig ingest = new IngestConfig();
+    private CheckpointConfig checkpoint = new CheckpointConfig();
+    private KafkaSpillConfig kafkaSpill = new KafkaSpillConfig();
+    private ClusterConfig cluster = new ClusterConfig();
+    private FilterConfig filter = new FilterConfig();
+    private DedupConfig dedup = new DedupConfig();
+    private HandlerConfig handlers = new HandlerConfig();
+    private KafkaKeyConfig kafkaKey = new KafkaKeyConfig();
+    private RoutingConfig routing = new RoutingConfig();
 
     // Getters and setters
     public String getUrl() {
@@ -54,6 +77,49 @@ public class OracleHospitalityConfig {
         this.chainCode = chainCode;
     }
 
+    public List<ChainConfig> getChains() {
+        return chains;
+    }
+
+    public void setChains(List<ChainConfig> chains) {
+        this.chains = chains;
+    }
+
+    public List<String> getSubscriptionFields() {
+        return subscriptionFields;
+    }
+
+    public void setSubscriptionFields(List<String> subscriptionFields) {
+        this.subscriptionFields = subscriptionFields;
+    }
+
+    /**
+     * Gets the chains to ingest, with credentials and subscription fields inherited from the
+     * top-level settings where a chain does not define its own. Falls back to the single top-level chainCode
+     * when no chains list is configured.
+     */
+    public List<ChainConfig> getEffectiveChains() {
+        List<ChainConfig> effective = new ArrayList<>();
+        if (chains.isEmpty()) {
+            effective.add(resolve(new ChainConfig(chainCode)));
+        } else {
+            for (ChainConfig chain : chains) {
+                effective.add(resolve(chain));
+            }
+        }
+        return effective;
+    }
+
+    private ChainConfig resolve(ChainConfig chain) {
+        ChainConfig resolved = new ChainConfig(chain.getChainCode());
+        resolved.setAppKey(chain.getAppKey() != null ? chain.getAppKey() : appKey);
+        resolved.setOauthToken(chain.getOauthToken() != null ? chain.getOauthToken() : oauthToken);
+        resolved.setSubscriptionFields(chain.getSubscriptionFields() != null
+                ? chain.getSubscriptionFields() : subscriptionFields);
+        resolved.setFilter(chain.getFilter());
+        return resolved;
+    }
+
     public boolean isAutoStart() {
         return autoStart;
     }
@@ -62,6 +128,9 @@ public class OracleHospitalityConfig {
         this.autoStart = autoStart;
     }
 
+    /**
+     * Gets the longest delay between reconnect attempts
+     */
     public int getReconnectDelaySeconds() {
         return reconnectDelaySeconds;
     }
@@ -86,6 +155,38 @@ public class OracleHospitalityConfig {
         this.maxTextMessageBufferSize = maxTextMessageBufferSize;
     }
 
+    public int getConnectionAckTimeoutSeconds() {
+        return connectionAckTimeoutSeconds;
+    }
+
+    public void setConnectionAckTimeoutSeconds(int connectionAckTimeoutSeconds) {
+        this.connectionAckTimeoutSeconds = connectionAckTimeoutSeconds;
+    }
+
+    public ReconnectConfig getReconnect() {
+        return reconnect;
+    }
+
+    public void setReconnect(ReconnectConfig reconnect) {
+        this.reconnect = reconnect;
+    }
+
+    public KeepAliveConfig getKeepAlive() {
+        return keepAlive;
+    }
+
+    public void setKeepAlive(KeepAliveConfig keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    public StandbyConfig getStandby() {
+        return standby;
+    }
+
+    public void setStandby(StandbyConfig standby) {
+        this.standby = standby;
+    }
+
     public ProxyConfig getProxy() {
         return proxy;
     }
@@ -94,6 +195,257 @@ public class OracleHospitalityConfig {
         this.proxy = proxy;
     }
 
+    public IngestConfig getIngest() {
+        return ingest;
+    }
+
+    public void setIngest(IngestConfig ingest) {
+        this.ingest = ingest;
+    }
+
+    public CheckpointConfig getCheckpoint() {
+        return checkpoint;
+    }
+
+    public void setCheckpoint(CheckpointConfig checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    public KafkaSpillConfig getKafkaSpill() {
+        return kafkaSpill;
+    }
+
+    public void setKafkaSpill(KafkaSpillConfig kafkaSpill) {
+        this.kafkaSpill = kafkaSpill;
+    }
+
+    public ClusterConfig getCluster() {
+        return cluster;
+    }
+
+    public void setCluster(ClusterConfig cluster) {
+        this.cluster = cluster;
+    }
+
+    public FilterConfig getFilter() {
+        return filter;
+    }
+
+    public void setFilter(FilterConfig filter) {
+        this.filter = filter;
+    }
+
+    public DedupConfig getDedup() {
+        return dedup;
+    }
+
+    public void setDedup(DedupConfig dedup) {
+        this.dedup = dedup;
+    }
+
+    public HandlerConfig getHandlers() {
+        return handlers;
+    }
+
+    public void setHandlers(HandlerConfig handlers) {
+        this.handlers = handlers;
+    }
+
+    public KafkaKeyConfig getKafkaKey() {
+        return kafkaKey;
+    }
+
+    public void setKafkaKey(KafkaKeyConfig kafkaKey) {
+        this.kafkaKey = kafkaKey;
+    }
+
+    public RoutingConfig getRouting() {
+        return routing;
+    }
+
+    public void setRouting(RoutingConfig routing) {
+        this.routing = routing;
+    }
+
+    public static class ChainConfig {
+        private String chainCode;
+        private String appKey;
+        private String oauthToken;
+        private List<String> subscriptionFields;
+        private FilterConfig filter;
+
+        public ChainConfig() {
+        }
+
+        public ChainConfig(String chainCode) {
+            this.chainCode = chainCode;
+        }
+
+        public String getChainCode() {
+            return chainCode;
+        }
+
+        public void setChainCode(String chainCode) {
+            this.chainCode = chainCode;
+        }
+
+        public String getAppKey() {
+            return appKey;
+        }
+
+        public void setAppKey(String appKey) {
+            this.appKey = appKey;
+        }
+
+        public String getOauthToken() {
+            return oauthToken;
+        }
+
+        public void setOauthToken(String oauthToken) {
+            this.oauthToken = oauthToken;
+        }
+
+        public List<String> getSubscriptionFields() {
+            return subscriptionFields;
+        }
+
+        public void setSubscriptionFields(List<String> subscriptionFields) {
+            this.subscriptionFields = subscriptionFields;
+        }
+
+        /**
+         * Gets the event filter of this chain, or null to use the top-level filter
+         */
+        public FilterConfig getFilter() {
+            return filter;
+        }
+
+        public void setFilter(FilterConfig filter) {
+            this.filter = filter;
+        }
+    }
+
+    public static class ReconnectConfig {
+        private long initialDelayMillis = 100;
+        private long baseDelayMillis = 1000;
+        private double multiplier = 2.0;
+        private double jitter = 0.5;
+        private long stableAfterSeconds = 30;
+
+        public long getInitialDelayMillis() {
+            return initialDelayMillis;
+        }
+
+        public void setInitialDelayMillis(long initialDelayMillis) {
+            this.initialDelayMillis = initialDelayMillis;
+        }
+
+        public long getBaseDelayMillis() {
+            return baseDelayMillis;
+        }
+
+        public void setBaseDelayMillis(long baseDelayMillis) {
+            this.baseDelayMillis = baseDelayMillis;
+        }
+
+        public double getMultiplier() {
+            return multiplier;
+        }
+
+        public void setMultiplier(double multiplier) {
+            this.multiplier = multiplier;
+        }
+
+        public double getJitter() {
+            return jitter;
+        }
+
+        public void setJitter(double jitter) {
+            this.jitter = jitter;
+        }
+
+        public long getStableAfterSeconds() {
+            return stableAfterSeconds;
+        }
+
+        public void setStableAfterSeconds(long stableAfterSeconds) {
+            this.stableAfterSeconds = stableAfterSeconds;
+        }
+    }
+
+    public static class KeepAliveConfig {
+        private long idleProbeSeconds = 30;
+        private long pongTimeoutSeconds = 30;
+        private int maxMissedPongs = 2;
+        private long staleConnectionSeconds = 300;
+
+        public long getPongTimeoutSeconds() {
+            return pongTimeoutSeconds;
+        }
+
+        public void setPongTimeoutSeconds(long pongTimeoutSeconds) {
+            this.pongTimeoutSeconds = pongTimeoutSeconds;
+        }
+
+        /**
+         * Gets the time without any received message after which a ping is sent ahead of the
+         * ping interval to probe the link, or 0 to only ping at the interval
+         */
+        public long getIdleProbeSeconds() {
+            return idleProbeSeconds;
+        }
+
+        public void setIdleProbeSeconds(long idleProbeSeconds) {
+            this.idleProbeSeconds = idleProbeSeconds;
+        }
+
+        /**
+         * Gets the number of consecutive unanswered pings after which the connection is considered dead
+         */
+        public int getMaxMissedPongs() {
+            return maxMissedPongs;
+        }
+
+        public void setMaxMissedPongs(int maxMissedPongs) {
+            this.maxMissedPongs = maxMissedPongs;
+        }
+
+        /**
+         * Gets the time without any received message after which the connection is considered dead
+         */
+        public long getStaleConnectionSeconds() {
+            return staleConnectionSeconds;
+        }
+
+        public void setStaleConnectionSeconds(long staleConnectionSeconds) {
+            this.staleConnectionSeconds = staleConnectionSeconds;
+        }
+    }
+
+    public static class StandbyConfig {
+        private StandbyConnection.Mode mode = StandbyConnection.Mode.OFF;
+        private long degradedRoundTripMillis = 2000;
+
+        public StandbyConnection.Mode getMode() {
+            return mode;
+        }
+
+        public void setMode(StandbyConnection.Mode mode) {
+            this.mode = mode;
+        }
+
+        /**
+         * Gets the ping round trip above which ON_DEGRADED opens a standby
+         */
+        public long getDegradedRoundTripMillis() {
+            return degradedRoundTripMillis;
+        }
+
+        public void setDegradedRoundTripMillis(long degradedRoundTripMillis) {
+            this.degradedRoundTripMillis = degradedRoundTripMillis;
+        }
+    }
+
     public static class ProxyConfig {
         private boolean enabled = false;
         private String host = "";
@@ -123,4 +475,510 @@ public class OracleHospitalityConfig {
             this.port = port;
         }
     }
-}
\ No newline at end of file
+
+    public static class IngestConfig {
+        private int queueCapacity = 1000;
+        private MessageIngestQueue.BackpressurePolicy backpressurePolicy = MessageIngestQueue.BackpressurePolicy.BLOCK;
+        private int processingThreads = 1;
+        private String spillDirectory = System.getProperty("java.io.tmpdir") + "/ohip-ingest-spill";
+        private long spillMaxBytes = 256L * 1024 * 1024;
+        private int bufferSegmentSize = 64 * 1024;
+        private long bufferPoolMaxBytes = 16L * 1024 * 1024;
+        private int bufferCompactThresholdBytes = 16 * 1024;
+        private long bufferMaxInUseBytes = 64L * 1024 * 1024;
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public MessageIngestQueue.BackpressurePolicy getBackpressurePolicy() {
+            return backpressurePolicy;
+        }
+
+        public void setBackpressurePolicy(MessageIngestQueue.BackpressurePolicy backpressurePolicy) {
+            this.backpressurePolicy = backpressurePolicy;
+        }
+
+        public int getProcessingThreads() {
+            return processingThreads;
+        }
+
+        public void setProcessingThreads(int processingThreads) {
+            this.processingThreads = processingThreads;
+        }
+
+        public String getSpillDirectory() {
+            return spillDirectory;
+        }
+
+        public void setSpillDirectory(String spillDirectory) {
+            this.spillDirectory = spillDirectory;
+        }
+
+        /**
+         * Gets the maximum size of each chain's spill file, beyond which SPILL_TO_DISK blocks
+         */
+        public long getSpillMaxBytes() {
+            return spillMaxBytes;
+        }
+
+        public void setSpillMaxBytes(long spillMaxBytes) {
+            this.spillMaxBytes = spillMaxBytes;
+        }
+
+        public int getBufferSegmentSize() {
+            return bufferSegmentSize;
+        }
+
+        public void setBufferSegmentSize(int bufferSegmentSize) {
+            this.bufferSegmentSize = bufferSegmentSize;
+        }
+
+        public long getBufferPoolMaxBytes() {
+            return bufferPoolMaxBytes;
+        }
+
+        public void setBufferPoolMaxBytes(long bufferPoolMaxBytes) {
+            this.bufferPoolMaxBytes = bufferPoolMaxBytes;
+        }
+
+        /**
+         * Gets the size up to which a message assembled in one segment is copied out of it
+         */
+        public int getBufferCompactThresholdBytes() {
+            return bufferCompactThresholdBytes;
+        }
+
+        public void setBufferCompactThresholdBytes(int bufferCompactThresholdBytes) {
+            this.bufferCompactThresholdBytes = bufferCompactThresholdBytes;
+        }
+
+        /**
+         * Gets the bytes of segments held by messages beyond which every message is copied out of its segments
+         */
+        public long getBufferMaxInUseBytes() {
+            return bufferMaxInUseBytes;
+        }
+
+        public void setBufferMaxInUseBytes(long bufferMaxInUseBytes) {
+            this.bufferMaxInUseBytes = bufferMaxInUseBytes;
+        }
+    }
+
+    public static class CheckpointConfig {
+        private boolean enabled = true;
+        private String directory = System.getProperty("user.home") + "/.ohip-streaming/checkpoints";
+        private long flushIntervalMillis = 1000;
+        private int maxInFlight = 100000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        /**
+         * Gets the directory holding offsets.properties. Set an absolute path per deployment
+         */
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+
+        public long getFlushIntervalMillis() {
+            return flushIntervalMillis;
+        }
+
+        public void setFlushIntervalMillis(long flushIntervalMillis) {
+            this.flushIntervalMillis = flushIntervalMillis;
+        }
+
+        /**
+         * Gets the number of unacknowledged offsets above the checkpoint beyond which the chain resubscribes
+         */
+        public int getMaxInFlight() {
+            return maxInFlight;
+        }
+
+        public void setMaxInFlight(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+        }
+    }
+
+    public static class KafkaSpillConfig {
+        private boolean enabled = false;
+        private String directory = System.getProperty("user.home") + "/.ohip-streaming/kafka-spill";
+        private int segmentSizeBytes = 64 * 1024 * 1024;
+        private long maxBytes = 1024L * 1024 * 1024;
+        private long drainIntervalMillis = 1000;
+        private int drainBatchSize = 500;
+        private long drainTimeoutSeconds = 30;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        /**
+         * Gets the directory holding the spill segments. Set an absolute path per deployment
+         */
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+
+        public int getSegmentSizeBytes() {
+            return segmentSizeBytes;
+        }
+
+        public void setSegmentSizeBytes(int segmentSizeBytes) {
+            this.segmentSizeBytes = segmentSizeBytes;
+        }
+
+        public long getMaxBytes() {
+            return maxBytes;
+        }
+
+        public void setMaxBytes(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        public long getDrainIntervalMillis() {
+            return drainIntervalMillis;
+        }
+
+        public void setDrainIntervalMillis(long drainIntervalMillis) {
+            this.drainIntervalMillis = drainIntervalMillis;
+        }
+
+        public int getDrainBatchSize() {
+            return drainBatchSize;
+        }
+
+        public void setDrainBatchSize(int drainBatchSize) {
+            this.drainBatchSize = drainBatchSize;
+        }
+
+        public long getDrainTimeoutSeconds() {
+            return drainTimeoutSeconds;
+        }
+
+        public void setDrainTimeoutSeconds(long drainTimeoutSeconds) {
+            this.drainTimeoutSeconds = drainTimeoutSeconds;
+        }
+    }
+
+    public static class FilterConfig {
+        private List<String> includeModules = new ArrayList<>();
+        private List<String> excludeModules = new ArrayList<>();
+        private List<String> includeEvents = new ArrayList<>();
+        private List<String> excludeEvents = new ArrayList<>();
+        private List<String> includeHotels = new ArrayList<>();
+        private List<String> excludeHotels = new ArrayList<>();
+
+        public List<String> getIncludeModules() {
+            return includeModules;
+        }
+
+        public void setIncludeModules(List<String> includeModules) {
+            this.includeModules = includeModules;
+        }
+
+        public List<String> getExcludeModules() {
+            return excludeModules;
+        }
+
+        public void setExcludeModules(List<String> excludeModules) {
+            this.excludeModules = excludeModules;
+        }
+
+        public List<String> getIncludeEvents() {
+            return includeEvents;
+        }
+
+        public void setIncludeEvents(List<String> includeEvents) {
+            this.includeEvents = includeEvents;
+        }
+
+        public List<String> getExcludeEvents() {
+            return excludeEvents;
+        }
+
+        public void setExcludeEvents(List<String> excludeEvents) {
+            this.excludeEvents = excludeEvents;
+        }
+
+        public List<String> getIncludeHotels() {
+            return includeHotels;
+        }
+
+        public void setIncludeHotels(List<String> includeHotels) {
+            this.includeHotels = includeHotels;
+        }
+
+        public List<String> getExcludeHotels() {
+            return excludeHotels;
+        }
+
+        public void setExcludeHotels(List<String> excludeHotels) {
+            this.excludeHotels = excludeHotels;
+        }
+    }
+
+    public static class DedupConfig {
+        private boolean enabled = true;
+        private int windowSize = 1 << 24;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getWindowSize() {
+            return windowSize;
+        }
+
+        public void setWindowSize(int windowSize) {
+            this.windowSize = windowSize;
+        }
+    }
+
+    public static class HandlerConfig {
+        private int threads = 0;
+        private int queueCapacity = 10000;
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public void setThreads(int threads) {
+            this.threads = threads;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+    }
+
+    public static class KafkaKeyConfig {
+        private KafkaKeyExtractor.Strategy strategy = KafkaKeyExtractor.Strategy.ENTITY;
+        private String jsonPointer;
+
+        public KafkaKeyExtractor.Strategy getStrategy() {
+            return strategy;
+        }
+
+        public void setStrategy(KafkaKeyExtractor.Strategy strategy) {
+            this.strategy = strategy;
+        }
+
+        public String getJsonPointer() {
+            return jsonPointer;
+        }
+
+        public void setJsonPointer(String jsonPointer) {
+            this.jsonPointer = jsonPointer;
+        }
+    }
+
+    public static class RoutingConfig {
+        private String topicPrefix = "opera";
+        private TopicRouter.Action defaultAction = TopicRouter.Action.EVENT_TOPIC;
+        private List<RouteRule> rules = new ArrayList<>();
+        private List<String> prewarmEvents = new ArrayList<>();
+
+        public String getTopicPrefix() {
+            return topicPrefix;
+        }
+
+        public void setTopicPrefix(String topicPrefix) {
+            this.topicPrefix = topicPrefix;
+        }
+
+        public TopicRouter.Action getDefaultAction() {
+            return defaultAction;
+        }
+
+        public void setDefaultAction(TopicRouter.Action defaultAction) {
+            this.defaultAction = defaultAction;
+        }
+
+        public List<RouteRule> getRules() {
+            return rules;
+        }
+
+        public void setRules(List<RouteRule> rules) {
+            this.rules = rules;
+        }
+
+        public List<String> getPrewarmEvents() {
+            return prewarmEvents;
+        }
+
+        public void setPrewarmEvents(List<String> prewarmEvents) {
+            this.prewarmEvents = prewarmEvents;
+        }
+    }
+
+    public static class RouteRule {
+        private String module = "*";
+        private String event = "*";
+        private TopicRouter.Action action = TopicRouter.Action.EVENT_TOPIC;
+        private String topic;
+
+        public String getModule() {
+            return module;
+        }
+
+        public void setModule(String module) {
+            this.module = module;
+        }
+
+        public String getEvent() {
+            return event;
+        }
+
+        public void setEvent(String event) {
+            this.event = event;
+        }
+
+        public TopicRouter.Action getAction() {
+            return action;
+        }
+
+        public void setAction(TopicRouter.Action action) {
+            this.action = action;
+        }
+
+        public String getTopic() {
+            return topic;
+        }
+
+        public void setTopic(String topic) {
+            this.topic = topic;
+        }
+    }
+
+    public static class ClusterConfig {
+
+        /**
+         * How chains are assigned to nodes when several instances run side by side
+         */
+        public enum Mode {
+            /** This instance ingests every configured chain */
+            NONE,
+            /** Chains are owned through exclusive locks on files in a shared directory */
+            FILE_LOCK,
+            /** Chains are owned through Kafka consumer group partition assignment */
+            KAFKA_GROUP
+        }
+
+        private Mode mode = Mode.NONE;
+        private String nodeId;
+        private long rebalanceIntervalMillis = 5000;
+        private String lockDirectory = "cluster-locks";
+        private int maxChainsPerNode = 0;
+        private String groupId = "ohip-chain-ownership";
+        private String ownershipTopic = "ohip-chain-ownership";
+        private int sessionTimeoutMillis = 10000;
+        private long handoverDrainTimeoutMillis = 10000;
+
+        public Mode getMode() {
+            return mode;
+        }
+
+        public void setMode(Mode mode) {
+            this.mode = mode;
+        }
+
+        public String getNodeId() {
+            return nodeId;
+        }
+
+        public void setNodeId(String nodeId) {
+            this.nodeId = nodeId;
+        }
+
+        public long getRebalanceIntervalMillis() {
+            return rebalanceIntervalMillis;
+        }
+
+        public void setRebalanceIntervalMillis(long rebalanceIntervalMillis) {
+            this.rebalanceIntervalMillis = rebalanceIntervalMillis;
+        }
+
+        public String getLockDirectory() {
+            return lockDirectory;
+        }
+
+        public void setLockDirectory(String lockDirectory) {
+            this.lockDirectory = lockDirectory;
+        }
+
+        public int getMaxChainsPerNode() {
+            return maxChainsPerNode;
+        }
+
+        public void setMaxChainsPerNode(int maxChainsPerNode) {
+            this.maxChainsPerNode = maxChainsPerNode;
+        }
+
+        public String getGroupId() {
+            return groupId;
+        }
+
+        public void setGroupId(String groupId) {
+            this.groupId = groupId;
+        }
+
+        public String getOwnershipTopic() {
+            return ownershipTopic;
+        }
+
+        public void setOwnershipTopic(String ownershipTopic) {
+            this.ownershipTopic = ownershipTopic;
+        }
+
+        public int getSessionTimeoutMillis() {
+            return sessionTimeoutMillis;
+        }
+
+        public void setSessionTimeoutMillis(int sessionTimeoutMillis) {
+            this.sessionTimeoutMillis = sessionTimeoutMillis;
+        }
+
+        /**
+         * Gets how long released chains may take to process their queued messages and Kafka
+         * sends before they are handed over anyway
+         */
+        public long getHandoverDrainTimeoutMillis() {
+            return handoverDrainTimeoutMillis;
+        }
+
+        public void setHandoverDrainTimeoutMillis(long handoverDrainTimeoutMillis) {
+            this.handoverDrainTimeoutMillis = handoverDrainTimeoutMillis;
+        }
+    }
+}
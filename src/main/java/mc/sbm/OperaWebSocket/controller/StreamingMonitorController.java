@@ -1,10 +1,14 @@
 
 package mc.sbm.OperaWebSocket.controller;
 
+import mc.sbm.OperaWebSocket.client.ChainStreamingSession;
 import mc.sbm.OperaWebSocket.client.OracleHospitalityStreamingClient;
 import mc.sbm.OperaWebSocket.dto.ConnectionStatusResponse;
 import mc.sbm.OperaWebSocket.dto.HealthResponse;
+import mc.sbm.OperaWebSocket.dto.IngestStatsResponse;
+import mc.sbm.OperaWebSocket.dto.LatencyResponse;
 import mc.sbm.OperaWebSocket.dto.OperationResponse;
+import mc.sbm.OperaWebSocket.service.EventLatencyTracker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
@@ -21,19 +25,31 @@ public class StreamingMonitorController {
     private static final Logger logger = LoggerFactory.getLogger(StreamingMonitorController.class);
 
     private final OracleHospitalityStreamingClient streamingClient;
+    private final EventLatencyTracker latencyTracker;
 
-    public StreamingMonitorController(OracleHospitalityStreamingClient streamingClient) {
+    public StreamingMonitorController(OracleHospitalityStreamingClient streamingClient,
+                                      EventLatencyTracker latencyTracker) {
         this.streamingClient = streamingClient;
+        this.latencyTracker = latencyTracker;
     }
 
     /**
      * Get current connection status
      *
+     * @param chainCode restricts the status to one chain; all chains when omitted
      * @return connection status details
      */
     @GetMapping("/status")
-    public ResponseEntity<ConnectionStatusResponse> getStatus() {
+    public ResponseEntity<ConnectionStatusResponse> getStatus(@RequestParam(required = false) String chainCode) {
         try {
+            if (chainCode != null) {
+                ChainStreamingSession session = streamingClient.getSession(chainCode);
+                if (session == null) {
+                    return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                            .body(ConnectionStatusResponse.error("Unknown chain: " + chainCode));
+                }
+                return ResponseEntity.ok(ConnectionStatusResponse.from(session, streamingClient.owns(chainCode)));
+            }
             ConnectionStatusResponse status = ConnectionStatusResponse.from(streamingClient);
             return ResponseEntity.ok(status);
         } catch (Exception e) {
@@ -43,24 +59,78 @@ public class StreamingMonitorController {
         }
     }
 
+    /**
+     * Get ingest queue statistics
+     *
+     * @return queue depth, throughput, backpressure and buffer pool counters
+     */
+    @GetMapping("/ingest")
+    public ResponseEntity<IngestStatsResponse> getIngestStats() {
+        try {
+            return ResponseEntity.ok(IngestStatsResponse.from(
+                    streamingClient.getSessions(), streamingClient.getBufferPool()));
+        } catch (Exception e) {
+            logger.error("Failed to retrieve ingest statistics", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(IngestStatsResponse.error(e.getMessage()));
+        }
+    }
+
+    /**
+     * Get end-to-end event latency per topic
+     *
+     * @return receive to Kafka acknowledgement percentiles since startup
+     */
+    @GetMapping("/latency")
+    public ResponseEntity<LatencyResponse> getLatency() {
+        try {
+            return ResponseEntity.ok(LatencyResponse.from(latencyTracker.snapshot()));
+        } catch (Exception e) {
+            logger.error("Failed to retrieve latency statistics", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(LatencyResponse.error(e.getMessage()));
+        }
+    }
+
     /**
      * Manually trigger connection
      *
+     * @param chainCode connects only this chain; all chains when omitted
      * @return operation result
      */
     @PostMapping("/connect")
-    public ResponseEntity<OperationResponse> connect() {
+    public ResponseEntity<OperationResponse> connect(@RequestParam(required = false) String chainCode) {
         try {
-            if (streamingClient.isConnected()) {
-                return ResponseEntity.ok(OperationResponse.success(
-                        "Already connected",
-                        "Connection is already established"
-                ));
+            if (chainCode != null) {
+                ChainStreamingSession session = streamingClient.getSession(chainCode);
+                if (session == null) {
+                    return unknownChain(chainCode);
+                }
+                if (!streamingClient.owns(chainCode)) {
+                    return ResponseEntity.status(HttpStatus.CONFLICT).body(OperationResponse.failure(
+                            "Chain not owned",
+                            "Chain " + chainCode + " is not owned by this node"
+                    ));
+                }
+                if (session.isConnected()) {
+                    return ResponseEntity.ok(OperationResponse.success(
+                            "Already connected",
+                            "Connection is already established for chain " + chainCode
+                    ));
+                }
+                session.reconnect();
+                logger.info("Manual connection of chain {} initiated via REST endpoint", chainCode);
+            } else {
+                if (streamingClient.isConnected()) {
+                    return ResponseEntity.ok(OperationResponse.success(
+                            "Already connected",
+                            "Connection is already established"
+                    ));
+                }
+                streamingClient.connect();
+                logger.info("Manual connection initiated via REST endpoint");
             }
 
-            streamingClient.connect();
-            logger.info("Manual connection initiated via REST endpoint");
-
             return ResponseEntity.ok(OperationResponse.success(
                     "Connection initiated",
                     "Connection process has been started"
@@ -75,21 +145,36 @@ public class StreamingMonitorController {
     /**
      * Manually disconnect
      *
+     * @param chainCode disconnects only this chain; all chains when omitted
      * @return operation result
      */
     @PostMapping("/disconnect")
-    public ResponseEntity<OperationResponse> disconnect() {
+    public ResponseEntity<OperationResponse> disconnect(@RequestParam(required = false) String chainCode) {
         try {
-            if (!streamingClient.isConnected()) {
-                return ResponseEntity.ok(OperationResponse.success(
-                        "Already disconnected",
-                        "Connection is not active"
-                ));
+            if (chainCode != null) {
+                ChainStreamingSession session = streamingClient.getSession(chainCode);
+                if (session == null) {
+                    return unknownChain(chainCode);
+                }
+                if (!session.isConnected()) {
+                    return ResponseEntity.ok(OperationResponse.success(
+                            "Already disconnected",
+                            "Connection is not active for chain " + chainCode
+                    ));
+                }
+                session.disconnect();
+                logger.info("Manual disconnect of chain {} initiated via REST endpoint", chainCode);
+            } else {
+                if (streamingClient.getSessions().stream().noneMatch(ChainStreamingSession::isConnected)) {
+                    return ResponseEntity.ok(OperationResponse.success(
+                            "Already disconnected",
+                            "Connection is not active"
+                    ));
+                }
+                streamingClient.disconnect();
+                logger.info("Manual disconnect initiated via REST endpoint");
             }
 
-            streamingClient.disconnect();
-            logger.info("Manual disconnect initiated via REST endpoint");
-
             return ResponseEntity.ok(OperationResponse.success(
                     "Disconnected",
                     "Connection has been terminated"
@@ -101,6 +186,11 @@ public class StreamingMonitorController {
         }
     }
 
+    private static ResponseEntity<OperationResponse> unknownChain(String chainCode) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body(OperationResponse.failure("Unknown chain", "Chain " + chainCode + " is not configured"));
+    }
+
     /**
      * Health check endpoint
      *
@@ -1,11 +1,13 @@
 package mc.sbm.OperaWebSocket.dto;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import mc.sbm.OperaWebSocket.client.ChainStreamingSession;
 import mc.sbm.OperaWebSocket.client.OracleHospitalityStreamingClient;
-import mc.sbm.OperaWebSocket.websocket.WebSocketConnectionManager;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Response DTO for connection status
@@ -13,10 +15,22 @@ import java.time.Instant;
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public class ConnectionStatusResponse {
 
+    private String nodeId;
+    private String chainCode;
+    private Boolean owned;
     private boolean connected;
     private String sessionId;
     private String lastMessageReceived;
     private Long secondsSinceLastMessage;
+    private Long committedOffset;
+    private Integer pendingKafkaAcks;
+    private String connectionState;
+    private String reconnectState;
+    private Integer reconnectAttempts;
+    private Long outageMillis;
+    private Double pingRoundTripMillis;
+    private String standbyState;
+    private List<ConnectionStatusResponse> chains;
     private String error;
 
     public ConnectionStatusResponse() {
@@ -31,15 +45,26 @@ public class ConnectionStatusResponse {
     }
 
     /**
-     * Creates status response from streaming client
+     * Creates status response from streaming client, with one entry per chain
      */
     public static ConnectionStatusResponse from(OracleHospitalityStreamingClient client) {
-        boolean connected = client.isConnected();
-        String sessionId = client.getSessionId();
+        ConnectionStatusResponse response = new ConnectionStatusResponse();
+        response.nodeId = client.getNodeId();
+        response.connected = client.isConnected();
+        response.chains = new ArrayList<>();
+        for (ChainStreamingSession session : client.getSessions()) {
+            response.chains.add(from(session, client.owns(session.getChainCode())));
+        }
+        return response;
+    }
 
-        // Access lastMessageReceived through a public getter method
-        // Note: You'll need to add this getter to OracleHospitalityStreamingClient
-        Instant lastMessage = getLastMessageReceivedFromClient(client);
+    /**
+     * Creates status response for a single chain
+     *
+     * @param owned whether this node currently owns the chain
+     */
+    public static ConnectionStatusResponse from(ChainStreamingSession session, boolean owned) {
+        Instant lastMessage = session.getLastMessageReceived();
 
         String lastMessageStr = lastMessage != null ? lastMessage.toString() : "Never";
         Long secondsSince = null;
@@ -48,7 +73,20 @@ public class ConnectionStatusResponse {
             secondsSince = Duration.between(lastMessage, Instant.now()).getSeconds();
         }
 
-        return new ConnectionStatusResponse(connected, sessionId, lastMessageStr, secondsSince);
+        ConnectionStatusResponse response = new ConnectionStatusResponse(
+                session.isConnected(), session.getSessionId(), lastMessageStr, secondsSince);
+        response.chainCode = session.getChainCode();
+        response.owned = owned;
+        response.committedOffset = session.getCommittedOffset();
+        response.pendingKafkaAcks = session.getPendingKafkaAcks();
+        response.connectionState = session.getConnectionState().name();
+        response.reconnectState = session.getReconnectState().name();
+        response.reconnectAttempts = session.getReconnectAttempts();
+        response.outageMillis = session.getOutageMillis();
+        double roundTrip = session.getPingRoundTripMillis();
+        response.pingRoundTripMillis = roundTrip >= 0 ? roundTrip : null;
+        response.standbyState = session.getStandbyState().name();
+        return response;
     }
 
     /**
@@ -61,14 +99,31 @@ public class ConnectionStatusResponse {
         return response;
     }
 
-    // Helper method - you should add a public getter in OracleHospitalityStreamingClient
-    private static Instant getLastMessageReceivedFromClient(OracleHospitalityStreamingClient client) {
-        // This assumes you add a getLastMessageReceived() method to the client
-        // For now, return null as placeholder
-        return null; // TODO: Add getter to client
+    // Getters and setters
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public String getChainCode() {
+        return chainCode;
+    }
+
+    public void setChainCode(String chainCode) {
+        this.chainCode = chainCode;
+    }
+
+    public Boolean getOwned() {
+        return owned;
+    }
+
+    public void setOwned(Boolean owned) {
+        this.owned = owned;
     }
 
-    // Getters and setters
     public boolean isConnected() {
         return connected;
     }
@@ -101,6 +156,78 @@ public class ConnectionStatusResponse {
         this.secondsSinceLastMessage = secondsSinceLastMessage;
     }
 
+    public Long getCommittedOffset() {
+        return committedOffset;
+    }
+
+    public void setCommittedOffset(Long committedOffset) {
+        this.committedOffset = committedOffset;
+    }
+
+    public Integer getPendingKafkaAcks() {
+        return pendingKafkaAcks;
+    }
+
+    public void setPendingKafkaAcks(Integer pendingKafkaAcks) {
+        this.pendingKafkaAcks = pendingKafkaAcks;
+    }
+
+    public String getConnectionState() {
+        return connectionState;
+    }
+
+    public void setConnectionState(String connectionState) {
+        this.connectionState = connectionState;
+    }
+
+    public String getReconnectState() {
+        return reconnectState;
+    }
+
+    public void setReconnectState(String reconnectState) {
+        this.reconnectState = reconnectState;
+    }
+
+    public Integer getReconnectAttempts() {
+        return reconnectAttempts;
+    }
+
+    public void setReconnectAttempts(Integer reconnectAttempts) {
+        this.reconnectAttempts = reconnectAttempts;
+    }
+
+    public Long getOutageMillis() {
+        return outageMillis;
+    }
+
+    public void setOutageMillis(Long outageMillis) {
+        this.outageMillis = outageMillis;
+    }
+
+    public Double getPingRoundTripMillis() {
+        return pingRoundTripMillis;
+    }
+
+    public void setPingRoundTripMillis(Double pingRoundTripMillis) {
+        this.pingRoundTripMillis = pingRoundTripMillis;
+    }
+
+    public String getStandbyState() {
+        return standbyState;
+    }
+
+    public void setStandbyState(String standbyState) {
+        this.standbyState = standbyState;
+    }
+
+    public List<ConnectionStatusResponse> getChains() {
+        return chains;
+    }
+
+    public void setChains(List<ConnectionStatusResponse> chains) {
+        this.chains = chains;
+    }
+
     public String getError() {
         return error;
     }
@@ -2,8 +2,11 @@
 package mc.sbm.OperaWebSocket.dto;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import mc.sbm.OperaWebSocket.client.ChainStreamingSession;
 import mc.sbm.OperaWebSocket.client.OracleHospitalityStreamingClient;
 
+import java.util.List;
+
 /**
  * Response DTO for health check
  */
@@ -12,27 +15,41 @@ public class HealthResponse {
 
     private String status;
     private boolean connected;
-    private String sessionId;
+    private Integer connectedChains;
+    private Integer ownedChains;
+    private Integer totalChains;
     private String error;
 
     public HealthResponse() {
     }
 
-    private HealthResponse(String status, boolean connected, String sessionId) {
+    private HealthResponse(String status, boolean connected, int connectedChains, int ownedChains, int totalChains) {
         this.status = status;
         this.connected = connected;
-        this.sessionId = sessionId;
+        this.connectedChains = connectedChains;
+        this.ownedChains = ownedChains;
+        this.totalChains = totalChains;
     }
 
     /**
-     * Creates health response from streaming client
+     * Creates health response from streaming client. The service is UP only while every chain
+     * owned by this node is connected, and STANDBY while another node owns all chains.
      */
     public static HealthResponse from(OracleHospitalityStreamingClient client) {
-        boolean connected = client.isConnected();
-        String status = connected ? "UP" : "DOWN";
-        String sessionId = connected ? client.getSessionId() : null;
-
-        return new HealthResponse(status, connected, sessionId);
+        List<ChainStreamingSession> owned = client.getOwnedSessions();
+        int totalChains = client.getSessions().size();
+        int connectedChains = (int) owned.stream().filter(ChainStreamingSession::isConnected).count();
+        boolean connected = !owned.isEmpty() && connectedChains == owned.size();
+        String status;
+        if (connected) {
+            status = "UP";
+        } else if (owned.isEmpty() && totalChains > 0) {
+            status = "STANDBY";
+        } else {
+            status = "DOWN";
+        }
+
+        return new HealthResponse(status, connected, connectedChains, owned.size(), totalChains);
     }
 
     /**
@@ -50,7 +67,7 @@ public class HealthResponse {
      * Checks if the service is healthy
      */
     public boolean isHealthy() {
-        return "UP".equals(status);
+        return "UP".equals(status) || "STANDBY".equals(status);
     }
 
     // Getters and setters
@@ -70,12 +87,28 @@ public class HealthResponse {
         this.connected = connected;
     }
 
-    public String getSessionId() {
-        return sessionId;
+    public Integer getConnectedChains() {
+        return connectedChains;
+    }
+
+    public void setConnectedChains(Integer connectedChains) {
+        this.connectedChains = connectedChains;
+    }
+
+    public Integer getOwnedChains() {
+        return ownedChains;
+    }
+
+    public void setOwnedChains(Integer ownedChains) {
+        this.ownedChains = ownedChains;
+    }
+
+    public Integer getTotalChains() {
+        return totalChains;
     }
 
-    public void setSessionId(String sessionId) {
-        this.sessionId = sessionId;
+    public void setTotalChains(Integer totalChains) {
+        this.totalChains = totalChains;
     }
 
     public String getError() {
@@ -0,0 +1,335 @@
+package mc.sbm.OperaWebSocket.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import mc.sbm.OperaWebSocket.client.ChainStreamingSession;
+import mc.sbm.OperaWebSocket.websocket.BufferPool;
+import mc.sbm.OperaWebSocket.websocket.MessageIngestQueue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Response DTO for ingest queue statistics
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class IngestStatsResponse {
+
+    private List<QueueStats> queues;
+    private BufferPoolStats bufferPool;
+    private String error;
+
+    public IngestStatsResponse() {
+    }
+
+    /**
+     * Creates statistics response from the ingest queue of every chain and the shared assembly buffer pool
+     */
+    public static IngestStatsResponse from(Collection<ChainStreamingSession> sessions, BufferPool bufferPool) {
+        IngestStatsResponse response = new IngestStatsResponse();
+        response.queues = new ArrayList<>(sessions.size());
+        for (ChainStreamingSession session : sessions) {
+            response.queues.add(QueueStats.from(session.getChainCode(), session.getIngestQueue()));
+        }
+        response.bufferPool = BufferPoolStats.from(bufferPool);
+        return response;
+    }
+
+    /**
+     * Creates error response
+     */
+    public static IngestStatsResponse error(String errorMessage) {
+        IngestStatsResponse response = new IngestStatsResponse();
+        response.error = errorMessage;
+        return response;
+    }
+
+    // Getters and setters
+    public List<QueueStats> getQueues() {
+        return queues;
+    }
+
+    public void setQueues(List<QueueStats> queues) {
+        this.queues = queues;
+    }
+
+    public BufferPoolStats getBufferPool() {
+        return bufferPool;
+    }
+
+    public void setBufferPool(BufferPoolStats bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    /**
+     * Ingest queue statistics of a single chain
+     */
+    public static class QueueStats {
+
+        private String chainCode;
+        private String queue;
+        private String backpressurePolicy;
+        private int capacity;
+        private int depth;
+        private int memoryDepth;
+        private int spillDepth;
+        private long spillSizeBytes;
+        private int highWaterMark;
+        private long enqueued;
+        private long processed;
+        private long failed;
+        private long dropped;
+        private long spilled;
+
+        public static QueueStats from(String chainCode, MessageIngestQueue ingestQueue) {
+            QueueStats stats = new QueueStats();
+            stats.chainCode = chainCode;
+            stats.queue = ingestQueue.getName();
+            stats.backpressurePolicy = ingestQueue.getPolicy().name();
+            stats.capacity = ingestQueue.getCapacity();
+            stats.memoryDepth = ingestQueue.getMemoryDepth();
+            stats.spillDepth = ingestQueue.getSpillDepth();
+            stats.depth = stats.memoryDepth + stats.spillDepth;
+            stats.spillSizeBytes = ingestQueue.getSpillSizeBytes();
+            stats.highWaterMark = ingestQueue.getHighWaterMark();
+            stats.enqueued = ingestQueue.getEnqueuedCount();
+            stats.processed = ingestQueue.getProcessedCount();
+            stats.failed = ingestQueue.getFailedCount();
+            stats.dropped = ingestQueue.getDroppedCount();
+            stats.spilled = ingestQueue.getSpilledCount();
+            return stats;
+        }
+
+        public String getChainCode() {
+            return chainCode;
+        }
+
+        public void setChainCode(String chainCode) {
+            this.chainCode = chainCode;
+        }
+
+        public String getQueue() {
+            return queue;
+        }
+
+        public void setQueue(String queue) {
+            this.queue = queue;
+        }
+
+        public String getBackpressurePolicy() {
+            return backpressurePolicy;
+        }
+
+        public void setBackpressurePolicy(String backpressurePolicy) {
+            this.backpressurePolicy = backpressurePolicy;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public void setCapacity(int capacity) {
+            this.capacity = capacity;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public void setDepth(int depth) {
+            this.depth = depth;
+        }
+
+        public int getMemoryDepth() {
+            return memoryDepth;
+        }
+
+        public void setMemoryDepth(int memoryDepth) {
+            this.memoryDepth = memoryDepth;
+        }
+
+        public int getSpillDepth() {
+            return spillDepth;
+        }
+
+        public void setSpillDepth(int spillDepth) {
+            this.spillDepth = spillDepth;
+        }
+
+        public long getSpillSizeBytes() {
+            return spillSizeBytes;
+        }
+
+        public void setSpillSizeBytes(long spillSizeBytes) {
+            this.spillSizeBytes = spillSizeBytes;
+        }
+
+        public int getHighWaterMark() {
+            return highWaterMark;
+        }
+
+        public void setHighWaterMark(int highWaterMark) {
+            this.highWaterMark = highWaterMark;
+        }
+
+        public long getEnqueued() {
+            return enqueued;
+        }
+
+        public void setEnqueued(long enqueued) {
+            this.enqueued = enqueued;
+        }
+
+        public long getProcessed() {
+            return processed;
+        }
+
+        public void setProcessed(long processed) {
+            this.processed = processed;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public void setFailed(long failed) {
+            this.failed = failed;
+        }
+
+        public long getDropped() {
+            return dropped;
+        }
+
+        public void setDropped(long dropped) {
+            this.dropped = dropped;
+        }
+
+        public long getSpilled() {
+            return spilled;
+        }
+
+        public void setSpilled(long spilled) {
+            this.spilled = spilled;
+        }
+    }
+
+    /**
+     * Message assembly buffer pool statistics
+     */
+    public static class BufferPoolStats {
+
+        private int segmentSize;
+        private int pooledSegments;
+        private long pooledBytes;
+        private int inUseSegments;
+        private long inUseBytes;
+        private long maxPooledBytes;
+        private long maxInUseBytes;
+        private long allocations;
+        private long reuses;
+        private long discards;
+
+        public static BufferPoolStats from(BufferPool pool) {
+            BufferPoolStats stats = new BufferPoolStats();
+            stats.segmentSize = pool.getSegmentSize();
+            stats.pooledSegments = pool.getPooledSegments();
+            stats.pooledBytes = pool.getPooledBytes();
+            stats.inUseSegments = pool.getInUseSegments();
+            stats.inUseBytes = pool.getInUseBytes();
+            stats.maxPooledBytes = pool.getMaxPooledBytes();
+            stats.maxInUseBytes = pool.getMaxInUseBytes();
+            stats.allocations = pool.getAllocations();
+            stats.reuses = pool.getReuses();
+            stats.discards = pool.getDiscards();
+            return stats;
+        }
+
+        public int getSegmentSize() {
+            return segmentSize;
+        }
+
+        public void setSegmentSize(int segmentSize) {
+            this.segmentSize = segmentSize;
+        }
+
+        public int getPooledSegments() {
+            return pooledSegments;
+        }
+
+        public void setPooledSegments(int pooledSegments) {
+            this.pooledSegments = pooledSegments;
+        }
+
+        public long getPooledBytes() {
+            return pooledBytes;
+        }
+
+        public void setPooledBytes(long pooledBytes) {
+            this.pooledBytes = pooledBytes;
+        }
+
+        public int getInUseSegments() {
+            return inUseSegments;
+        }
+
+        public void setInUseSegments(int inUseSegments) {
+            this.inUseSegments = inUseSegments;
+        }
+
+        public long getInUseBytes() {
+            return inUseBytes;
+        }
+
+        public void setInUseBytes(long inUseBytes) {
+            this.inUseBytes = inUseBytes;
+        }
+
+        public long getMaxPooledBytes() {
+            return maxPooledBytes;
+        }
+
+        public void setMaxPooledBytes(long maxPooledBytes) {
+            this.maxPooledBytes = maxPooledBytes;
+        }
+
+        public long getMaxInUseBytes() {
+            return maxInUseBytes;
+        }
+
+        public void setMaxInUseBytes(long maxInUseBytes) {
+            this.maxInUseBytes = maxInUseBytes;
+        }
+
+        public long getAllocations() {
+            return allocations;
+        }
+
+        public void setAllocations(long allocations) {
+            this.allocations = allocations;
+        }
+
+        public long getReuses() {
+            return reuses;
+        }
+
+        public void setReuses(long reuses) {
+            this.reuses = reuses;
+        }
+
+        public long getDiscards() {
+            return discards;
+        }
+
+        public void setDiscards(long discards) {
+            this.discards = discards;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package mc.sbm.OperaWebSocket.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import org.HdrHistogram.Histogram;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Response DTO for end-to-end event latency (socket receive to Kafka acknowledgement)
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class LatencyResponse {
+
+    private List<TopicLatency> topics;
+    private String error;
+
+    public LatencyResponse() {
+    }
+
+    /**
+     * Creates latency response from per-topic histograms recorded in microseconds
+     */
+    public static LatencyResponse from(Map<String, Histogram> histograms) {
+        LatencyResponse response = new LatencyResponse();
+        response.topics = new ArrayList<>(histograms.size());
+        histograms.forEach((topic, histogram) -> response.topics.add(TopicLatency.from(topic, histogram)));
+        return response;
+    }
+
+    /**
+     * Creates error response
+     */
+    public static LatencyResponse error(String errorMessage) {
+        LatencyResponse response = new LatencyResponse();
+        response.error = errorMessage;
+        return response;
+    }
+
+    // Getters and setters
+    public List<TopicLatency> getTopics() {
+        return topics;
+    }
+
+    public void setTopics(List<TopicLatency> topics) {
+        this.topics = topics;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    /**
+     * Latency percentiles of a single topic, in milliseconds
+     */
+    public static class TopicLatency {
+
+        private String topic;
+        private long count;
+        private double meanMillis;
+        private double p50Millis;
+        private double p99Millis;
+        private double p999Millis;
+        private double maxMillis;
+
+        public static TopicLatency from(String topic, Histogram histogram) {
+            TopicLatency latency = new TopicLatency();
+            latency.topic = topic;
+            latency.count = histogram.getTotalCount();
+            latency.meanMillis = histogram.getMean() / 1000.0;
+            latency.p50Millis = histogram.getValueAtPercentile(50.0) / 1000.0;
+            latency.p99Millis = histogram.getValueAtPercentile(99.0) / 1000.0;
+            latency.p999Millis = histogram.getValueAtPercentile(99.9) / 1000.0;
+            latency.maxMillis = histogram.getMaxValue() / 1000.0;
+            return latency;
+        }
+
+        public String getTopic() {
+            return topic;
+        }
+
+        public void setTopic(String topic) {
+            this.topic = topic;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public void setCount(long count) {
+            this.count = count;
+        }
+
+        public double getMeanMillis() {
+            return meanMillis;
+        }
+
+        public void setMeanMillis(double meanMillis) {
+            this.meanMillis = meanMillis;
+        }
+
+        public double getP50Millis() {
+            return p50Millis;
+        }
+
+        public void setP50Millis(double p50Millis) {
+            this.p50Millis = p50Millis;
+        }
+
+        public double getP99Millis() {
+            return p99Millis;
+        }
+
+        public void setP99Millis(double p99Millis) {
+            this.p99Millis = p99Millis;
+        }
+
+        public double getP999Millis() {
+            return p999Millis;
+        }
+
+        public void setP999Millis(double p999Millis) {
+            this.p999Millis = p999Millis;
+        }
+
+        public double getMaxMillis() {
+            return maxMillis;
+        }
+
+        public void setMaxMillis(double maxMillis) {
+            this.maxMillis = maxMillis;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package mc.sbm.OperaWebSocket.service;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Decides which of the configured chains this node ingests.
+ * <p>
+ * When several instances run side by side, each chain must be subscribed by exactly one of
+ * them, otherwise every event is published to Kafka once per instance. Implementations hand
+ * chains to the {@link Listener} as they are acquired and take them back when another node
+ * becomes responsible, so a chain can fail over to a surviving node.
+ */
+public interface ChainOwnershipCoordinator {
+
+    /**
+     * Starts competing for the given chains. Acquisitions are reported to the listener,
+     * possibly before this method returns.
+     */
+    void start(Collection<String> chainCodes, Listener listener);
+
+    /**
+     * Releases every owned chain and stops competing for new ones
+     */
+    void stop();
+
+    /**
+     * Checks if this node currently owns a chain
+     */
+    boolean owns(String chainCode);
+
+    /**
+     * Gets the chains currently owned by this node
+     */
+    Set<String> getOwnedChains();
+
+    /**
+     * Identifies this node to the other members of the cluster
+     */
+    String getNodeId();
+
+    /**
+     * Receives ownership changes
+     */
+    interface Listener {
+
+        /**
+         * This node now owns the chain and should start ingesting it
+         */
+        void onChainAcquired(String chainCode);
+
+        /**
+         * This node no longer owns the chains. Ingestion must have stopped when this returns,
+         * because the next owner may resume the chains right afterwards. Chains released
+         * together are passed in one call so they can be drained concurrently.
+         */
+        void onChainsReleased(Collection<String> chainCodes);
+    }
+}
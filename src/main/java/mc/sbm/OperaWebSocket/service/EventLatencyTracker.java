@@ -0,0 +1,57 @@
+package mc.sbm.OperaWebSocket.service;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks end-to-end event latency, from socket receive to Kafka produce acknowledgement.
+ * <p>
+ * Each topic records into an HdrHistogram {@link Recorder}, which is wait-free for the Kafka
+ * callback threads. Snapshots fold the recorder's interval histogram into a cumulative one, so
+ * percentiles cover everything since startup. Values are kept in microseconds.
+ */
+@Service
+public class EventLatencyTracker {
+
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private final Map<String, TopicLatency> topics = new ConcurrentHashMap<>();
+
+    /**
+     * Records the latency of an acknowledged event
+     *
+     * @param topic topic the event was produced to
+     * @param receivedAtNanos {@link System#nanoTime()} when the event's first frame was received
+     */
+    public void record(String topic, long receivedAtNanos) {
+        long micros = Math.max(0, (System.nanoTime() - receivedAtNanos) / 1000);
+        topics.computeIfAbsent(topic, key -> new TopicLatency()).recorder.recordValue(micros);
+    }
+
+    /**
+     * Gets the cumulative latency histogram of every topic seen so far, ordered by topic name
+     */
+    public Map<String, Histogram> snapshot() {
+        Map<String, Histogram> snapshot = new TreeMap<>();
+        topics.forEach((topic, latency) -> snapshot.put(topic, latency.snapshot()));
+        return snapshot;
+    }
+
+    private static final class TopicLatency {
+
+        private final Recorder recorder = new Recorder(SIGNIFICANT_DIGITS);
+        private final Histogram cumulative = new Histogram(SIGNIFICANT_DIGITS);
+        private Histogram interval;
+
+        private synchronized Histogram snapshot() {
+            interval = recorder.getIntervalHistogram(interval);
+            cumulative.add(interval);
+            return cumulative.copy();
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package mc.sbm.OperaWebSocket.service;
+
+import mc.sbm.OperaWebSocket.config.OracleHospitalityConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chain ownership through exclusive file locks, one {@code <chain>.lock} file per chain in a
+ * directory shared by all nodes.
+ * <p>
+ * Every rebalance interval the node tries to lock the chains it does not own yet, up to
+ * {@code max-chains-per-node}. A lock is held for as long as the process lives, so the chain
+ * fails over when its owner stops or dies and the operating system drops the lock. The new
+ * owner re-reads the checkpoint file before connecting, so the checkpoint directory has to be
+ * shared as well. Meant for nodes on one host or a volume with reliable POSIX locks, and for tests.
+ */
+public class FileLockChainOwnership implements ChainOwnershipCoordinator {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileLockChainOwnership.class);
+
+    private final OracleHospitalityConfig.ClusterConfig config;
+    private final String nodeId;
+    private final OffsetCheckpointService checkpointService;
+    private final Map<String, FileLock> locks = new LinkedHashMap<>();
+
+    private List<String> chainCodes = Collections.emptyList();
+    private Listener listener;
+    private Path lockDirectory;
+    private ScheduledExecutorService scheduler;
+
+    public FileLockChainOwnership(OracleHospitalityConfig.ClusterConfig config, String nodeId,
+                                  OffsetCheckpointService checkpointService) {
+        this.config = config;
+        this.nodeId = nodeId;
+        this.checkpointService = checkpointService;
+    }
+
+    @Override
+    public synchronized void start(Collection<String> chainCodes, Listener listener) {
+        if (scheduler != null) {
+            return;
+        }
+        this.chainCodes = new ArrayList<>(chainCodes);
+        this.listener = listener;
+        this.lockDirectory = Paths.get(config.getLockDirectory());
+        try {
+            Files.createDirectories(lockDirectory);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to create cluster lock directory " + lockDirectory, e);
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ohip-cluster-lock");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::rebalanceQuietly,
+                0, config.getRebalanceIntervalMillis(), TimeUnit.MILLISECONDS);
+        logger.info("Node {} competing for chains {} through locks in {}", nodeId, this.chainCodes, lockDirectory);
+    }
+
+    private void rebalanceQuietly() {
+        try {
+            rebalance();
+        } catch (Exception e) {
+            logger.error("Chain ownership rebalance failed", e);
+        }
+    }
+
+    private void rebalance() {
+        Map<String, FileLock> invalid = new LinkedHashMap<>();
+        synchronized (this) {
+            for (String chainCode : new ArrayList<>(locks.keySet())) {
+                if (!locks.get(chainCode).isValid()) {
+                    logger.warn("Lock of chain {} is no longer valid", chainCode);
+                    invalid.put(chainCode, locks.remove(chainCode));
+                }
+            }
+        }
+        release(invalid);
+
+        synchronized (this) {
+            for (String chainCode : chainCodes) {
+                if (config.getMaxChainsPerNode() > 0 && locks.size() >= config.getMaxChainsPerNode()) {
+                    return;
+                }
+                if (!locks.containsKey(chainCode)) {
+                    tryAcquire(chainCode);
+                }
+            }
+        }
+    }
+
+    private void tryAcquire(String chainCode) {
+        FileLock lock = null;
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(lockDirectory.resolve(chainCode + ".lock"),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            lock = channel.tryLock();
+            if (lock == null) {
+                channel.close();
+                return;
+            }
+            // Records the owner for operators; the lock itself is what matters
+            channel.truncate(0);
+            channel.write(ByteBuffer.wrap((nodeId + System.lineSeparator()).getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException | OverlappingFileLockException e) {
+            logger.warn("Failed to lock chain {}: {}", chainCode, e.getMessage());
+            closeQuietly(channel);
+            return;
+        }
+
+        locks.put(chainCode, lock);
+        try {
+            checkpointService.refresh();
+        } catch (IOException e) {
+            logger.warn("Failed to refresh checkpoints before taking over chain {}", chainCode, e);
+        }
+        logger.info("Node {} acquired chain {} at checkpoint {}", nodeId, chainCode, checkpointService.getOffset(chainCode));
+        listener.onChainAcquired(chainCode);
+    }
+
+    /**
+     * Stops the chains and then lets go of their locks. Called without the monitor held, since
+     * the listener waits for the chains to drain.
+     */
+    private void release(Map<String, FileLock> released) {
+        if (released.isEmpty()) {
+            return;
+        }
+        try {
+            listener.onChainsReleased(released.keySet());
+        } finally {
+            // The next owner resumes from the checkpoint file, so it must be on disk before the lock goes
+            try {
+                checkpointService.flush();
+            } catch (IOException e) {
+                logger.error("Failed to flush checkpoints while releasing chains {}", released.keySet(), e);
+            }
+            for (FileLock lock : released.values()) {
+                closeQuietly(lock.channel());
+            }
+            logger.info("Node {} released chains {}", nodeId, released.keySet());
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.debug("Failed to close lock file", e);
+        }
+    }
+
+    @Override
+    public void stop() {
+        ScheduledExecutorService current;
+        synchronized (this) {
+            current = scheduler;
+            scheduler = null;
+        }
+        if (current == null) {
+            return;
+        }
+        current.shutdown();
+        try {
+            current.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Map<String, FileLock> released;
+        synchronized (this) {
+            released = new LinkedHashMap<>(locks);
+            locks.clear();
+        }
+        release(released);
+    }
+
+    @Override
+    public synchronized boolean owns(String chainCode) {
+        return locks.containsKey(chainCode);
+    }
+
+    @Override
+    public synchronized Set<String> getOwnedChains() {
+        return Collections.unmodifiableSet(new LinkedHashSet<>(locks.keySet()));
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+}
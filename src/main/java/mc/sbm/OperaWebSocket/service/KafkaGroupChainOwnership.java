@@ -0,0 +1,279 @@
+package mc.sbm.OperaWebSocket.service;
+
+import mc.sbm.OperaWebSocket.config.OracleHospitalityConfig;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.CooperativeStickyAssignor;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Chain ownership through Kafka consumer group membership.
+ * <p>
+ * Every node joins the same consumer group on an ownership topic that carries no records.
+ * Partition {@code i} of the topic stands for the {@code i}-th configured chain in chain code
+ * order, so the group coordinator spreads chains over the live nodes and moves them when a node
+ * joins, leaves or misses its session timeout. The topic needs at least one partition per chain,
+ * and all nodes must be configured with the same chains.
+ * <p>
+ * The stream offset of each owned chain travels as the commit metadata of its partition. It is
+ * committed every rebalance interval and on revocation, and seeded into the checkpoint of the
+ * node that picks the chain up, so the new owner resumes where the previous one stopped.
+ * <p>
+ * Revocation runs on the poll thread and waits up to {@code handover-drain-timeout-millis} for
+ * the released chains to drain. Heartbeats continue on the consumer's own thread, so the session
+ * timeout is not at risk, but the rebalance must complete within {@code max.poll.interval.ms}.
+ * That setting is therefore derived from the drain timeout and never left below it.
+ */
+public class KafkaGroupChainOwnership implements ChainOwnershipCoordinator, ConsumerRebalanceListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(KafkaGroupChainOwnership.class);
+    private static final long DEFAULT_MAX_POLL_INTERVAL_MILLIS = 300_000;
+
+    private final OracleHospitalityConfig.ClusterConfig config;
+    private final String bootstrapServers;
+    private final String nodeId;
+    private final OffsetCheckpointService checkpointService;
+    private final Set<String> owned = ConcurrentHashMap.newKeySet();
+    private final Map<String, Long> lastCommitted = new HashMap<>();
+
+    private List<String> chainCodes = Collections.emptyList();
+    private Listener listener;
+    private KafkaConsumer<byte[], byte[]> consumer;
+    private Thread pollThread;
+    private volatile boolean running;
+
+    public KafkaGroupChainOwnership(OracleHospitalityConfig.ClusterConfig config, String bootstrapServers,
+                                    String nodeId, OffsetCheckpointService checkpointService) {
+        this.config = config;
+        this.bootstrapServers = bootstrapServers;
+        this.nodeId = nodeId;
+        this.checkpointService = checkpointService;
+    }
+
+    @Override
+    public synchronized void start(Collection<String> chainCodes, Listener listener) {
+        if (running) {
+            return;
+        }
+        List<String> sorted = new ArrayList<>(chainCodes);
+        Collections.sort(sorted);
+        this.chainCodes = sorted;
+        this.listener = listener;
+        this.consumer = new KafkaConsumer<>(consumerConfigs());
+        this.running = true;
+
+        pollThread = new Thread(this::pollLoop, "ohip-cluster-member");
+        pollThread.setDaemon(true);
+        pollThread.start();
+        logger.info("Node {} joining group {} for chains {}", nodeId, config.getGroupId(), this.chainCodes);
+    }
+
+    private Map<String, Object> consumerConfigs() {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ConsumerConfig.GROUP_ID_CONFIG, config.getGroupId());
+        props.put(ConsumerConfig.CLIENT_ID_CONFIG, nodeId);
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest");
+        props.put(ConsumerConfig.SESSION_TIMEOUT_MS_CONFIG, config.getSessionTimeoutMillis());
+        props.put(ConsumerConfig.HEARTBEAT_INTERVAL_MS_CONFIG, Math.max(1, config.getSessionTimeoutMillis() / 3));
+        props.put(ConsumerConfig.MAX_POLL_INTERVAL_MS_CONFIG, (int) maxPollIntervalMillis(config));
+        // Only moved chains are revoked on rebalance; the others keep streaming
+        props.put(ConsumerConfig.PARTITION_ASSIGNMENT_STRATEGY_CONFIG, CooperativeStickyAssignor.class.getName());
+        return props;
+    }
+
+    /**
+     * Gets a poll interval that leaves room for a revocation waiting for the drain timeout,
+     * besides the poll itself and the offset commits
+     */
+    private static long maxPollIntervalMillis(OracleHospitalityConfig.ClusterConfig config) {
+        long needed = config.getHandoverDrainTimeoutMillis() + config.getRebalanceIntervalMillis()
+                + config.getSessionTimeoutMillis();
+        return Math.min(Integer.MAX_VALUE, Math.max(DEFAULT_MAX_POLL_INTERVAL_MILLIS, needed));
+    }
+
+    private void pollLoop() {
+        try {
+            List<PartitionInfo> partitions = consumer.partitionsFor(config.getOwnershipTopic());
+            int partitionCount = partitions == null ? 0 : partitions.size();
+            if (partitionCount < chainCodes.size()) {
+                logger.error("Ownership topic {} has {} partition(s) for {} chain(s). Chains {} will not be ingested",
+                        config.getOwnershipTopic(), partitionCount, chainCodes.size(),
+                        chainCodes.subList(partitionCount, chainCodes.size()));
+            }
+
+            consumer.subscribe(List.of(config.getOwnershipTopic()), this);
+            while (running) {
+                consumer.poll(Duration.ofMillis(config.getRebalanceIntervalMillis()));
+                commitOffsets(owned, false);
+            }
+        } catch (WakeupException e) {
+            // stop() requested
+        } catch (Exception e) {
+            logger.error("Cluster membership of node {} failed", nodeId, e);
+        } finally {
+            Set<String> releasing = new HashSet<>(owned);
+            releaseChains(releasing);
+            try {
+                commitOffsets(releasing, true);
+            } catch (Exception e) {
+                logger.warn("Failed to commit chain offsets on shutdown", e);
+            }
+            consumer.close(Duration.ofSeconds(5));
+            logger.info("Node {} left group {}", nodeId, config.getGroupId());
+        }
+    }
+
+    /**
+     * Commits the checkpointed stream offset of the given chains as partition metadata
+     *
+     * @param force commit even when the offset has not moved since the last commit
+     */
+    private void commitOffsets(Collection<String> chains, boolean force) {
+        Map<TopicPartition, OffsetAndMetadata> commits = new HashMap<>();
+        for (String chainCode : chains) {
+            long offset = checkpointService.getOffset(chainCode);
+            if (offset == OffsetCheckpointService.NO_OFFSET) {
+                continue;
+            }
+            if (!force && Long.valueOf(offset).equals(lastCommitted.get(chainCode))) {
+                continue;
+            }
+            commits.put(partitionOf(chainCode), new OffsetAndMetadata(0, Long.toString(offset)));
+            lastCommitted.put(chainCode, offset);
+        }
+        if (!commits.isEmpty()) {
+            consumer.commitSync(commits);
+        }
+    }
+
+    @Override
+    public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+        Map<TopicPartition, OffsetAndMetadata> committed = consumer.committed(new HashSet<>(partitions));
+        for (TopicPartition partition : partitions) {
+            String chainCode = chainOf(partition);
+            if (chainCode == null) {
+                continue;
+            }
+            OffsetAndMetadata metadata = committed == null ? null : committed.get(partition);
+            if (metadata != null && metadata.metadata() != null && !metadata.metadata().isEmpty()) {
+                try {
+                    checkpointService.seed(chainCode, Long.parseLong(metadata.metadata()));
+                } catch (NumberFormatException e) {
+                    logger.warn("Ignoring invalid handover offset for chain {}: {}", chainCode, metadata.metadata());
+                }
+            }
+            owned.add(chainCode);
+            lastCommitted.remove(chainCode);
+            logger.info("Node {} acquired chain {} at checkpoint {}", nodeId, chainCode, checkpointService.getOffset(chainCode));
+            listener.onChainAcquired(chainCode);
+        }
+    }
+
+    @Override
+    public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+        List<String> released = releaseChains(chainsOf(partitions));
+        // Hand the final offsets over before the partitions move to the next owner
+        commitOffsets(released, true);
+    }
+
+    @Override
+    public void onPartitionsLost(Collection<TopicPartition> partitions) {
+        // The partitions may already belong to another node, so nothing is committed
+        releaseChains(chainsOf(partitions));
+    }
+
+    private List<String> releaseChains(Collection<String> chainCodes) {
+        List<String> released = new ArrayList<>();
+        for (String chainCode : chainCodes) {
+            if (owned.remove(chainCode)) {
+                released.add(chainCode);
+            }
+        }
+        if (released.isEmpty()) {
+            return released;
+        }
+        try {
+            listener.onChainsReleased(released);
+        } catch (Exception e) {
+            logger.error("Failed to stop chains {} on release", released, e);
+        }
+        logger.info("Node {} released chains {}", nodeId, released);
+        return released;
+    }
+
+    private List<String> chainsOf(Collection<TopicPartition> partitions) {
+        List<String> chains = new ArrayList<>();
+        for (TopicPartition partition : partitions) {
+            String chainCode = chainOf(partition);
+            if (chainCode != null) {
+                chains.add(chainCode);
+            }
+        }
+        return chains;
+    }
+
+    private String chainOf(TopicPartition partition) {
+        int index = partition.partition();
+        return index < chainCodes.size() ? chainCodes.get(index) : null;
+    }
+
+    private TopicPartition partitionOf(String chainCode) {
+        return new TopicPartition(config.getOwnershipTopic(), chainCodes.indexOf(chainCode));
+    }
+
+    @Override
+    public void stop() {
+        Thread thread;
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            thread = pollThread;
+        }
+        consumer.wakeup();
+        try {
+            thread.join(10_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean owns(String chainCode) {
+        return owned.contains(chainCode);
+    }
+
+    @Override
+    public Set<String> getOwnedChains() {
+        return Collections.unmodifiableSet(new LinkedHashSet<>(owned));
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+}
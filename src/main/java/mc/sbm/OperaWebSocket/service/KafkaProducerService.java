@@ -1,26 +1,32 @@
 package mc.sbm.OperaWebSocket.service;
 
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.Lock;
 
 @Service
 public class KafkaProducerService {
 
     private static final Logger logger = LoggerFactory.getLogger(KafkaProducerService.class);
 
-    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final StreamingMetrics metrics;
+    private final ProducerBatchTuner batchTuner;
 
     @Value("${oracle.hospitality.kafka.topic}")
     private String topic;
 
-    public KafkaProducerService(KafkaTemplate<String, String> kafkaTemplate) {
-        this.kafkaTemplate = kafkaTemplate;
+    public KafkaProducerService(StreamingMetrics metrics, ProducerBatchTuner batchTuner) {
+        this.metrics = metrics;
+        this.batchTuner = batchTuner;
     }
 
     /**
@@ -30,10 +36,22 @@ public class KafkaProducerService {
      * @param message Message content
      */
     public void sendMessage(String key, String message) {
+        sendMessage(key, message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Sends raw UTF-8 message bytes to Kafka topic asynchronously
+     *
+     * @param key Message key (can be null for round-robin partitioning)
+     * @param message Message content, published as-is
+     */
+    public void sendMessage(String key, byte[] message) {
+        long start = System.nanoTime();
         try {
-            CompletableFuture<SendResult<String, String>> future = kafkaTemplate.send(topic, key, message);
+            CompletableFuture<SendResult<String, byte[]>> future = send(new ProducerRecord<>(topic, key, message));
 
             future.whenComplete((result, ex) -> {
+                metrics.recordKafkaSend(topic, System.nanoTime() - start, ex == null);
                 if (ex == null) {
                     logger.debug("Message sent successfully to topic '{}' - Partition: {}, Offset: {}, Key: {}",
                             topic,
@@ -45,6 +63,7 @@ public class KafkaProducerService {
                 }
             });
         } catch (Exception e) {
+            metrics.recordKafkaSend(topic, System.nanoTime() - start, false);
             logger.error("Error sending message to Kafka", e);
         }
     }
@@ -54,13 +73,31 @@ public class KafkaProducerService {
      *
      * @param topic Topic name
      * @param key Message key (can be null for round-robin partitioning)
-     * @param message Message content
+     * @param message Message content, published as-is
+     * @return future completed when the broker acknowledges the record (completed exceptionally on failure)
      */
-    public void sendMessageToTopic(String topic, String key, String message) {
+    public CompletableFuture<SendResult<String, byte[]>> sendMessageToTopic(String topic, String key, byte[] message) {
+        return sendMessageToTopic(topic, key, message, null);
+    }
+
+    /**
+     * Sends a message with record headers to a dynamically specified topic
+     *
+     * @param topic Topic name
+     * @param key Message key (can be null for round-robin partitioning)
+     * @param message Message content, published as-is
+     * @param headers Record headers (can be null)
+     * @return future completed when the broker acknowledges the record (completed exceptionally on failure)
+     */
+    public CompletableFuture<SendResult<String, byte[]>> sendMessageToTopic(String topic, String key, byte[] message,
+                                                                           Iterable<Header> headers) {
+        long start = System.nanoTime();
         try {
-            CompletableFuture<SendResult<String, String>> future = kafkaTemplate.send(topic, key, message);
+            CompletableFuture<SendResult<String, byte[]>> future =
+                    send(new ProducerRecord<>(topic, null, key, message, headers));
 
             future.whenComplete((result, ex) -> {
+                metrics.recordKafkaSend(topic, System.nanoTime() - start, ex == null);
                 if (ex == null) {
                     logger.debug("Message sent successfully to topic '{}' - Partition: {}, Offset: {}, Key: {}",
                             topic,
@@ -71,11 +108,47 @@ public class KafkaProducerService {
                     logger.error("Failed to send message to Kafka topic '{}' with key '{}'", topic, key, ex);
                 }
             });
+            return future;
         } catch (Exception e) {
+            metrics.recordKafkaSend(topic, System.nanoTime() - start, false);
             logger.error("Error sending message to Kafka topic '{}'", topic, e);
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Hands a record to the producer, unless the batch tuner is swapping it
+     */
+    private CompletableFuture<SendResult<String, byte[]>> send(ProducerRecord<String, byte[]> record) {
+        batchTuner.observe(record.value().length);
+        Lock lock = batchTuner.sendLock();
+        lock.lock();
+        try {
+            return batchTuner.getTemplate().send(record);
+        } finally {
+            lock.unlock();
         }
     }
 
+    /**
+     * Fetches producer metadata for the given topics in the background, so the first send to each
+     * does not block on a metadata request
+     */
+    public void prewarmTopics(Collection<String> topics) {
+        Thread thread = new Thread(() -> {
+            for (String prewarmTopic : topics) {
+                try {
+                    int partitions = batchTuner.getTemplate().partitionsFor(prewarmTopic).size();
+                    logger.info("Pre-warmed metadata of topic '{}' ({} partitions)", prewarmTopic, partitions);
+                } catch (Exception e) {
+                    logger.warn("Failed to pre-warm metadata of topic '{}': {}", prewarmTopic, e.getMessage());
+                }
+            }
+        }, "ohip-topic-prewarm");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
     /**
      * Sends a message to Kafka topic without a key
      *
@@ -95,7 +168,8 @@ public class KafkaProducerService {
      */
     public boolean sendMessageSync(String key, String message) {
         try {
-            SendResult<String, String> result = kafkaTemplate.send(topic, key, message).get();
+            SendResult<String, byte[]> result =
+                    send(new ProducerRecord<>(topic, key, message.getBytes(StandardCharsets.UTF_8))).get();
             logger.info("Message sent synchronously to topic '{}' - Partition: {}, Offset: {}",
                     topic,
                     result.getRecordMetadata().partition(),
@@ -0,0 +1,438 @@
+package mc.sbm.OperaWebSocket.service;
+
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Durable, append-only log of Kafka records that could not be produced.
+ * <p>
+ * The log is a sequence of fixed-size, memory-mapped segment files. Each segment starts with
+ * the committed read position, followed by records of the form {@code [length][crc32][body]},
+ * each terminated by a zero length so a scan stops at the end of the valid data. On open, every
+ * segment is scanned from its committed position and records are kept up to the first one whose
+ * length or checksum is invalid, which discards a record torn by a crash.
+ * <p>
+ * Records are read through a cursor: {@link #readBatch} advances it, {@link #commit} persists it
+ * and deletes consumed segments, {@link #rewind} returns it to the last commit so a batch that
+ * failed to drain is read again. Not thread-safe on its own; callers synchronize.
+ */
+public class KafkaSpillLog implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(KafkaSpillLog.class);
+
+    private static final String SEGMENT_PREFIX = "spill-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int SEGMENT_HEADER_BYTES = Long.BYTES;
+    private static final int RECORD_HEADER_BYTES = 2 * Integer.BYTES;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final long maxBytes;
+    private final List<Segment> segments = new ArrayList<>();
+    private final CRC32 crc = new CRC32();
+
+    private long nextSequence;
+    private int cursorSegment;
+    private int cursorPosition;
+    private long cursorRecords;
+    private long records;
+    private boolean dirty;
+
+    /**
+     * Opens the log, recovering records left by a previous run
+     *
+     * @param segmentSize size of each segment file in bytes
+     * @param maxBytes maximum disk space of all segments together
+     */
+    public KafkaSpillLog(Path directory, int segmentSize, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxBytes = Math.max(maxBytes, segmentSize);
+        Files.createDirectories(directory);
+        recover();
+        rewind();
+    }
+
+    private void recover() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        Collections.sort(files);
+
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            long sequence = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+            Segment segment = Segment.open(file, segmentSize);
+            int position = segment.committedPosition;
+            int count = 0;
+            int length;
+            while ((length = validRecordLength(segment, position)) > 0) {
+                position += RECORD_HEADER_BYTES + length;
+                count++;
+            }
+            segment.writePosition = position;
+            nextSequence = Math.max(nextSequence, sequence + 1);
+
+            if (count == 0) {
+                segment.delete();
+                continue;
+            }
+            segments.add(segment);
+            records += count;
+        }
+        if (records > 0) {
+            logger.info("Recovered {} spilled record(s) in {} segment(s) from {}", records, segments.size(), directory);
+        }
+    }
+
+    /**
+     * Gets the body length of the record at a position if it is complete and its checksum matches
+     *
+     * @return the body length, or 0 if there is no valid record at the position
+     */
+    private int validRecordLength(Segment segment, int position) {
+        MappedByteBuffer buffer = segment.buffer;
+        if (position + RECORD_HEADER_BYTES > segmentSize) {
+            return 0;
+        }
+        int length = buffer.getInt(position);
+        if (length <= 0 || position + RECORD_HEADER_BYTES + (long) length > segmentSize) {
+            return 0;
+        }
+        int expected = buffer.getInt(position + Integer.BYTES);
+        crc.reset();
+        crc.update(buffer.slice(position + RECORD_HEADER_BYTES, length));
+        if ((int) crc.getValue() != expected) {
+            logger.warn("Spill segment {} has a corrupt record at {}; ignoring the rest of it", segment.file, position);
+            return 0;
+        }
+        return length;
+    }
+
+    /**
+     * Appends a record
+     *
+     * @return false if the log is full or the record does not fit in a segment
+     */
+    public boolean append(SpilledRecord record) throws IOException {
+        int length = record.encodedLength();
+        int needed = RECORD_HEADER_BYTES + length + Integer.BYTES;
+        if (SEGMENT_HEADER_BYTES + needed > segmentSize) {
+            logger.error("Record of {} bytes does not fit in a spill segment of {} bytes", length, segmentSize);
+            return false;
+        }
+
+        Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (segment == null || segment.writePosition + needed > segmentSize) {
+            if ((long) (segments.size() + 1) * segmentSize > maxBytes) {
+                return false;
+            }
+            segment = Segment.create(directory.resolve(segmentName(nextSequence)), segmentSize);
+            nextSequence++;
+            segments.add(segment);
+        }
+
+        MappedByteBuffer buffer = segment.buffer;
+        int position = segment.writePosition;
+        ByteBuffer body = buffer.slice(position + RECORD_HEADER_BYTES, length);
+        record.encode(body);
+        crc.reset();
+        crc.update(buffer.slice(position + RECORD_HEADER_BYTES, length));
+        buffer.putInt(position + RECORD_HEADER_BYTES + length, 0);
+        buffer.putInt(position + Integer.BYTES, (int) crc.getValue());
+        buffer.putInt(position, length);
+
+        segment.writePosition = position + RECORD_HEADER_BYTES + length;
+        records++;
+        dirty = true;
+        return true;
+    }
+
+    private static String segmentName(long sequence) {
+        return String.format("%s%020d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Reads up to the given number of records after the cursor and advances it
+     */
+    public List<SpilledRecord> readBatch(int maxRecords) {
+        List<SpilledRecord> batch = new ArrayList<>(Math.min(maxRecords, 1024));
+        while (batch.size() < maxRecords && cursorSegment < segments.size()) {
+            Segment segment = segments.get(cursorSegment);
+            if (cursorPosition >= segment.writePosition) {
+                if (cursorSegment == segments.size() - 1) {
+                    break;
+                }
+                cursorSegment++;
+                cursorPosition = segments.get(cursorSegment).committedPosition;
+                continue;
+            }
+            int length = segment.buffer.getInt(cursorPosition);
+            batch.add(SpilledRecord.decode(segment.buffer.slice(cursorPosition + RECORD_HEADER_BYTES, length)));
+            cursorPosition += RECORD_HEADER_BYTES + length;
+            cursorRecords++;
+        }
+        return batch;
+    }
+
+    /**
+     * Marks every record read so far as consumed
+     */
+    public void commit() throws IOException {
+        if (cursorRecords == 0) {
+            return;
+        }
+        for (int i = 0; i < cursorSegment; i++) {
+            segments.remove(0).delete();
+        }
+        cursorSegment = 0;
+
+        Segment segment = segments.get(0);
+        if (cursorPosition >= segment.writePosition && segments.size() == 1) {
+            // Fully drained: start over at the head of the segment
+            segment.buffer.putInt(SEGMENT_HEADER_BYTES, 0);
+            segment.writePosition = SEGMENT_HEADER_BYTES;
+            cursorPosition = SEGMENT_HEADER_BYTES;
+        }
+        segment.committedPosition = cursorPosition;
+        segment.buffer.putLong(0, cursorPosition);
+        records -= cursorRecords;
+        cursorRecords = 0;
+        dirty = true;
+    }
+
+    /**
+     * Moves the cursor back to the last commit
+     */
+    public void rewind() {
+        cursorSegment = 0;
+        cursorPosition = segments.isEmpty() ? SEGMENT_HEADER_BYTES : segments.get(0).committedPosition;
+        cursorRecords = 0;
+    }
+
+    /**
+     * Writes modified segment pages to disk
+     */
+    public void force() {
+        if (!dirty) {
+            return;
+        }
+        for (Segment segment : segments) {
+            segment.buffer.force();
+        }
+        dirty = false;
+    }
+
+    public boolean isEmpty() {
+        return records == 0;
+    }
+
+    /**
+     * Gets the number of records not yet committed as consumed
+     */
+    public long size() {
+        return records;
+    }
+
+    /**
+     * Gets the disk space held by segment files
+     */
+    public long getSizeBytes() {
+        return (long) segments.size() * segmentSize;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    @Override
+    public void close() {
+        force();
+        for (Segment segment : segments) {
+            segment.close();
+        }
+        segments.clear();
+    }
+
+    private static final class Segment {
+
+        private final Path file;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int committedPosition;
+        private int writePosition;
+
+        private Segment(Path file, FileChannel channel, MappedByteBuffer buffer) {
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        static Segment create(Path file, int size) throws IOException {
+            Segment segment = open(file, size);
+            segment.buffer.putLong(0, SEGMENT_HEADER_BYTES);
+            segment.buffer.putInt(SEGMENT_HEADER_BYTES, 0);
+            segment.committedPosition = SEGMENT_HEADER_BYTES;
+            segment.writePosition = SEGMENT_HEADER_BYTES;
+            return segment;
+        }
+
+        static Segment open(Path file, int size) throws IOException {
+            FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            Segment segment = new Segment(file, channel, buffer);
+            long committed = buffer.getLong(0);
+            segment.committedPosition = committed < SEGMENT_HEADER_BYTES || committed > size
+                    ? SEGMENT_HEADER_BYTES : (int) committed;
+            return segment;
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.debug("Failed to close spill segment {}", file, e);
+            }
+        }
+
+        void delete() throws IOException {
+            close();
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * A Kafka record held in the spill log, with the stream offset it checkpoints
+     */
+    public static final class SpilledRecord {
+
+        private final String chainCode;
+        private final long offset;
+        private final String topic;
+        private final String key;
+        private final List<Header> headers;
+        private final byte[] value;
+
+        public SpilledRecord(String chainCode, long offset, String topic, String key, List<Header> headers,
+                             byte[] value) {
+            this.chainCode = chainCode;
+            this.offset = offset;
+            this.topic = topic;
+            this.key = key;
+            this.headers = headers;
+            this.value = value;
+        }
+
+        public String getChainCode() {
+            return chainCode;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public String getTopic() {
+            return topic;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public List<Header> getHeaders() {
+            return headers;
+        }
+
+        public byte[] getValue() {
+            return value;
+        }
+
+        int encodedLength() {
+            int length = Long.BYTES + stringLength(chainCode) + stringLength(topic) + stringLength(key)
+                    + Integer.BYTES + Integer.BYTES + value.length;
+            for (Header header : headers) {
+                length += stringLength(header.key()) + bytesLength(header.value());
+            }
+            return length;
+        }
+
+        void encode(ByteBuffer buffer) {
+            buffer.putLong(offset);
+            putString(buffer, chainCode);
+            putString(buffer, topic);
+            putString(buffer, key);
+            buffer.putInt(headers.size());
+            for (Header header : headers) {
+                putString(buffer, header.key());
+                putBytes(buffer, header.value());
+            }
+            putBytes(buffer, value);
+        }
+
+        static SpilledRecord decode(ByteBuffer buffer) {
+            long offset = buffer.getLong();
+            String chainCode = getString(buffer);
+            String topic = getString(buffer);
+            String key = getString(buffer);
+            int headerCount = buffer.getInt();
+            List<Header> headers = new ArrayList<>(headerCount);
+            for (int i = 0; i < headerCount; i++) {
+                headers.add(new RecordHeader(getString(buffer), getBytes(buffer)));
+            }
+            return new SpilledRecord(chainCode, offset, topic, key, headers, getBytes(buffer));
+        }
+
+        private static int stringLength(String value) {
+            return bytesLength(value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private static int bytesLength(byte[] value) {
+            return Integer.BYTES + (value == null ? 0 : value.length);
+        }
+
+        private static void putString(ByteBuffer buffer, String value) {
+            putBytes(buffer, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private static void putBytes(ByteBuffer buffer, byte[] value) {
+            if (value == null) {
+                buffer.putInt(-1);
+            } else {
+                buffer.putInt(value.length).put(value);
+            }
+        }
+
+        private static String getString(ByteBuffer buffer) {
+            byte[] bytes = getBytes(buffer);
+            return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private static byte[] getBytes(ByteBuffer buffer) {
+            int length = buffer.getInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return bytes;
+        }
+    }
+}
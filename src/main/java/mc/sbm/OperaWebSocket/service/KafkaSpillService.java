@@ -0,0 +1,351 @@
+package mc.sbm.OperaWebSocket.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import mc.sbm.OperaWebSocket.config.OracleHospitalityConfig;
+import org.apache.kafka.common.header.Header;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps events flowing to disk while Kafka is unavailable and replays them once it is back.
+ * <p>
+ * The first failed send switches the service into spilling mode: that record and every event
+ * produced after it are appended to a {@link KafkaSpillLog} instead of the producer. A drainer
+ * resends the log in batches and only commits a batch once Kafka acknowledged all of it. Events
+ * go straight to the producer again once the log is empty, every direct send issued before has
+ * completed and every spilled event has been appended, so no direct send overtakes a spilled event
+ * after the switch back. Registering a direct send, entering spilling mode and leaving it all
+ * happen under one lock, which is never held during disk I/O.
+ * <p>
+ * Appends run on a dedicated writer thread, since failed sends are spilled from the producer's
+ * callback thread, which must not wait for the disk or for the drainer's {@code force()}.
+ * <p>
+ * The switch into spilling mode gives no ordering guarantee: direct sends already handed to the
+ * producer when the first failure is reported may still be acknowledged ahead of the spilled
+ * record, or fail and be spilled behind events produced later. Delivery is at-least-once, and
+ * consumers must not rely on per-key order around an outage.
+ * <p>
+ * Offsets of spilled events stay pending in the {@link OffsetCheckpointService} until drained,
+ * so the checkpoint never covers an event that only exists in the spill. After a restart the
+ * recovered offsets are tracked again and reported as spilled, and the subscription resumes
+ * after them instead of fetching them from OHIP a second time.
+ */
+@Service
+public class KafkaSpillService {
+
+    private static final Logger logger = LoggerFactory.getLogger(KafkaSpillService.class);
+
+    private final OracleHospitalityConfig.KafkaSpillConfig config;
+    private final KafkaProducerService kafkaProducerService;
+    private final OffsetCheckpointService checkpointService;
+    private final StreamingMetrics metrics;
+
+    private final AtomicLong spilledCount = new AtomicLong();
+    private final AtomicLong drainedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    // Guards the mode switch; taken before the log monitor when both are needed
+    private final Object modeLock = new Object();
+    private volatile boolean spilling;
+    private int directSends;
+    private int pendingAppends;
+
+    private KafkaSpillLog log;
+    private ExecutorService writer;
+    private ScheduledExecutorService drainer;
+    private volatile long pendingRecords;
+    private volatile long sizeBytes;
+
+    public KafkaSpillService(OracleHospitalityConfig config, KafkaProducerService kafkaProducerService,
+                             OffsetCheckpointService checkpointService, StreamingMetrics metrics) {
+        this.config = config.getKafkaSpill();
+        this.kafkaProducerService = kafkaProducerService;
+        this.checkpointService = checkpointService;
+        this.metrics = metrics;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!config.isEnabled()) {
+            logger.info("Kafka spill disabled. Events failing to send are replayed from the checkpoint after restart");
+            return;
+        }
+
+        log = new KafkaSpillLog(Paths.get(config.getDirectory()), config.getSegmentSizeBytes(), config.getMaxBytes());
+        trackRecoveredOffsets();
+        spilling = !log.isEmpty();
+
+        writer = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "ohip-kafka-spill-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        drainer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ohip-kafka-spill-drainer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        drainer.scheduleWithFixedDelay(this::drainQuietly,
+                config.getDrainIntervalMillis(), config.getDrainIntervalMillis(), TimeUnit.MILLISECONDS);
+        metrics.bindKafkaSpill(this);
+        logger.info("Kafka spill log opened at {} (max {} bytes)", config.getDirectory(), config.getMaxBytes());
+    }
+
+    private synchronized void trackRecoveredOffsets() {
+        List<KafkaSpillLog.SpilledRecord> batch;
+        while (!(batch = log.readBatch(config.getDrainBatchSize())).isEmpty()) {
+            for (KafkaSpillLog.SpilledRecord record : batch) {
+                if (record.getOffset() >= 0) {
+                    checkpointService.track(record.getChainCode(), record.getOffset());
+                    checkpointService.markSpilled(record.getChainCode(), record.getOffset());
+                }
+            }
+        }
+        log.rewind();
+        updateStats();
+    }
+
+    private void updateStats() {
+        pendingRecords = log.size();
+        sizeBytes = log.getSizeBytes();
+    }
+
+    /**
+     * Checks if events must be spilled instead of sent, to stay behind those already in the spill
+     */
+    public boolean isSpilling() {
+        return spilling;
+    }
+
+    /**
+     * Registers a direct send about to be handed to the producer, unless events must be spilled.
+     * Every registered send must be ended with {@link #directSendCompleted()} once it succeeded
+     * or its record was spilled.
+     *
+     * @return false if the event must be spilled instead
+     */
+    public boolean beginDirectSend() {
+        synchronized (modeLock) {
+            if (spilling) {
+                return false;
+            }
+            directSends++;
+            return true;
+        }
+    }
+
+    /**
+     * Ends a send registered by {@link #beginDirectSend()}
+     */
+    public void directSendCompleted() {
+        synchronized (modeLock) {
+            directSends--;
+        }
+    }
+
+    /**
+     * Switches to spilling mode at once and queues an event to be appended to the spill log in
+     * call order. The event's offset stays pending until the event is drained to Kafka.
+     *
+     * @param offset stream offset of the event, or a negative value if it carries none
+     * @return future completed on the writer thread with false if the spill is disabled or full,
+     * in which case the event is not kept
+     */
+    public CompletableFuture<Boolean> spill(String chainCode, long offset, String topic, String key, byte[] value,
+                                            Iterable<Header> headers) {
+        if (log == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+        List<Header> headerList = new ArrayList<>();
+        if (headers != null) {
+            headers.forEach(headerList::add);
+        }
+        KafkaSpillLog.SpilledRecord record =
+                new KafkaSpillLog.SpilledRecord(chainCode, offset, topic, key, headerList, value);
+
+        synchronized (modeLock) {
+            pendingAppends++;
+            if (!spilling) {
+                logger.warn("Kafka unavailable. Spilling events to {}", config.getDirectory());
+                spilling = true;
+            }
+        }
+        CompletableFuture<Boolean> kept = new CompletableFuture<>();
+        try {
+            writer.execute(() -> kept.complete(append(record)));
+        } catch (RejectedExecutionException e) {
+            appendDone();
+            rejectedCount.incrementAndGet();
+            logger.error("Kafka spill closed. Event {} of chain {} not kept", offset, chainCode);
+            kept.complete(false);
+        }
+        return kept;
+    }
+
+    private boolean append(KafkaSpillLog.SpilledRecord record) {
+        try {
+            synchronized (this) {
+                if (log == null || !log.append(record)) {
+                    rejectedCount.incrementAndGet();
+                    logger.error("Kafka spill full ({} bytes). Event {} of chain {} not kept",
+                            sizeBytes, record.getOffset(), record.getChainCode());
+                    return false;
+                }
+                updateStats();
+            }
+        } catch (IOException e) {
+            rejectedCount.incrementAndGet();
+            logger.error("Failed to spill event {} of chain {}", record.getOffset(), record.getChainCode(), e);
+            return false;
+        } finally {
+            appendDone();
+        }
+        spilledCount.incrementAndGet();
+        if (record.getOffset() >= 0) {
+            checkpointService.markSpilled(record.getChainCode(), record.getOffset());
+        }
+        return true;
+    }
+
+    private void appendDone() {
+        synchronized (modeLock) {
+            pendingAppends--;
+        }
+    }
+
+    private void drainQuietly() {
+        try {
+            drain();
+        } catch (Exception e) {
+            logger.error("Kafka spill drain failed", e);
+        }
+    }
+
+    private void drain() throws Exception {
+        synchronized (this) {
+            log.force();
+        }
+        while (true) {
+            List<KafkaSpillLog.SpilledRecord> batch;
+            synchronized (this) {
+                batch = log.readBatch(config.getDrainBatchSize());
+            }
+            if (batch.isEmpty()) {
+                resumeDirectSends();
+                return;
+            }
+
+            // Sent in order; the producer keeps the order per partition
+            List<CompletableFuture<?>> sends = new ArrayList<>(batch.size());
+            for (KafkaSpillLog.SpilledRecord record : batch) {
+                sends.add(kafkaProducerService.sendMessageToTopic(
+                        record.getTopic(), record.getKey(), record.getValue(), record.getHeaders()));
+            }
+            try {
+                CompletableFuture.allOf(sends.toArray(new CompletableFuture[0]))
+                        .get(config.getDrainTimeoutSeconds(), TimeUnit.SECONDS);
+            } catch (Exception e) {
+                synchronized (this) {
+                    log.rewind();
+                }
+                logger.warn("Kafka still unavailable; {} spilled record(s) pending: {}", getPendingRecords(), e.getMessage());
+                return;
+            }
+
+            synchronized (this) {
+                log.commit();
+                updateStats();
+            }
+            for (KafkaSpillLog.SpilledRecord record : batch) {
+                if (record.getOffset() >= 0) {
+                    checkpointService.acknowledge(record.getChainCode(), record.getOffset());
+                }
+            }
+            drainedCount.addAndGet(batch.size());
+            logger.debug("Drained {} spilled record(s) to Kafka", batch.size());
+        }
+    }
+
+    private void resumeDirectSends() {
+        synchronized (modeLock) {
+            // A direct send still in flight could fail and spill behind events sent after it,
+            // and a queued append would land behind them
+            if (!spilling || directSends > 0 || pendingAppends > 0) {
+                return;
+            }
+            synchronized (this) {
+                if (!log.isEmpty()) {
+                    return;
+                }
+            }
+            spilling = false;
+        }
+        logger.info("Kafka spill drained. Resuming direct sends");
+    }
+
+    /**
+     * Gets the number of records in the spill log, as of the last append or drained batch
+     */
+    public long getPendingRecords() {
+        return pendingRecords;
+    }
+
+    /**
+     * Gets the disk space used by the spill log, as of the last append or drained batch
+     */
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public long getSpilledCount() {
+        return spilledCount.get();
+    }
+
+    public long getDrainedCount() {
+        return drainedCount.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    @PreDestroy
+    public void cleanup() {
+        if (writer != null) {
+            writer.shutdown();
+            try {
+                writer.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (drainer != null) {
+            drainer.shutdownNow();
+            try {
+                drainer.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            if (log != null) {
+                log.close();
+                log = null;
+            }
+        }
+    }
+}
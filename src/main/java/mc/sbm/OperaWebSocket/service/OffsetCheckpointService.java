@@ -0,0 +1,329 @@
+package mc.sbm.OperaWebSocket.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import mc.sbm.OperaWebSocket.config.OracleHospitalityConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Durable, file-backed store of the last OHIP stream offset successfully produced to Kafka per chain.
+ * <p>
+ * The checkpoint only advances to the contiguous acknowledgement watermark computed by a per-chain
+ * {@link OffsetWatermarkTracker}, so every offset at or below it is known to be in Kafka.
+ * Updates are kept in memory and flushed in batches: the whole map is written to a temporary
+ * file, fsynced and atomically renamed over the previous checkpoint file. Flushes merge with the
+ * file on disk, so nodes of a cluster may share the checkpoint directory.
+ * <p>
+ * A failed send, or more than {@code checkpoint.max-in-flight} offsets above the watermark,
+ * stalls the checkpoint. The chain's stall listener is then told once, and is expected to
+ * resubscribe from {@link #getResumeOffset} so the failed offsets are replayed.
+ */
+@Service
+public class OffsetCheckpointService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OffsetCheckpointService.class);
+    private static final String CHECKPOINT_FILE = "offsets.properties";
+    private static final String LOCK_FILE = "offsets.lock";
+
+    public static final long NO_OFFSET = -1L;
+
+    private final OracleHospitalityConfig.CheckpointConfig config;
+    private final Map<String, Long> offsets = new ConcurrentHashMap<>();
+    private final Map<String, OffsetWatermarkTracker> trackers = new ConcurrentHashMap<>();
+    private final Map<String, Long> spilledOffsets = new ConcurrentHashMap<>();
+    private final Map<String, Consumer<String>> stallListeners = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> stalled = new ConcurrentHashMap<>();
+    private final AtomicBoolean dirty = new AtomicBoolean(false);
+
+    private Path checkpointFile;
+    private ScheduledExecutorService flushScheduler;
+
+    public OffsetCheckpointService(OracleHospitalityConfig config) {
+        this.config = config.getCheckpoint();
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!config.isEnabled()) {
+            logger.info("Offset checkpointing disabled. Subscriptions will start from offset 0");
+            return;
+        }
+
+        Path directory = Paths.get(config.getDirectory());
+        checkpointFile = directory.resolve(CHECKPOINT_FILE);
+        try {
+            Files.createDirectories(directory);
+            load();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to initialize offset checkpoint store at " + directory, e);
+        }
+
+        flushScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ohip-checkpoint-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flushScheduler.scheduleWithFixedDelay(this::flushQuietly,
+                config.getFlushIntervalMillis(), config.getFlushIntervalMillis(), TimeUnit.MILLISECONDS);
+
+        logger.info("Offset checkpoint store initialized at {} with {} chain(s)", checkpointFile, offsets.size());
+    }
+
+    private void load() throws IOException {
+        readCheckpointFile().forEach((chainCode, offset) -> offsets.merge(chainCode, offset, Math::max));
+        offsets.forEach((chainCode, offset) -> logger.info("Loaded checkpoint - Chain: {}, Offset: {}", chainCode, offset));
+    }
+
+    private Map<String, Long> readCheckpointFile() throws IOException {
+        Map<String, Long> stored = new HashMap<>();
+        if (!Files.exists(checkpointFile)) {
+            return stored;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(checkpointFile)) {
+            properties.load(in);
+        }
+        for (String chainCode : properties.stringPropertyNames()) {
+            try {
+                stored.put(chainCode, Long.parseLong(properties.getProperty(chainCode).trim()));
+            } catch (NumberFormatException e) {
+                logger.warn("Ignoring invalid checkpoint for chain '{}': {}", chainCode, properties.getProperty(chainCode));
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * Re-reads the checkpoint file and adopts any offset higher than the one held in memory.
+     * Called before taking over a chain whose checkpoint may have been advanced by another node
+     * sharing the checkpoint directory.
+     */
+    public synchronized void refresh() throws IOException {
+        if (checkpointFile == null) {
+            return;
+        }
+        try (FileChannel lockChannel = openLockChannel(); FileLock ignored = lockChannel.lock()) {
+            readCheckpointFile().forEach((chainCode, offset) -> offsets.merge(chainCode, offset, Math::max));
+        }
+    }
+
+    /**
+     * Raises the checkpoint of a chain to an offset learned from elsewhere, e.g. handed over
+     * by the previous owner of the chain. Offsets lower than the current checkpoint are ignored.
+     */
+    public void seed(String chainCode, long offset) {
+        update(chainCode, offset);
+    }
+
+    /**
+     * Gets the last checkpointed offset for a chain
+     *
+     * @param chainCode chain code
+     * @return the offset, or {@link #NO_OFFSET} if none has been recorded
+     */
+    public long getOffset(String chainCode) {
+        return offsets.getOrDefault(chainCode, NO_OFFSET);
+    }
+
+    /**
+     * Records that an event was kept in the Kafka spill. Its offset stays pending, but the
+     * subscription can resume after it since the spill delivers it.
+     */
+    public void markSpilled(String chainCode, long offset) {
+        tracker(chainCode).spilled(offset);
+        spilledOffsets.merge(chainCode, offset, Math::max);
+    }
+
+    /**
+     * Gets the offset to resume the subscription from: the checkpoint, or the last spilled
+     * offset if that is higher, but always below the lowest failed offset so it is replayed
+     */
+    public long getResumeOffset(String chainCode) {
+        long resume = Math.max(getOffset(chainCode), spilledOffsets.getOrDefault(chainCode, NO_OFFSET));
+        long lowestFailed = tracker(chainCode).getLowestFailed();
+        if (lowestFailed != OffsetWatermarkTracker.NO_OFFSET && resume >= lowestFailed) {
+            resume = lowestFailed - 1;
+        }
+        return resume;
+    }
+
+    /**
+     * Sets the listener told when a chain's checkpoint stalls, i.e. a send failed or too many
+     * offsets are unacknowledged. It is told once until {@link #resubscribed} is called.
+     */
+    public void setStallListener(String chainCode, Consumer<String> listener) {
+        stallListeners.put(chainCode, listener);
+    }
+
+    /**
+     * Records that the chain resubscribed from {@link #getResumeOffset}, re-arming the stall listener
+     */
+    public void resubscribed(String chainCode) {
+        stalled.remove(chainCode);
+    }
+
+    private void stall(String chainCode, String reason) {
+        if (stalled.putIfAbsent(chainCode, Boolean.TRUE) != null) {
+            return;
+        }
+        Consumer<String> listener = stallListeners.get(chainCode);
+        if (listener != null) {
+            listener.accept(reason);
+        }
+    }
+
+    /**
+     * Registers an offset whose Kafka send is about to be issued
+     */
+    public void track(String chainCode, long offset) {
+        if (!tracker(chainCode).track(offset)) {
+            logger.warn("More than {} offsets of chain '{}' are unacknowledged above checkpoint {}",
+                    config.getMaxInFlight(), chainCode, getOffset(chainCode));
+            stall(chainCode, "too many unacknowledged offsets");
+        }
+    }
+
+    /**
+     * Records the Kafka acknowledgement of an offset and advances the checkpoint to the new watermark
+     */
+    public void acknowledge(String chainCode, long offset) {
+        long watermark = tracker(chainCode).acknowledge(offset);
+        if (watermark != OffsetWatermarkTracker.NO_OFFSET) {
+            update(chainCode, watermark);
+        }
+    }
+
+    /**
+     * Records a failed Kafka send. The checkpoint stays below the offset until it is replayed,
+     * which the stall listener arranges.
+     */
+    public void fail(String chainCode, long offset) {
+        if (!tracker(chainCode).fail(offset)) {
+            return;
+        }
+        logger.warn("Kafka send failed for chain '{}' at offset {}. Checkpoint held at {} until it is replayed",
+                chainCode, offset, getOffset(chainCode));
+        stall(chainCode, "Kafka send failed at offset " + offset);
+    }
+
+    /**
+     * Gets the number of offsets sent to Kafka but not yet acknowledged for a chain
+     */
+    public int getPendingCount(String chainCode) {
+        return tracker(chainCode).getPendingCount();
+    }
+
+    /**
+     * Gets the number of direct Kafka sends of a chain still waiting for their acknowledgement.
+     * Offsets held by the Kafka spill or waiting to be replayed are not counted.
+     */
+    public int getSendingCount(String chainCode) {
+        return tracker(chainCode).getSendingCount();
+    }
+
+    /**
+     * Gets a future completed once no direct Kafka send of the chain is waiting for its acknowledgement
+     */
+    public CompletableFuture<Void> whenSent(String chainCode) {
+        return tracker(chainCode).whenSent();
+    }
+
+    private OffsetWatermarkTracker tracker(String chainCode) {
+        return trackers.computeIfAbsent(chainCode, key -> new OffsetWatermarkTracker(config.getMaxInFlight()));
+    }
+
+    /**
+     * Advances the checkpoint for a chain. Offsets lower than the current checkpoint are ignored.
+     */
+    private void update(String chainCode, long offset) {
+        if (!config.isEnabled() || offset < 0) {
+            return;
+        }
+        Long previous = offsets.get(chainCode);
+        if (previous != null && previous >= offset) {
+            return;
+        }
+        offsets.merge(chainCode, offset, Math::max);
+        dirty.set(true);
+    }
+
+    /**
+     * Writes pending updates to disk if anything changed since the last flush.
+     * <p>
+     * The write happens under an exclusive lock on a sibling lock file and merges with the
+     * offsets already on disk, keeping the higher offset per chain, so several nodes can share
+     * one checkpoint directory without overwriting each other's chains.
+     */
+    public synchronized void flush() throws IOException {
+        if (checkpointFile == null || !dirty.getAndSet(false)) {
+            return;
+        }
+
+        try (FileChannel lockChannel = openLockChannel(); FileLock ignored = lockChannel.lock()) {
+            readCheckpointFile().forEach((chainCode, offset) -> offsets.merge(chainCode, offset, Math::max));
+
+            Properties properties = new Properties();
+            offsets.forEach((chainCode, offset) -> properties.setProperty(chainCode, Long.toString(offset)));
+
+            Path tempFile = checkpointFile.resolveSibling(CHECKPOINT_FILE + ".tmp");
+            try (FileChannel channel = FileChannel.open(tempFile,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                OutputStream out = Channels.newOutputStream(channel);
+                properties.store(out, "OHIP stream offsets last produced to Kafka");
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(tempFile, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            dirty.set(true);
+            throw e;
+        }
+        logger.debug("Offset checkpoints flushed: {}", offsets);
+    }
+
+    private FileChannel openLockChannel() throws IOException {
+        return FileChannel.open(checkpointFile.resolveSibling(LOCK_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            logger.error("Failed to flush offset checkpoints", e);
+        }
+    }
+
+    @PreDestroy
+    public void cleanup() {
+        if (flushScheduler != null) {
+            flushScheduler.shutdown();
+        }
+        flushQuietly();
+        logger.info("Offset checkpoint store closed");
+    }
+}
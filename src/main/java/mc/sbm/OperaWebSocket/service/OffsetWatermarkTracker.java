@@ -0,0 +1,178 @@
+package mc.sbm.OperaWebSocket.service;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Tracks Kafka acknowledgements of OHIP stream offsets and computes the contiguous watermark:
+ * the highest offset such that every tracked offset at or below it has been acknowledged.
+ * <p>
+ * Offsets are tracked in send order and may be acknowledged in any order. A failed send keeps
+ * the watermark below it until the offset is replayed (tracked again) and acknowledged, so the
+ * owner must resubscribe from below {@link #getLowestFailed()} after a failure. Offsets held by
+ * the Kafka spill also hold the watermark back but are not counted as sending, since the spill
+ * delivers them durably.
+ */
+public class OffsetWatermarkTracker {
+
+    public static final long NO_OFFSET = -1L;
+
+    private enum State {
+        /** Handed to the producer, waiting for its acknowledgement */
+        SENDING,
+        /** Kept in the Kafka spill until it can be resent */
+        SPILLED,
+        /** Not published; waiting to be replayed */
+        FAILED,
+        ACKNOWLEDGED
+    }
+
+    private final int maxInFlight;
+    private final TreeMap<Long, State> inFlight = new TreeMap<>();
+    private final TreeSet<Long> failedOffsets = new TreeSet<>();
+    private long watermark = NO_OFFSET;
+    private long failedCount;
+    private int sendingCount;
+    private CompletableFuture<Void> sent;
+
+    public OffsetWatermarkTracker() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param maxInFlight number of offsets above the watermark beyond which {@link #track} reports
+     *                    that the tracker is full
+     */
+    public OffsetWatermarkTracker(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Registers an offset whose Kafka send is about to be issued. A failed offset tracked again
+     * is being replayed.
+     *
+     * @return false if more than the maximum number of offsets are now above the watermark; the
+     * offset is tracked anyway
+     */
+    public synchronized boolean track(long offset) {
+        State previous = inFlight.get(offset);
+        if (previous == null || previous == State.FAILED) {
+            inFlight.put(offset, State.SENDING);
+            failedOffsets.remove(offset);
+            sendingCount++;
+        }
+        return inFlight.size() <= maxInFlight;
+    }
+
+    /**
+     * Marks an offset as acknowledged by Kafka
+     *
+     * @return the new watermark if it advanced, otherwise {@link #NO_OFFSET}
+     */
+    public synchronized long acknowledge(long offset) {
+        State previous = inFlight.get(offset);
+        if (previous == null) {
+            return NO_OFFSET;
+        }
+        if (previous == State.SENDING) {
+            sendingResolved();
+        } else if (previous == State.FAILED) {
+            failedOffsets.remove(offset);
+        }
+        inFlight.put(offset, State.ACKNOWLEDGED);
+
+        long previousWatermark = watermark;
+        while (!inFlight.isEmpty()) {
+            Map.Entry<Long, State> head = inFlight.firstEntry();
+            if (head.getValue() != State.ACKNOWLEDGED) {
+                break;
+            }
+            inFlight.pollFirstEntry();
+            watermark = Math.max(watermark, head.getKey());
+        }
+        return watermark > previousWatermark ? watermark : NO_OFFSET;
+    }
+
+    /**
+     * Records that an offset's send was handed to the Kafka spill
+     */
+    public synchronized void spilled(long offset) {
+        if (inFlight.get(offset) == State.SENDING) {
+            inFlight.put(offset, State.SPILLED);
+            sendingResolved();
+        }
+    }
+
+    /**
+     * Records a failed send. The offset stays unacknowledged and holds the watermark back until
+     * it is replayed.
+     *
+     * @return true if the offset was being sent, false if it was unknown or already resolved
+     */
+    public synchronized boolean fail(long offset) {
+        State previous = inFlight.get(offset);
+        if (previous != State.SENDING && previous != State.SPILLED) {
+            return false;
+        }
+        if (previous == State.SENDING) {
+            sendingResolved();
+        }
+        inFlight.put(offset, State.FAILED);
+        failedOffsets.add(offset);
+        failedCount++;
+        return true;
+    }
+
+    private void sendingResolved() {
+        if (--sendingCount == 0 && sent != null) {
+            sent.complete(null);
+            sent = null;
+        }
+    }
+
+    /**
+     * Gets a future completed once no direct send is waiting for its acknowledgement. It is
+     * completed on the thread that resolves the last send, so callbacks must not block.
+     */
+    public synchronized CompletableFuture<Void> whenSent() {
+        if (sendingCount == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (sent == null) {
+            sent = new CompletableFuture<>();
+        }
+        return sent;
+    }
+
+    public synchronized long getWatermark() {
+        return watermark;
+    }
+
+    /**
+     * Gets the lowest offset that failed and has not been replayed, or {@link #NO_OFFSET}
+     */
+    public synchronized long getLowestFailed() {
+        return failedOffsets.isEmpty() ? NO_OFFSET : failedOffsets.first();
+    }
+
+    /**
+     * Gets the number of offsets sent but not yet covered by the watermark
+     */
+    public synchronized int getPendingCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * Gets the number of offsets waiting for a Kafka acknowledgement of a direct send, excluding
+     * spilled and failed ones
+     */
+    public synchronized int getSendingCount() {
+        return sendingCount;
+    }
+
+    public synchronized long getFailedCount() {
+        return failedCount;
+    }
+}
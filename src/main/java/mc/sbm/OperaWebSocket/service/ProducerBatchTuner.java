@@ -0,0 +1,224 @@
+package mc.sbm.OperaWebSocket.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Sizes producer batches from the observed event size and arrival rate.
+ * <p>
+ * Every tuning interval the average record size and send rate since the last interval give the
+ * number of bytes that arrive within the maximum linger. The batch size is that amount with some
+ * headroom, rounded up to a power of two and bounded; the linger drops to the minimum when fewer
+ * than two records arrive per window, since waiting would add latency without filling batches.
+ * <p>
+ * New settings only take effect in a new producer, so they are applied when they differ from the
+ * current ones by at least a factor of two: a copy of the producer factory with the new settings
+ * replaces the current one. Idempotence only orders records within one producer, so sends are held
+ * back by {@link #sendLock()} while the current producer is flushed and swapped: every record
+ * handed to the old producer is acknowledged or failed before the first one reaches the new
+ * producer, and records of one key keep their order across a retune. The hold lasts about a linger
+ * and a broker round trip while Kafka is healthy, but up to {@code delivery.timeout.ms} if Kafka
+ * stops answering during the flush.
+ */
+public class ProducerBatchTuner {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProducerBatchTuner.class);
+    private static final double BATCH_HEADROOM = 1.5;
+
+    private final ProducerFactory<String, byte[]> initialFactory;
+    private final boolean enabled;
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final int minLingerMs;
+    private final int maxLingerMs;
+    private final long intervalSeconds;
+
+    private final LongAdder records = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final ReentrantReadWriteLock reconfigureLock = new ReentrantReadWriteLock();
+
+    private volatile KafkaTemplate<String, byte[]> template;
+    private volatile int batchSize;
+    private volatile int lingerMs;
+    private long lastTuneNanos;
+    private ScheduledExecutorService scheduler;
+
+    public ProducerBatchTuner(KafkaTemplate<String, byte[]> template, MeterRegistry registry, boolean enabled,
+                              int minBatchSize, int maxBatchSize, int minLingerMs, int maxLingerMs,
+                              long intervalSeconds) {
+        this.template = template;
+        this.initialFactory = template.getProducerFactory();
+        this.enabled = enabled;
+        this.minBatchSize = minBatchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.minLingerMs = minLingerMs;
+        this.maxLingerMs = maxLingerMs;
+        this.intervalSeconds = intervalSeconds;
+
+        Map<String, Object> configs = template.getProducerFactory().getConfigurationProperties();
+        this.batchSize = intConfig(configs, ProducerConfig.BATCH_SIZE_CONFIG, 16384);
+        this.lingerMs = intConfig(configs, ProducerConfig.LINGER_MS_CONFIG, 0);
+
+        Gauge.builder("ohip.kafka.producer.batch.size", this, tuner -> tuner.batchSize)
+                .description("Producer batch size currently configured")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("ohip.kafka.producer.linger", this, tuner -> tuner.lingerMs)
+                .description("Producer linger currently configured")
+                .baseUnit("milliseconds")
+                .register(registry);
+    }
+
+    private static int intConfig(Map<String, Object> configs, String name, int defaultValue) {
+        Object value = configs == null ? null : configs.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value.toString());
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        lastTuneNanos = System.nanoTime();
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ohip-producer-tuner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::tuneQuietly, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        logger.info("Adaptive producer batching enabled: batch {}-{} bytes, linger {}-{} ms, every {}s",
+                minBatchSize, maxBatchSize, minLingerMs, maxLingerMs, intervalSeconds);
+    }
+
+    /**
+     * Records a send of the given size
+     */
+    public void observe(int recordBytes) {
+        if (enabled) {
+            records.increment();
+            bytes.add(recordBytes);
+        }
+    }
+
+    /**
+     * Gets the lock held while handing a record to the producer. Shared by all senders; the
+     * tuner takes it exclusively while swapping the producer.
+     */
+    public Lock sendLock() {
+        return reconfigureLock.readLock();
+    }
+
+    /**
+     * Gets the template of the current producer. Records must be sent while holding
+     * {@link #sendLock()}, since the producer of a replaced template is closed.
+     */
+    public KafkaTemplate<String, byte[]> getTemplate() {
+        return template;
+    }
+
+    private void tuneQuietly() {
+        try {
+            tune();
+        } catch (Exception e) {
+            logger.error("Producer batch tuning failed", e);
+        }
+    }
+
+    private void tune() {
+        long now = System.nanoTime();
+        double elapsedSeconds = (now - lastTuneNanos) / 1e9;
+        lastTuneNanos = now;
+        tune(records.sumThenReset(), bytes.sumThenReset(), elapsedSeconds);
+    }
+
+    /**
+     * Retunes the producer for the records sent within the given time, if needed
+     */
+    void tune(long count, long total, double elapsedSeconds) {
+        if (count == 0 || elapsedSeconds <= 0) {
+            return;
+        }
+
+        double rate = count / elapsedSeconds;
+        double averageSize = (double) total / count;
+        double recordsPerWindow = rate * maxLingerMs / 1000.0;
+
+        int targetLinger = recordsPerWindow < 2 ? minLingerMs : maxLingerMs;
+        long wanted = (long) (averageSize * Math.max(recordsPerWindow, 1) * BATCH_HEADROOM);
+        int targetBatch = (int) Math.min(maxBatchSize, Math.max(minBatchSize, roundUpToPowerOfTwo(wanted)));
+
+        boolean batchChanged = targetBatch >= batchSize * 2 || targetBatch * 2 <= batchSize;
+        if (!batchChanged && targetLinger == lingerMs) {
+            return;
+        }
+        logger.info("Retuning producer for {} records/s of {} bytes: batch.size {} -> {}, linger.ms {} -> {}",
+                Math.round(rate), Math.round(averageSize), batchSize, targetBatch, lingerMs, targetLinger);
+        apply(targetBatch, targetLinger);
+    }
+
+    private static long roundUpToPowerOfTwo(long value) {
+        return value <= 1 ? 1 : Long.highestOneBit(value - 1) << 1;
+    }
+
+    void apply(int newBatchSize, int newLingerMs) {
+        Map<String, Object> updates = new HashMap<>();
+        updates.put(ProducerConfig.BATCH_SIZE_CONFIG, newBatchSize);
+        updates.put(ProducerConfig.LINGER_MS_CONFIG, newLingerMs);
+
+        ProducerFactory<String, byte[]> previous = template.getProducerFactory();
+        KafkaTemplate<String, byte[]> replacement = new KafkaTemplate<>(previous.copyWithConfigurationOverride(updates));
+
+        long start = System.nanoTime();
+        reconfigureLock.writeLock().lock();
+        try {
+            // Nothing may reach the new producer before the old one resolved all it was given
+            template.flush();
+            template = replacement;
+            batchSize = newBatchSize;
+            lingerMs = newLingerMs;
+        } finally {
+            reconfigureLock.writeLock().unlock();
+        }
+        logger.info("Swapped producer after holding sends for {} ms",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        // No sender holds the old producer any more and it has nothing left to send
+        previous.reset();
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public int getLingerMs() {
+        return lingerMs;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        // The container only closes the factory it created
+        ProducerFactory<String, byte[]> current = template.getProducerFactory();
+        if (current != initialFactory) {
+            current.reset();
+        }
+    }
+}
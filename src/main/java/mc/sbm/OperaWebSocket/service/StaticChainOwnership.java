@@ -0,0 +1,50 @@
+package mc.sbm.OperaWebSocket.service;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Single-node ownership: every configured chain is owned by this instance
+ */
+public class StaticChainOwnership implements ChainOwnershipCoordinator {
+
+    private final String nodeId;
+    private final Set<String> chains = new LinkedHashSet<>();
+
+    public StaticChainOwnership(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    @Override
+    public synchronized void start(Collection<String> chainCodes, Listener listener) {
+        chains.addAll(chainCodes);
+        for (String chainCode : chainCodes) {
+            listener.onChainAcquired(chainCode);
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        chains.clear();
+    }
+
+    /**
+     * Always true, also before {@link #start}, since no other node can claim a chain
+     */
+    @Override
+    public boolean owns(String chainCode) {
+        return true;
+    }
+
+    @Override
+    public synchronized Set<String> getOwnedChains() {
+        return Collections.unmodifiableSet(new LinkedHashSet<>(chains));
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+}
@@ -0,0 +1,413 @@
+package mc.sbm.OperaWebSocket.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import mc.sbm.OperaWebSocket.client.KeepAliveManager;
+import mc.sbm.OperaWebSocket.client.ReconnectScheduler;
+import mc.sbm.OperaWebSocket.client.StandbyConnection;
+import mc.sbm.OperaWebSocket.websocket.AssembledMessage;
+import mc.sbm.OperaWebSocket.websocket.BufferPool;
+import mc.sbm.OperaWebSocket.websocket.EventHandlerPipeline;
+import mc.sbm.OperaWebSocket.websocket.MessageIngestQueue;
+import mc.sbm.OperaWebSocket.websocket.OffsetDeduplicator;
+import mc.sbm.OperaWebSocket.websocket.WebSocketConnectionManager;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Micrometer instrumentation for the streaming ingest pipeline.
+ * <p>
+ * Covers every stage from the socket to Kafka: frames and bytes received, message assembly,
+ * envelope parsing, events per module/event, Kafka send latency and failures per topic,
+ * reconnects and keep-alive round trips. Queue, buffer pool and connection state are exposed
+ * as gauges bound to the live objects. Connection meters are tagged by chain. Meters keyed by
+ * chain, topic or event are cached so the hot path does not go through the registry lookup for
+ * every message.
+ */
+@Service
+public class StreamingMetrics {
+
+    private static final String PREFIX = "ohip.";
+
+    private final MeterRegistry registry;
+
+    private final Counter textFrames;
+    private final Counter binaryFrames;
+    private final Counter textBytes;
+    private final Counter binaryBytes;
+    private final DistributionSummary fragmentsPerMessage;
+    private final DistributionSummary messageSize;
+    private final Timer assemblyTime;
+    private final Timer parseTime;
+    private final Counter droppedEvents;
+    private final Counter filteredEvents;
+
+    private final Map<String, Counter> eventCounters = new ConcurrentHashMap<>();
+    private final Map<String, Timer> kafkaSendTimers = new ConcurrentHashMap<>();
+    private final Map<String, Timer> handlerTimers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> handlerFailureCounters = new ConcurrentHashMap<>();
+    private final Map<String, Counter> kafkaFailureCounters = new ConcurrentHashMap<>();
+    private final Map<String, Counter> reconnectAttempts = new ConcurrentHashMap<>();
+    private final Map<String, Timer> reconnectDurations = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> reconnectAttemptsPerOutage = new ConcurrentHashMap<>();
+    private final Map<String, Timer> pingRoundTrips = new ConcurrentHashMap<>();
+    private final Map<String, Counter> missedPongs = new ConcurrentHashMap<>();
+    private final Map<String, Timer> failovers = new ConcurrentHashMap<>();
+
+    public StreamingMetrics(MeterRegistry registry) {
+        this.registry = registry;
+
+        this.textFrames = frameCounter("text");
+        this.binaryFrames = frameCounter("binary");
+        this.textBytes = byteCounter("text");
+        this.binaryBytes = byteCounter("binary");
+        this.fragmentsPerMessage = DistributionSummary.builder(PREFIX + "message.fragments")
+                .description("WebSocket frames per assembled message")
+                .register(registry);
+        this.messageSize = DistributionSummary.builder(PREFIX + "message.size")
+                .description("Assembled message size")
+                .baseUnit("bytes")
+                .register(registry);
+        this.assemblyTime = Timer.builder(PREFIX + "message.assembly")
+                .description("Time from first to last fragment of a message")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.parseTime = Timer.builder(PREFIX + "message.parse")
+                .description("Time spent extracting the envelope of a message")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.droppedEvents = Counter.builder(PREFIX + "events.dropped")
+                .description("Events not published because a routing rule drops them")
+                .register(registry);
+        this.filteredEvents = Counter.builder(PREFIX + "events.filtered")
+                .description("Events skipped by the include/exclude filter before processing")
+                .register(registry);
+    }
+
+    private Counter frameCounter(String type) {
+        return Counter.builder(PREFIX + "websocket.frames")
+                .description("WebSocket frames received")
+                .tag("type", type)
+                .register(registry);
+    }
+
+    private Counter byteCounter(String type) {
+        return Counter.builder(PREFIX + "websocket.bytes")
+                .description("Payload bytes received")
+                .tag("type", type)
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    public void recordTextFrame(long bytes) {
+        textFrames.increment();
+        textBytes.increment(bytes);
+    }
+
+    public void recordBinaryFrame(long bytes) {
+        binaryFrames.increment();
+        binaryBytes.increment(bytes);
+    }
+
+    /**
+     * Records fragment count, size and assembly time of a complete message
+     */
+    public void recordAssembled(AssembledMessage message) {
+        fragmentsPerMessage.record(message.getFragmentCount());
+        messageSize.record(message.length());
+        assemblyTime.record(message.getAssemblyNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    public void recordParse(long nanos) {
+        parseTime.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordEvent(String moduleName, String eventName) {
+        eventCounters.computeIfAbsent(moduleName + '\u0000' + eventName, key -> Counter.builder(PREFIX + "events")
+                .description("Business events received")
+                .tag("module", moduleName)
+                .tag("event", eventName)
+                .register(registry)
+        ).increment();
+    }
+
+    public void recordDroppedEvent() {
+        droppedEvents.increment();
+    }
+
+    public void recordFilteredEvent() {
+        filteredEvents.increment();
+    }
+
+    /**
+     * Records the latency of a Kafka send, counting it as a failure if it was not acknowledged
+     */
+    public void recordKafkaSend(String topic, long nanos, boolean success) {
+        kafkaSendTimers.computeIfAbsent(topic, key -> Timer.builder(PREFIX + "kafka.send")
+                .description("Time from send to broker acknowledgement")
+                .tag("topic", topic)
+                .publishPercentileHistogram()
+                .register(registry)
+        ).record(nanos, TimeUnit.NANOSECONDS);
+
+        if (!success) {
+            kafkaFailureCounters.computeIfAbsent(topic, key -> Counter.builder(PREFIX + "kafka.send.failures")
+                    .description("Kafka sends that were not acknowledged")
+                    .tag("topic", topic)
+                    .register(registry)
+            ).increment();
+        }
+    }
+
+    /**
+     * Records the run time of an event handler, counting it as a failure if it threw
+     */
+    public void recordEventHandler(String handler, long nanos, boolean success) {
+        handlerTimers.computeIfAbsent(handler, key -> Timer.builder(PREFIX + "handler.duration")
+                .description("Time spent in an event handler")
+                .tag("handler", handler)
+                .register(registry)
+        ).record(nanos, TimeUnit.NANOSECONDS);
+
+        if (!success) {
+            handlerFailureCounters.computeIfAbsent(handler, key -> Counter.builder(PREFIX + "handler.failures")
+                    .description("Events an event handler failed on")
+                    .tag("handler", handler)
+                    .register(registry)
+            ).increment();
+        }
+    }
+
+    public void recordReconnectAttempt(String chainCode) {
+        reconnectAttempts.computeIfAbsent(chainCode, key -> Counter.builder(PREFIX + "reconnect.attempts")
+                .description("Scheduled reconnection attempts")
+                .tag("chain", chainCode)
+                .register(registry)
+        ).increment();
+    }
+
+    /**
+     * Records the end of an outage: its duration and the attempts it took
+     */
+    public void recordReconnected(String chainCode, long downtimeNanos, int attempts) {
+        reconnectDurations.computeIfAbsent(chainCode, key -> Timer.builder(PREFIX + "reconnect.duration")
+                .description("Time from losing the connection to re-establishing it")
+                .tag("chain", chainCode)
+                .register(registry)
+        ).record(downtimeNanos, TimeUnit.NANOSECONDS);
+        reconnectAttemptsPerOutage.computeIfAbsent(chainCode, key -> DistributionSummary.builder(PREFIX + "reconnect.outage.attempts")
+                .description("Reconnect attempts needed to end an outage")
+                .tag("chain", chainCode)
+                .register(registry)
+        ).record(attempts);
+    }
+
+    public void recordPingRoundTrip(String chainCode, long roundTripNanos) {
+        pingRoundTrips.computeIfAbsent(chainCode, key -> Timer.builder(PREFIX + "ping.rtt")
+                .description("Round trip from GraphQL-WS ping to pong")
+                .tag("chain", chainCode)
+                .register(registry)
+        ).record(roundTripNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordPongMissed(String chainCode) {
+        missedPongs.computeIfAbsent(chainCode, key -> Counter.builder(PREFIX + "ping.pong.missed")
+                .description("Pings not answered within the pong timeout")
+                .tag("chain", chainCode)
+                .register(registry)
+        ).increment();
+    }
+
+    /**
+     * Registers connection state gauges of a chain
+     */
+    public void bindConnection(String chainCode, WebSocketConnectionManager connectionManager) {
+        Gauge.builder(PREFIX + "connected", connectionManager, manager -> manager.isConnected() ? 1 : 0)
+                .description("Whether the WebSocket session is connected")
+                .tag("chain", chainCode)
+                .register(registry);
+        Gauge.builder(PREFIX + "last.message.age", connectionManager, StreamingMetrics::secondsSinceLastMessage)
+                .description("Time since the last frame was received")
+                .tag("chain", chainCode)
+                .baseUnit("seconds")
+                .register(registry);
+    }
+
+    /**
+     * Registers the outage gauge and coalesced trigger counter of a chain's reconnects
+     */
+    public void bindReconnects(String chainCode, ReconnectScheduler reconnects) {
+        Gauge.builder(PREFIX + "reconnect.outage", reconnects, scheduler -> scheduler.getOutageMillis() / 1000.0)
+                .description("Duration of the current outage, 0 when connected")
+                .tag("chain", chainCode)
+                .baseUnit("seconds")
+                .register(registry);
+        FunctionCounter.builder(PREFIX + "reconnect.coalesced", reconnects, ReconnectScheduler::getCoalescedCount)
+                .description("Reconnect triggers absorbed by an attempt already pending")
+                .tag("chain", chainCode)
+                .register(registry);
+    }
+
+    /**
+     * Records a switch to the hot standby, timed from detecting the loss to sending the subscription
+     */
+    public void recordFailover(String chainCode, long switchNanos) {
+        failovers.computeIfAbsent(chainCode, key -> Timer.builder(PREFIX + "standby.failover")
+                .description("Switches to the hot standby connection")
+                .tag("chain", chainCode)
+                .register(registry)
+        ).record(switchNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Registers whether a chain's hot standby is ready to take over
+     */
+    public void bindStandby(String chainCode, StandbyConnection standby) {
+        Gauge.builder(PREFIX + "standby.ready", standby, connection -> connection.isReady() ? 1 : 0)
+                .description("Whether the hot standby connection is ready to take over")
+                .tag("chain", chainCode)
+                .register(registry);
+    }
+
+    /**
+     * Registers the last ping round trip of a chain
+     */
+    public void bindKeepAlive(String chainCode, KeepAliveManager keepAlive) {
+        Gauge.builder(PREFIX + "ping.rtt.last", keepAlive, StreamingMetrics::lastRoundTripSeconds)
+                .description("Round trip of the last answered ping")
+                .tag("chain", chainCode)
+                .baseUnit("seconds")
+                .register(registry);
+    }
+
+    private static double lastRoundTripSeconds(KeepAliveManager keepAlive) {
+        double millis = keepAlive.getLastRoundTripMillis();
+        return millis < 0 ? Double.NaN : millis / 1000.0;
+    }
+
+    private static double secondsSinceLastMessage(WebSocketConnectionManager connectionManager) {
+        Instant lastMessageReceived = connectionManager.getLastMessageReceived();
+        if (lastMessageReceived == null) {
+            return Double.NaN;
+        }
+        return Duration.between(lastMessageReceived, Instant.now()).toMillis() / 1000.0;
+    }
+
+    /**
+     * Registers depth gauges and throughput counters for an ingest queue
+     */
+    public void bindIngestQueue(MessageIngestQueue queue) {
+        String name = queue.getName();
+        Gauge.builder(PREFIX + "ingest.depth", queue, MessageIngestQueue::getMemoryDepth)
+                .description("Messages waiting in memory")
+                .tag("queue", name)
+                .register(registry);
+        Gauge.builder(PREFIX + "ingest.spill.depth", queue, MessageIngestQueue::getSpillDepth)
+                .description("Messages waiting in the spill file")
+                .tag("queue", name)
+                .register(registry);
+        Gauge.builder(PREFIX + "ingest.high.water.mark", queue, MessageIngestQueue::getHighWaterMark)
+                .description("Highest in-memory depth observed")
+                .tag("queue", name)
+                .register(registry);
+        queueCounter("enqueued", name, queue, MessageIngestQueue::getEnqueuedCount);
+        queueCounter("processed", name, queue, MessageIngestQueue::getProcessedCount);
+        queueCounter("failed", name, queue, MessageIngestQueue::getFailedCount);
+        queueCounter("dropped", name, queue, MessageIngestQueue::getDroppedCount);
+        queueCounter("spilled", name, queue, MessageIngestQueue::getSpilledCount);
+    }
+
+    private void queueCounter(String outcome, String name, MessageIngestQueue queue,
+                              ToDoubleFunction<MessageIngestQueue> count) {
+        FunctionCounter.builder(PREFIX + "ingest.messages", queue, count)
+                .description("Messages handled by the ingest queue")
+                .tag("queue", name)
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    /**
+     * Registers the queue depth gauge of the event handler pipeline
+     */
+    public void bindEventHandlers(EventHandlerPipeline pipeline) {
+        Gauge.builder(PREFIX + "handler.queued", pipeline, EventHandlerPipeline::getQueuedCount)
+                .description("Events waiting for their handlers")
+                .register(registry);
+    }
+
+    /**
+     * Registers duplicate counters and the hit ratio of a chain's offset deduplicator
+     */
+    public void bindDeduplicator(String chainCode, OffsetDeduplicator deduplicator) {
+        FunctionCounter.builder(PREFIX + "dedup.events", deduplicator, OffsetDeduplicator::getUniqueCount)
+                .description("Events checked for redelivery")
+                .tag("chain", chainCode)
+                .tag("outcome", "unique")
+                .register(registry);
+        FunctionCounter.builder(PREFIX + "dedup.events", deduplicator, OffsetDeduplicator::getDuplicateCount)
+                .description("Events checked for redelivery")
+                .tag("chain", chainCode)
+                .tag("outcome", "duplicate")
+                .register(registry);
+        Gauge.builder(PREFIX + "dedup.hit.ratio", deduplicator, OffsetDeduplicator::getHitRatio)
+                .description("Share of events dropped as already received")
+                .tag("chain", chainCode)
+                .register(registry);
+    }
+
+    /**
+     * Registers size gauges and record counters for the Kafka spill log
+     */
+    public void bindKafkaSpill(KafkaSpillService spill) {
+        Gauge.builder(PREFIX + "kafka.spill.records", spill, KafkaSpillService::getPendingRecords)
+                .description("Records waiting in the spill log for Kafka")
+                .register(registry);
+        Gauge.builder(PREFIX + "kafka.spill.bytes", spill, KafkaSpillService::getSizeBytes)
+                .description("Disk space used by the spill log")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder(PREFIX + "kafka.spill.active", spill, service -> service.isSpilling() ? 1 : 0)
+                .description("Whether events are being spilled instead of sent")
+                .register(registry);
+        spillCounter("spilled", spill, KafkaSpillService::getSpilledCount);
+        spillCounter("drained", spill, KafkaSpillService::getDrainedCount);
+        spillCounter("rejected", spill, KafkaSpillService::getRejectedCount);
+    }
+
+    private void spillCounter(String outcome, KafkaSpillService spill, ToDoubleFunction<KafkaSpillService> count) {
+        FunctionCounter.builder(PREFIX + "kafka.spill.records.total", spill, count)
+                .description("Records handled by the Kafka spill log")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    /**
+     * Registers gauges for the message assembly buffer pool
+     */
+    public void bindBufferPool(BufferPool pool) {
+        Gauge.builder(PREFIX + "buffer.pool.pooled", pool, BufferPool::getPooledBytes)
+                .description("Idle bytes held for reuse")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder(PREFIX + "buffer.pool.in.use", pool, BufferPool::getInUseBytes)
+                .description("Bytes held by messages being assembled or processed")
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionCounter.builder(PREFIX + "buffer.pool.allocations", pool, BufferPool::getAllocations)
+                .description("Segments allocated because the pool was empty")
+                .register(registry);
+        FunctionCounter.builder(PREFIX + "buffer.pool.discards", pool, BufferPool::getDiscards)
+                .description("Released segments dropped because the pool was full")
+                .register(registry);
+    }
+}
@@ -0,0 +1,209 @@
+package mc.sbm.OperaWebSocket.websocket;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+/**
+ * Read-only view of a complete message held as a list of byte segments.
+ * <p>
+ * Segments borrowed from a {@link BufferPool} are returned by {@link #release()} or by the first
+ * {@link #toByteArray()} call, which flattens the message into a single array it then owns.
+ * Until then the message can be read through {@link #inputStream()} without copying.
+ * The owner must not read a released message.
+ */
+public final class AssembledMessage {
+
+    private final BufferPool pool;
+    private final int length;
+    private byte[][] segments;
+    private int[] segmentLengths;
+    private byte[] flattened;
+    private EnvelopeFields envelopeFields;
+    private int fragmentCount;
+    private long receivedAtNanos;
+    private long assemblyNanos;
+    private long parseNanos;
+
+    AssembledMessage(byte[][] segments, int[] segmentLengths, int length, BufferPool pool) {
+        this.segments = segments;
+        this.segmentLengths = segmentLengths;
+        this.length = length;
+        this.pool = pool;
+    }
+
+    private AssembledMessage(byte[] bytes, long receivedAtNanos) {
+        this.flattened = bytes;
+        this.length = bytes.length;
+        this.pool = null;
+        this.receivedAtNanos = receivedAtNanos;
+    }
+
+    /**
+     * Wraps an existing array without copying it
+     *
+     * @param bytes the complete message
+     * @param receivedAtNanos {@link System#nanoTime()} when the message was received, or 0 if unknown
+     */
+    public static AssembledMessage wrap(byte[] bytes, long receivedAtNanos) {
+        return new AssembledMessage(bytes, receivedAtNanos);
+    }
+
+    /**
+     * Gets the message length in bytes
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Gets the routing fields read while the message was assembled, if any
+     */
+    EnvelopeFields getEnvelopeFields() {
+        return envelopeFields;
+    }
+
+    void setEnvelopeFields(EnvelopeFields envelopeFields) {
+        this.envelopeFields = envelopeFields;
+    }
+
+    void setAssemblyStats(int fragmentCount, long receivedAtNanos, long assemblyNanos, long parseNanos) {
+        this.fragmentCount = fragmentCount;
+        this.receivedAtNanos = receivedAtNanos;
+        this.assemblyNanos = assemblyNanos;
+        this.parseNanos = parseNanos;
+    }
+
+    /**
+     * Gets the number of WebSocket frames the message was assembled from (0 if not assembled)
+     */
+    public int getFragmentCount() {
+        return fragmentCount;
+    }
+
+    /**
+     * Gets the {@link System#nanoTime()} at which the first frame was received (0 if unknown)
+     */
+    public long getReceivedAtNanos() {
+        return receivedAtNanos;
+    }
+
+    /**
+     * Gets the time from the first to the last fragment
+     */
+    public long getAssemblyNanos() {
+        return assemblyNanos;
+    }
+
+    /**
+     * Gets the time spent parsing the envelope while fragments arrived
+     */
+    public long getParseNanos() {
+        return parseNanos;
+    }
+
+    /**
+     * Checks if the message is backed by a single owned array
+     */
+    public synchronized boolean isFlattened() {
+        return flattened != null;
+    }
+
+    /**
+     * Opens a stream over the message content without copying it
+     */
+    public synchronized InputStream inputStream() {
+        if (flattened != null) {
+            return new ByteArrayInputStream(flattened);
+        }
+        if (segments == null) {
+            throw new IllegalStateException("Message already released");
+        }
+        return new SegmentInputStream(segments, segmentLengths);
+    }
+
+    /**
+     * Gets the message as a single array. The first call copies the segments into an exact-size
+     * array and releases them; later calls return the same array.
+     */
+    public synchronized byte[] toByteArray() {
+        if (flattened == null) {
+            if (segments == null) {
+                throw new IllegalStateException("Message already released");
+            }
+            byte[] bytes = new byte[length];
+            int position = 0;
+            for (int i = 0; i < segments.length; i++) {
+                System.arraycopy(segments[i], 0, bytes, position, segmentLengths[i]);
+                position += segmentLengths[i];
+            }
+            flattened = bytes;
+            releaseSegments();
+        }
+        return flattened;
+    }
+
+    /**
+     * Returns pooled segments to the pool. Safe to call more than once.
+     */
+    public synchronized void release() {
+        releaseSegments();
+    }
+
+    private void releaseSegments() {
+        if (segments != null) {
+            for (byte[] segment : segments) {
+                pool.release(segment);
+            }
+            segments = null;
+            segmentLengths = null;
+        }
+    }
+
+    private static final class SegmentInputStream extends InputStream {
+
+        private final byte[][] segments;
+        private final int[] segmentLengths;
+        private int segment;
+        private int position;
+
+        private SegmentInputStream(byte[][] segments, int[] segmentLengths) {
+            this.segments = segments;
+            this.segmentLengths = segmentLengths;
+        }
+
+        private boolean advance() {
+            while (segment < segments.length && position >= segmentLengths[segment]) {
+                segment++;
+                position = 0;
+            }
+            return segment < segments.length;
+        }
+
+        @Override
+        public int read() {
+            if (!advance()) {
+                return -1;
+            }
+            return segments[segment][position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] target, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!advance()) {
+                return -1;
+            }
+            int count = Math.min(length, segmentLengths[segment] - position);
+            System.arraycopy(segments[segment], position, target, offset, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return advance() ? segmentLengths[segment] - position : 0;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package mc.sbm.OperaWebSocket.websocket;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of fixed-size byte segments used to assemble fragmented messages.
+ * <p>
+ * Segments are recycled across messages. Once the pool holds its maximum number of idle
+ * segments, further releases are dropped and left to the garbage collector, so a single huge
+ * message never pins its peak footprint. Segments handed out are counted against a separate
+ * in-use limit; past it, {@link MessageAssembler} copies complete messages out of their segments
+ * instead of queueing the segments themselves.
+ */
+public class BufferPool {
+
+    private final int segmentSize;
+    private final int maxPooledSegments;
+    private final int maxInUseSegments;
+    private final ConcurrentLinkedDeque<byte[]> pool = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final AtomicLong allocations = new AtomicLong();
+    private final AtomicLong reuses = new AtomicLong();
+    private final AtomicLong discards = new AtomicLong();
+
+    public BufferPool(int segmentSize, long maxPooledBytes) {
+        this(segmentSize, maxPooledBytes, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param maxInUseBytes bytes of segments held by messages beyond which
+     *                      {@link #isInUseLimitReached()} reports true
+     */
+    public BufferPool(int segmentSize, long maxPooledBytes, long maxInUseBytes) {
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("Segment size must be positive");
+        }
+        this.segmentSize = segmentSize;
+        this.maxPooledSegments = toSegments(maxPooledBytes);
+        this.maxInUseSegments = toSegments(maxInUseBytes);
+    }
+
+    private int toSegments(long bytes) {
+        return (int) Math.max(0, Math.min(Integer.MAX_VALUE, bytes / segmentSize));
+    }
+
+    /**
+     * Takes a segment from the pool, allocating a new one if the pool is empty
+     */
+    public byte[] acquire() {
+        inUse.incrementAndGet();
+        byte[] segment = pool.pollFirst();
+        if (segment != null) {
+            pooled.decrementAndGet();
+            reuses.incrementAndGet();
+            return segment;
+        }
+        allocations.incrementAndGet();
+        return new byte[segmentSize];
+    }
+
+    /**
+     * Returns a segment to the pool, or drops it if the pool is full
+     */
+    public void release(byte[] segment) {
+        inUse.decrementAndGet();
+        if (segment.length != segmentSize) {
+            return;
+        }
+        if (pooled.incrementAndGet() <= maxPooledSegments) {
+            pool.offerFirst(segment);
+        } else {
+            pooled.decrementAndGet();
+            discards.incrementAndGet();
+        }
+    }
+
+    /**
+     * Checks if the segments handed out have reached the in-use limit
+     */
+    public boolean isInUseLimitReached() {
+        return inUse.get() >= maxInUseSegments;
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    public int getPooledSegments() {
+        return pooled.get();
+    }
+
+    public long getPooledBytes() {
+        return (long) pooled.get() * segmentSize;
+    }
+
+    public int getInUseSegments() {
+        return inUse.get();
+    }
+
+    public long getInUseBytes() {
+        return (long) inUse.get() * segmentSize;
+    }
+
+    public long getMaxPooledBytes() {
+        return (long) maxPooledSegments * segmentSize;
+    }
+
+    public long getMaxInUseBytes() {
+        return (long) maxInUseSegments * segmentSize;
+    }
+
+    public long getAllocations() {
+        return allocations.get();
+    }
+
+    public long getReuses() {
+        return reuses.get();
+    }
+
+    public long getDiscards() {
+        return discards.get();
+    }
+}
@@ -0,0 +1,173 @@
+package mc.sbm.OperaWebSocket.websocket;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * FIFO overflow buffer backed by a single append-only file.
+ * <p>
+ * Records are length-prefixed byte arrays stamped with their receive time. The file is
+ * truncated whenever the reader catches up with the writer, so it only grows while the consumer
+ * is behind, and never beyond the configured maximum. Contents are not meant to survive a restart; resume-after-restart is handled by
+ * offset replay.
+ */
+public class DiskSpillBuffer implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(DiskSpillBuffer.class);
+    private static final int HEADER_BYTES = Integer.BYTES + Long.BYTES;
+
+    private final Path file;
+    private final long maxBytes;
+    private final FileChannel channel;
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+
+    private long readPosition;
+    private long writePosition;
+    private int records;
+
+    /**
+     * @param maxBytes maximum size of the file; space is only reclaimed once the buffer is empty
+     */
+    public DiskSpillBuffer(Path file, long maxBytes) {
+        this.file = file;
+        this.maxBytes = maxBytes;
+        try {
+            Files.createDirectories(file.getParent());
+            this.channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.READ,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open spill file " + file, e);
+        }
+        logger.info("Spill buffer opened at {}", file);
+    }
+
+    /**
+     * Checks whether a message of the given length can be appended without exceeding the maximum size
+     */
+    public synchronized boolean hasRoomFor(int length) {
+        return writePosition + HEADER_BYTES + length <= maxBytes;
+    }
+
+    /**
+     * Appends a record to the end of the buffer
+     *
+     * @param message the message bytes
+     * @param receivedAtNanos {@link System#nanoTime()} when the message was received
+     * @return false if the record would exceed the maximum size, in which case nothing is written
+     */
+    public synchronized boolean append(byte[] message, long receivedAtNanos) throws IOException {
+        if (!hasRoomFor(message.length)) {
+            return false;
+        }
+        header.clear();
+        header.putInt(message.length).putLong(receivedAtNanos).flip();
+        ByteBuffer[] record = {header, ByteBuffer.wrap(message)};
+        channel.position(writePosition);
+        long remaining = HEADER_BYTES + (long) message.length;
+        while (remaining > 0) {
+            long written = channel.write(record);
+            writePosition += written;
+            remaining -= written;
+        }
+        records++;
+        return true;
+    }
+
+    /**
+     * Removes and returns the oldest record
+     *
+     * @return the record, or null if the buffer is empty
+     */
+    public synchronized Record poll() throws IOException {
+        if (records == 0) {
+            return null;
+        }
+
+        header.clear();
+        readFully(header, readPosition);
+        header.flip();
+        int length = header.getInt();
+        long receivedAtNanos = header.getLong();
+
+        ByteBuffer body = ByteBuffer.allocate(length);
+        readFully(body, readPosition + HEADER_BYTES);
+        readPosition += HEADER_BYTES + length;
+        records--;
+
+        if (records == 0) {
+            channel.truncate(0);
+            readPosition = 0;
+            writePosition = 0;
+        }
+        return new Record(body.array(), receivedAtNanos);
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        long current = position;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, current);
+            if (read < 0) {
+                throw new IOException("Unexpected end of spill file " + file);
+            }
+            current += read;
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return records == 0;
+    }
+
+    public synchronized int size() {
+        return records;
+    }
+
+    /**
+     * Gets the number of bytes currently held on disk
+     */
+    public synchronized long getSizeBytes() {
+        return writePosition - readPosition;
+    }
+
+    /**
+     * A spilled message and the time it was received
+     */
+    public static final class Record {
+
+        private final byte[] message;
+        private final long receivedAtNanos;
+
+        private Record(byte[] message, long receivedAtNanos) {
+            this.message = message;
+            this.receivedAtNanos = receivedAtNanos;
+        }
+
+        public byte[] getMessage() {
+            return message;
+        }
+
+        public long getReceivedAtNanos() {
+            return receivedAtNanos;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            channel.close();
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Failed to clean up spill file {}", file, e);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package mc.sbm.OperaWebSocket.websocket;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+
+/**
+ * Extracts routing fields from a GraphQL-WS message with a token-streaming parser.
+ * <p>
+ * Only {@code type}, {@code payload.data.newEvent.moduleName}, {@code eventName},
+ * {@code hotelId}, {@code primaryKey} and {@code metadata.offset} are read; every other subtree (notably the {@code detail} array)
+ * is skipped without being materialized. The full tree is built lazily by the envelope.
+ * Messages whose fields were already read while their fragments arrived (see
+ * {@link IncrementalEnvelopeParser}) are not parsed again.
+ */
+public class EnvelopeExtractor {
+
+    private final ObjectMapper objectMapper;
+    private final JsonFactory jsonFactory;
+
+    public EnvelopeExtractor(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.jsonFactory = objectMapper.getFactory();
+    }
+
+    /**
+     * Creates a parser that reads envelope fields from fragments as they arrive
+     */
+    public IncrementalEnvelopeParser createIncrementalParser() {
+        return new IncrementalEnvelopeParser(jsonFactory);
+    }
+
+    /**
+     * Extracts the envelope of a complete message
+     *
+     * @param message the complete message as UTF-8 bytes
+     * @return the envelope, with the full tree available on demand
+     * @throws IOException if the message is not valid JSON
+     */
+    public OracleEventEnvelope extract(AssembledMessage message) throws IOException {
+        EnvelopeFields fields = message.getEnvelopeFields();
+        if (fields == null) {
+            fields = parse(message);
+        }
+        return new OracleEventEnvelope(fields.type, fields.moduleName, fields.eventName, fields.offset,
+                fields.hotelId, fields.primaryKey, fields.hasDetail, message, objectMapper);
+    }
+
+    /**
+     * Gets the GraphQL-WS type of a complete message without building an envelope. Uses the
+     * fields read during assembly when available, so it is cheap enough for the receive thread.
+     *
+     * @return the type, or null if the message has none
+     * @throws IOException if the message is not valid JSON
+     */
+    public String readType(AssembledMessage message) throws IOException {
+        EnvelopeFields fields = message.getEnvelopeFields();
+        if (fields == null) {
+            fields = parse(message);
+        }
+        return fields.type;
+    }
+
+    private EnvelopeFields parse(AssembledMessage message) throws IOException {
+        EnvelopeFields fields = new EnvelopeFields();
+
+        try (JsonParser parser = message.isFlattened()
+                ? jsonFactory.createParser(message.toByteArray())
+                : jsonFactory.createParser(message.inputStream())) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Message is not a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("type".equals(field) && value == JsonToken.VALUE_STRING) {
+                    fields.type = parser.getText();
+                } else if ("payload".equals(field) && value == JsonToken.START_OBJECT) {
+                    readPayload(parser, fields);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return fields;
+    }
+
+    private void readPayload(JsonParser parser, EnvelopeFields fields) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("data".equals(field) && value == JsonToken.START_OBJECT) {
+                readData(parser, fields);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void readData(JsonParser parser, EnvelopeFields fields) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("newEvent".equals(field) && value == JsonToken.START_OBJECT) {
+                readNewEvent(parser, fields);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void readNewEvent(JsonParser parser, EnvelopeFields fields) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "moduleName":
+                    fields.moduleName = scalarText(parser, value);
+                    break;
+                case "eventName":
+                    fields.eventName = scalarText(parser, value);
+                    break;
+                case "hotelId":
+                    fields.hotelId = scalarText(parser, value);
+                    break;
+                case "primaryKey":
+                    fields.primaryKey = scalarText(parser, value);
+                    break;
+                case "metadata":
+                    if (value == JsonToken.START_OBJECT) {
+                        readMetadata(parser, fields);
+                    } else {
+                        parser.skipChildren();
+                    }
+                    break;
+                case "detail":
+                    fields.hasDetail = value != JsonToken.VALUE_NULL;
+                    parser.skipChildren();
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+    }
+
+    private void readMetadata(JsonParser parser, EnvelopeFields fields) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("offset".equals(field)) {
+                fields.offset = parseOffset(parser, value);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private static String scalarText(JsonParser parser, JsonToken value) throws IOException {
+        String text = scalarValue(parser, value);
+        if (!value.isScalarValue()) {
+            parser.skipChildren();
+        }
+        return text;
+    }
+
+    /**
+     * Gets the text of a non-null scalar value without moving the parser
+     */
+    static String scalarValue(JsonParser parser, JsonToken value) throws IOException {
+        if (value.isScalarValue() && value != JsonToken.VALUE_NULL) {
+            return parser.getText();
+        }
+        return null;
+    }
+
+    private static long parseOffset(JsonParser parser, JsonToken value) throws IOException {
+        long offset = offsetValue(parser, value);
+        if (!value.isScalarValue()) {
+            parser.skipChildren();
+        }
+        return offset;
+    }
+
+    /**
+     * Reads an offset sent either as a number or as a numeric string, without moving the parser
+     */
+    static long offsetValue(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_NUMBER_INT) {
+            return parser.getLongValue();
+        }
+        if (value == JsonToken.VALUE_STRING) {
+            try {
+                return Long.parseLong(parser.getText().trim());
+            } catch (NumberFormatException e) {
+                return OracleEventEnvelope.NO_OFFSET;
+            }
+        }
+        return OracleEventEnvelope.NO_OFFSET;
+    }
+}
@@ -0,0 +1,30 @@
+package mc.sbm.OperaWebSocket.websocket;
+
+/**
+ * Routing fields read from a GraphQL-WS message before its full tree is built
+ */
+final class EnvelopeFields {
+
+    String type;
+    String moduleName;
+    String eventName;
+    String hotelId;
+    String primaryKey;
+    long offset = OracleEventEnvelope.NO_OFFSET;
+    boolean offsetSeen;
+    boolean detailSeen;
+    boolean hasDetail;
+
+    /**
+     * Checks if every routing field the message can carry has been read
+     */
+    boolean isResolved() {
+        if (type == null) {
+            return false;
+        }
+        if (!"next".equals(type)) {
+            return true;
+        }
+        return moduleName != null && eventName != null && offsetSeen && detailSeen;
+    }
+}
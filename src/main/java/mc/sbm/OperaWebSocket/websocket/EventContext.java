@@ -0,0 +1,90 @@
+package mc.sbm.OperaWebSocket.websocket;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An event as seen by the {@link EventHandler}s it is dispatched to.
+ * <p>
+ * Owned by one handler chain at a time, so it is not thread-safe. The event node is parsed from
+ * the message on first access.
+ */
+public class EventContext {
+
+    private final String chainCode;
+    private final OracleEventEnvelope envelope;
+    private final Map<String, Object> attributes = new HashMap<>();
+    private JsonNode event;
+
+    EventContext(String chainCode, OracleEventEnvelope envelope) {
+        this.chainCode = chainCode;
+        this.envelope = envelope;
+    }
+
+    public String getChainCode() {
+        return chainCode;
+    }
+
+    public String getModuleName() {
+        return envelope.getModuleName();
+    }
+
+    public String getEventName() {
+        return envelope.getEventName();
+    }
+
+    public long getOffset() {
+        return envelope.getOffset();
+    }
+
+    public String getHotelId() {
+        return envelope.getHotelId();
+    }
+
+    public String getPrimaryKey() {
+        return envelope.getPrimaryKey();
+    }
+
+    /**
+     * Gets the newEvent node, or the node set by a transformer
+     */
+    public JsonNode getEvent() {
+        if (event == null) {
+            event = envelope.getNewEvent();
+        }
+        return event;
+    }
+
+    /**
+     * Replaces the event node seen by the remaining handlers
+     */
+    public void setEvent(JsonNode event) {
+        this.event = event;
+    }
+
+    /**
+     * Gets the detail of the current event node, or null if absent
+     */
+    public JsonNode getDetail() {
+        JsonNode current = getEvent();
+        return current != null ? current.get("detail") : null;
+    }
+
+    /**
+     * Gets the raw UTF-8 message bytes as received. Must not be modified.
+     */
+    public byte[] getRawPayload() {
+        return envelope.getRawPayload();
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T getAttribute(String name) {
+        return (T) attributes.get(name);
+    }
+
+    public void setAttribute(String name, Object value) {
+        attributes.put(name, value);
+    }
+}
@@ -0,0 +1,109 @@
+package mc.sbm.OperaWebSocket.websocket;
+
+import mc.sbm.OperaWebSocket.config.OracleHospitalityConfig;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Configured include/exclude lists deciding which events are processed at all.
+ * <p>
+ * Decisions use only the envelope fields read while the message is received, so a filtered event
+ * is never parsed into a tree, handled or published. Module/event decisions are cached per event
+ * type; the hotel check is a set lookup. Module and event selection has no subscription input and
+ * is only applied here.
+ * <p>
+ * Events lists take {@code EVENT} or {@code MODULE:EVENT} entries. An empty include list includes
+ * everything; excludes win over includes. Chain-wide events without a hotel pass the hotel lists
+ * here, but when exactly one hotel is included it is also sent as the subscription's
+ * {@code hotelCode} (see {@link OracleEventMessageProcessor#getSubscriptionHotelCode}), and OHIP
+ * then streams only that hotel's events: chain-wide events are not delivered at all.
+ */
+public class EventFilter {
+
+    private final Set<String> includeModules;
+    private final Set<String> excludeModules;
+    private final Set<String> includeEvents;
+    private final Set<String> excludeEvents;
+    private final Set<String> includeHotels;
+    private final Set<String> excludeHotels;
+    private final boolean passAll;
+    private final Map<String, Map<String, Boolean>> decisions = new ConcurrentHashMap<>();
+
+    public EventFilter(OracleHospitalityConfig.FilterConfig config) {
+        this.includeModules = normalize(config.getIncludeModules());
+        this.excludeModules = normalize(config.getExcludeModules());
+        this.includeEvents = normalize(config.getIncludeEvents());
+        this.excludeEvents = normalize(config.getExcludeEvents());
+        this.includeHotels = normalize(config.getIncludeHotels());
+        this.excludeHotels = normalize(config.getExcludeHotels());
+        this.passAll = includeModules.isEmpty() && excludeModules.isEmpty() && includeEvents.isEmpty()
+                && excludeEvents.isEmpty() && includeHotels.isEmpty() && excludeHotels.isEmpty();
+    }
+
+    private static Set<String> normalize(List<String> entries) {
+        Set<String> normalized = new HashSet<>();
+        if (entries != null) {
+            for (String entry : entries) {
+                int separator = entry.indexOf(':');
+                normalized.add(separator < 0
+                        ? entry.trim()
+                        : entry.substring(0, separator).trim() + ':' + entry.substring(separator + 1).trim());
+            }
+        }
+        normalized.remove("");
+        return normalized;
+    }
+
+    /**
+     * Checks whether an event passes the filter
+     *
+     * @param hotelId hotel of the event, or null for chain-wide events
+     */
+    public boolean accepts(String moduleName, String eventName, String hotelId) {
+        if (passAll) {
+            return true;
+        }
+        if (hotelId != null && (excludeHotels.contains(hotelId)
+                || (!includeHotels.isEmpty() && !includeHotels.contains(hotelId)))) {
+            return false;
+        }
+        return acceptsType(moduleName, eventName);
+    }
+
+    private boolean acceptsType(String moduleName, String eventName) {
+        Map<String, Boolean> events = decisions.get(moduleName);
+        if (events != null) {
+            Boolean accepted = events.get(eventName);
+            if (accepted != null) {
+                return accepted;
+            }
+        }
+        return decisions.computeIfAbsent(moduleName, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(eventName, key -> resolve(moduleName, eventName));
+    }
+
+    private boolean resolve(String moduleName, String eventName) {
+        if (excludeModules.contains(moduleName) || matchesEvent(excludeEvents, moduleName, eventName)) {
+            return false;
+        }
+        if (!includeModules.isEmpty() && !includeModules.contains(moduleName)) {
+            return false;
+        }
+        return includeEvents.isEmpty() || matchesEvent(includeEvents, moduleName, eventName);
+    }
+
+    private static boolean matchesEvent(Set<String> entries, String moduleName, String eventName) {
+        return entries.contains(eventName) || entries.contains(moduleName + ':' + eventName);
+    }
+
+    /**
+     * Gets the hotel to restrict the subscription to, or null if the filter is not limited to one hotel
+     */
+    public String getSubscriptionHotelCode() {
+        return includeHotels.size() == 1 ? includeHotels.iterator().next() : null;
+    }
+}
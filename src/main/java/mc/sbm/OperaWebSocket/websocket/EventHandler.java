@@ -0,0 +1,41 @@
+package mc.sbm.OperaWebSocket.websocket;
+
+/**
+ * Business logic applied to received events, registered as a Spring bean.
+ * <p>
+ * Handlers run after the event is received and independently of its Kafka publication, on the
+ * {@link EventHandlerPipeline} executor. For each event the matching handlers run one after the
+ * other in stage order (filters, transformers, enrichers, then sinks) and, within a stage, in
+ * {@link org.springframework.core.annotation.Order @Order} order. Events of the same entity are
+ * handled in the order they were received; events of different entities run in parallel.
+ */
+public interface EventHandler {
+
+    enum Stage {
+        /** Decides whether the remaining handlers see the event */
+        FILTER,
+        /** Replaces the event node through {@link EventContext#setEvent} */
+        TRANSFORM,
+        /** Adds attributes for later handlers through {@link EventContext#setAttribute} */
+        ENRICH,
+        /** Delivers the event to its destination */
+        SINK
+    }
+
+    Stage getStage();
+
+    /**
+     * Checks whether this handler applies to an event type. Called once per type; the result is cached.
+     */
+    default boolean supports(String moduleName, String eventName) {
+        return true;
+    }
+
+    /**
+     * Handles an event
+     *
+     * @return false to skip the remaining handlers for this event
+     * @throws Exception to skip the remaining handlers; the failure is logged and counted
+     */
+    boolean handle(EventContext context) throws Exception;
+}
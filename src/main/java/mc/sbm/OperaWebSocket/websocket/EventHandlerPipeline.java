@@ -0,0 +1,196 @@
+package mc.sbm.OperaWebSocket.websocket;
+
+import jakarta.annotation.PreDestroy;
+import mc.sbm.OperaWebSocket.config.OracleHospitalityConfig;
+import mc.sbm.OperaWebSocket.service.StreamingMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Dispatches received events to the registered {@link EventHandler} beans.
+ * <p>
+ * The handlers of an event type are resolved once and cached in a two-level map, like topic
+ * routes, so event types without handlers cost two map lookups and are never queued. Matching
+ * events run on a set of single-threaded stripes chosen by entity (primary key, else hotel, else
+ * chain): events of one entity are handled in order, different entities in parallel. Stripe
+ * queues are bounded; when one is full the processing thread waits, which backs up into the
+ * ingest queue rather than the WebSocket.
+ */
+@Component
+public class EventHandlerPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(EventHandlerPipeline.class);
+    private static final EventHandler[] NO_HANDLERS = new EventHandler[0];
+
+    private final List<EventHandler> handlers;
+    private final StreamingMetrics metrics;
+    private final Map<String, Map<String, EventHandler[]>> handlersByType = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor[] stripes;
+
+    public EventHandlerPipeline(ObjectProvider<EventHandler> handlerProvider, OracleHospitalityConfig config,
+                                StreamingMetrics metrics) {
+        // orderedStream applies @Order; the stable sort keeps it within each stage
+        this.handlers = handlerProvider.orderedStream()
+                .sorted(Comparator.comparing(EventHandler::getStage))
+                .collect(Collectors.toList());
+        this.metrics = metrics;
+
+        if (handlers.isEmpty()) {
+            this.stripes = new ThreadPoolExecutor[0];
+            logger.info("No event handlers registered");
+            return;
+        }
+
+        OracleHospitalityConfig.HandlerConfig handlerConfig = config.getHandlers();
+        int threads = handlerConfig.getThreads() > 0
+                ? handlerConfig.getThreads()
+                : Runtime.getRuntime().availableProcessors();
+        this.stripes = new ThreadPoolExecutor[threads];
+        for (int i = 0; i < threads; i++) {
+            String threadName = "ohip-handler-" + i;
+            stripes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(handlerConfig.getQueueCapacity()),
+                    r -> {
+                        Thread thread = new Thread(r, threadName);
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    EventHandlerPipeline::waitForSpace);
+        }
+        metrics.bindEventHandlers(this);
+        logger.info("Event handler pipeline started - Handlers: {}, Threads: {}, Queue capacity per thread: {}",
+                handlers.stream().map(handler -> handler.getStage() + ":" + handler.getClass().getSimpleName())
+                        .collect(Collectors.toList()),
+                threads, handlerConfig.getQueueCapacity());
+    }
+
+    private static void waitForSpace(Runnable task, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Event handler pipeline is shut down");
+        }
+        try {
+            executor.getQueue().put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for handler queue space", e);
+        }
+    }
+
+    /**
+     * Queues an event for its handlers, if it has any
+     *
+     * @param chainCode chain the event was received for
+     * @param envelope the event; its payload is detached from pooled buffers before it is queued
+     */
+    public void dispatch(String chainCode, OracleEventEnvelope envelope) {
+        EventHandler[] matching = handlersFor(envelope.getModuleName(), envelope.getEventName());
+        if (matching.length == 0) {
+            return;
+        }
+        // The message buffers are released once processing returns; the flattened copy outlives them
+        envelope.getRawPayload();
+        EventContext context = new EventContext(chainCode, envelope);
+        stripes[stripe(chainCode, envelope)].execute(() -> run(matching, context));
+    }
+
+    private EventHandler[] handlersFor(String moduleName, String eventName) {
+        Map<String, EventHandler[]> events = handlersByType.get(moduleName);
+        if (events != null) {
+            EventHandler[] matching = events.get(eventName);
+            if (matching != null) {
+                return matching;
+            }
+        }
+        return handlersByType.computeIfAbsent(moduleName, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(eventName, key -> resolve(moduleName, eventName));
+    }
+
+    private EventHandler[] resolve(String moduleName, String eventName) {
+        List<EventHandler> matching = new ArrayList<>();
+        for (EventHandler handler : handlers) {
+            if (handler.supports(moduleName, eventName)) {
+                matching.add(handler);
+            }
+        }
+        return matching.isEmpty() ? NO_HANDLERS : matching.toArray(NO_HANDLERS);
+    }
+
+    private int stripe(String chainCode, OracleEventEnvelope envelope) {
+        String entity = envelope.getPrimaryKey() != null ? envelope.getPrimaryKey()
+                : envelope.getHotelId() != null ? envelope.getHotelId()
+                : chainCode;
+        return Math.floorMod(entity.hashCode(), stripes.length);
+    }
+
+    private void run(EventHandler[] matching, EventContext context) {
+        for (EventHandler handler : matching) {
+            String name = handler.getClass().getSimpleName();
+            long start = System.nanoTime();
+            boolean proceed;
+            try {
+                proceed = handler.handle(context);
+            } catch (Exception e) {
+                metrics.recordEventHandler(name, System.nanoTime() - start, false);
+                logger.error("Event handler {} failed for {}/{} at offset {} of chain {}", name,
+                        context.getModuleName(), context.getEventName(), context.getOffset(),
+                        context.getChainCode(), e);
+                return;
+            }
+            metrics.recordEventHandler(name, System.nanoTime() - start, true);
+            if (!proceed) {
+                logger.debug("Event {}/{} at offset {} stopped by {}", context.getModuleName(),
+                        context.getEventName(), context.getOffset(), name);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of events waiting for their handlers
+     */
+    public int getQueuedCount() {
+        int queued = 0;
+        for (ThreadPoolExecutor stripe : stripes) {
+            queued += stripe.getQueue().size();
+        }
+        return queued;
+    }
+
+    public int getHandlerCount() {
+        return handlers.size();
+    }
+
+    /**
+     * Lets queued events finish before shutting down
+     */
+    @PreDestroy
+    public void shutdown() {
+        for (ExecutorService stripe : stripes) {
+            stripe.shutdown();
+        }
+        for (ExecutorService stripe : stripes) {
+            try {
+                if (!stripe.awaitTermination(10, TimeUnit.SECONDS)) {
+                    stripe.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                stripe.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
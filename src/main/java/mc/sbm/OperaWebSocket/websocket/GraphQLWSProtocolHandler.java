@@ -3,6 +3,7 @@ package mc.sbm.OperaWebSocket.websocket;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -11,9 +12,21 @@ import java.util.UUID;
 public class GraphQLWSProtocolHandler {
 
     private final String sessionId;
+    private final List<String> subscriptionFields;
 
     public GraphQLWSProtocolHandler() {
+        this(SubscriptionQueryBuilder.DEFAULT_FIELDS);
+    }
+
+    /**
+     * @param subscriptionFields field paths selected from each newEvent
+     * @throws IllegalArgumentException if a field path is invalid
+     */
+    public GraphQLWSProtocolHandler(List<String> subscriptionFields) {
         this.sessionId = UUID.randomUUID().toString();
+        // Validated up front so a bad selection fails at startup rather than on subscribe
+        new SubscriptionQueryBuilder().select(subscriptionFields);
+        this.subscriptionFields = List.copyOf(subscriptionFields);
     }
 
     public String getSessionId() {
@@ -31,22 +44,47 @@ public class GraphQLWSProtocolHandler {
     }
 
     /**
-     * Creates subscription message
+     * Creates subscription message resuming from the given stream offset
      */
-    public String createSubscriptionMessage(String chainCode) {
-        String subscriptionQuery = String.format(
-                "subscription { newEvent(input: { chainCode: \\\"%s\\\" offset: \\\"0\\\"}) { " +
-                        "metadata { offset } moduleName eventName detail { oldValue newValue elementName } } }",
-                chainCode
-        );
+    public String createSubscriptionMessage(String chainCode, long offset) {
+        return createSubscriptionMessage(chainCode, offset, null);
+    }
+
+    /**
+     * Creates subscription message resuming from the given stream offset, limited to one hotel
+     *
+     * @param hotelCode hotel whose events are streamed, or null for the whole chain
+     */
+    public String createSubscriptionMessage(String chainCode, long offset, String hotelCode) {
+        String subscriptionQuery = new SubscriptionQueryBuilder()
+                .select(subscriptionFields)
+                .chainCode(chainCode)
+                .hotelCode(hotelCode)
+                .offset(offset)
+                .build();
 
         return String.format(
                 "{\"id\":\"%s\",\"type\":\"subscribe\",\"payload\":{\"variables\":{},\"extensions\":{}," +
                         "\"operationName\":null,\"query\":\"%s\"}}",
-                sessionId, subscriptionQuery
+                sessionId, jsonEscape(subscriptionQuery)
         );
     }
 
+    private static String jsonEscape(String value) {
+        StringBuilder escaped = new StringBuilder(value.length() + 16);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                escaped.append('\\').append(c);
+            } else if (c < 0x20) {
+                escaped.append(String.format("\\u%04x", (int) c));
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
     /**
      * Creates ping message
      */
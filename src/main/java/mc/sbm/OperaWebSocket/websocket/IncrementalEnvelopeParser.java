@@ -0,0 +1,183 @@
+package mc.sbm.OperaWebSocket.websocket;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * Reads envelope routing fields from a message while its fragments are still arriving.
+ * <p>
+ * Bytes are pushed into Jackson's non-blocking parser as each fragment is assembled, so
+ * {@code type}, {@code moduleName}, {@code eventName}, {@code hotelId}, {@code primaryKey} and
+ * {@code metadata.offset} are known before the last fragment. Once every field is resolved (OPERA sends {@code detail} last)
+ * the rest of the message is no longer tokenized. Not thread-safe; owned by one assembler.
+ */
+public class IncrementalEnvelopeParser {
+
+    private static final Logger logger = LoggerFactory.getLogger(IncrementalEnvelopeParser.class);
+
+    // payload(2).data(3).newEvent(4).metadata(5) is the deepest path we read
+    private static final int TRACKED_DEPTH = 5;
+
+    private final JsonFactory jsonFactory;
+    private final String[] names = new String[TRACKED_DEPTH + 1];
+    private final boolean[] objects = new boolean[TRACKED_DEPTH + 1];
+
+    private JsonParser parser;
+    private EnvelopeFields fields;
+    private int depth;
+    private long bytesFed;
+    private long parseNanos;
+    private boolean finished;
+    private boolean failed;
+
+    IncrementalEnvelopeParser(JsonFactory jsonFactory) {
+        this.jsonFactory = jsonFactory;
+    }
+
+    /**
+     * Feeds the next chunk of message bytes and reads every token it completes
+     */
+    public void feed(byte[] buffer, int offset, int length) {
+        if (length == 0 || finished || failed) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            if (parser == null) {
+                parser = jsonFactory.createNonBlockingByteArrayParser();
+                fields = new EnvelopeFields();
+            }
+            ((ByteArrayFeeder) parser.getNonBlockingInputFeeder()).feedInput(buffer, offset, offset + length);
+            bytesFed += length;
+
+            JsonToken token;
+            while (!finished && (token = parser.nextToken()) != JsonToken.NOT_AVAILABLE) {
+                if (token == null) {
+                    finished = true;
+                } else {
+                    onToken(token);
+                }
+            }
+            if (finished && fields.isResolved()) {
+                logger.debug("Envelope resolved after {} bytes (type={}, event={}/{})",
+                        bytesFed, fields.type, fields.moduleName, fields.eventName);
+            }
+        } catch (IOException e) {
+            logger.debug("Incremental envelope parsing abandoned after {} bytes: {}", bytesFed, e.getMessage());
+            failed = true;
+        } finally {
+            parseNanos += System.nanoTime() - start;
+        }
+    }
+
+    private void onToken(JsonToken token) throws IOException {
+        switch (token) {
+            case FIELD_NAME:
+                if (depth <= TRACKED_DEPTH) {
+                    names[depth] = parser.currentName();
+                }
+                break;
+            case START_OBJECT:
+            case START_ARRAY:
+                onValue(token);
+                depth++;
+                if (depth <= TRACKED_DEPTH) {
+                    objects[depth] = token == JsonToken.START_OBJECT;
+                    names[depth] = null;
+                }
+                break;
+            case END_OBJECT:
+            case END_ARRAY:
+                depth--;
+                if (depth == 0) {
+                    finished = true;
+                }
+                break;
+            default:
+                onValue(token);
+        }
+    }
+
+    private void onValue(JsonToken value) throws IOException {
+        if (depth == 0) {
+            if (value != JsonToken.START_OBJECT) {
+                throw new IOException("Message is not a JSON object");
+            }
+            return;
+        }
+        if (depth == 1) {
+            if ("type".equals(names[1]) && value == JsonToken.VALUE_STRING) {
+                fields.type = parser.getText();
+            }
+        } else if (depth == 4 && inNewEvent()) {
+            String field = names[4];
+            if ("moduleName".equals(field)) {
+                fields.moduleName = EnvelopeExtractor.scalarValue(parser, value);
+            } else if ("eventName".equals(field)) {
+                fields.eventName = EnvelopeExtractor.scalarValue(parser, value);
+            } else if ("hotelId".equals(field)) {
+                fields.hotelId = EnvelopeExtractor.scalarValue(parser, value);
+            } else if ("primaryKey".equals(field)) {
+                fields.primaryKey = EnvelopeExtractor.scalarValue(parser, value);
+            } else if ("detail".equals(field)) {
+                fields.detailSeen = true;
+                fields.hasDetail = value != JsonToken.VALUE_NULL;
+            }
+        } else if (depth == 5 && inNewEvent() && objects[5] && "metadata".equals(names[4])
+                && "offset".equals(names[5])) {
+            fields.offsetSeen = true;
+            fields.offset = EnvelopeExtractor.offsetValue(parser, value);
+        }
+
+        if (fields.isResolved()) {
+            finished = true;
+        }
+    }
+
+    private boolean inNewEvent() {
+        return objects[2] && objects[3] && objects[4]
+                && "payload".equals(names[1]) && "data".equals(names[2]) && "newEvent".equals(names[3]);
+    }
+
+    /**
+     * Gets the fields read so far, if they describe the whole message
+     *
+     * @return the fields, or null if the message must be re-parsed once complete
+     */
+    EnvelopeFields result() {
+        return finished && !failed ? fields : null;
+    }
+
+    /**
+     * Gets the time spent parsing the current message so far
+     */
+    long getParseNanos() {
+        return parseNanos;
+    }
+
+    /**
+     * Releases the parser so the next message starts from a clean state
+     */
+    public void reset() {
+        if (parser != null) {
+            try {
+                parser.close();
+            } catch (IOException e) {
+                logger.debug("Failed to close incremental parser", e);
+            }
+        }
+        parser = null;
+        fields = null;
+        depth = 0;
+        bytesFed = 0;
+        parseNanos = 0;
+        finished = false;
+        failed = false;
+    }
+}
@@ -0,0 +1,88 @@
+package mc.sbm.OperaWebSocket.websocket;
+
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Chooses the Kafka record key of an event.
+ * <p>
+ * Kafka keeps records with the same key in one partition and in order, so the key decides both
+ * how far consumers can scale out and which events stay ordered relative to each other. When the
+ * configured field is missing from an event, the key falls back to the hotel and then to the
+ * chain, never to a null key that would scatter an entity's events over partitions.
+ */
+public class KafkaKeyExtractor {
+
+    public enum Strategy {
+        /** GraphQL-WS session ID of the connection; one partition per topic, total order */
+        SESSION,
+        /** Chain code; one partition per chain and topic */
+        CHAIN,
+        /** newEvent.hotelId; events of a hotel stay ordered */
+        HOTEL,
+        /** newEvent.primaryKey, e.g. the reservation or profile ID; events of an entity stay ordered */
+        ENTITY,
+        /** JSON Pointer evaluated on the newEvent node. Requires the full message tree */
+        JSON_POINTER
+    }
+
+    private final Strategy strategy;
+    private final JsonPointer pointer;
+
+    /**
+     * @param jsonPointer expression such as {@code /detail/0/newValue}, used by {@link Strategy#JSON_POINTER}
+     * @throws IllegalArgumentException if the strategy needs an expression that is missing or invalid
+     */
+    public KafkaKeyExtractor(Strategy strategy, String jsonPointer) {
+        this.strategy = strategy;
+        if (strategy == Strategy.JSON_POINTER) {
+            if (jsonPointer == null || jsonPointer.isEmpty()) {
+                throw new IllegalArgumentException("Kafka key strategy JSON_POINTER requires a json-pointer expression");
+            }
+            this.pointer = JsonPointer.compile(jsonPointer);
+        } else {
+            this.pointer = null;
+        }
+    }
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * Gets the record key of an event
+     *
+     * @param envelope the event
+     * @param sessionId GraphQL-WS session ID of the connection the event arrived on
+     * @param chainCode chain the event was received for
+     */
+    public String extract(OracleEventEnvelope envelope, String sessionId, String chainCode) {
+        String key;
+        switch (strategy) {
+            case SESSION:
+                return sessionId;
+            case CHAIN:
+                return chainCode;
+            case HOTEL:
+                key = envelope.getHotelId();
+                break;
+            case ENTITY:
+                key = envelope.getPrimaryKey();
+                break;
+            case JSON_POINTER:
+                key = pointerValue(envelope);
+                break;
+            default:
+                throw new IllegalStateException("Unsupported key strategy " + strategy);
+        }
+        if (key != null && !key.isEmpty()) {
+            return key;
+        }
+        return envelope.getHotelId() != null ? envelope.getHotelId() : chainCode;
+    }
+
+    private String pointerValue(OracleEventEnvelope envelope) {
+        JsonNode value = envelope.getNewEvent().at(pointer);
+        return value.isValueNode() && !value.isNull() ? value.asText() : null;
+    }
+}
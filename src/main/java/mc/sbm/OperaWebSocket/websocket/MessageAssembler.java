@@ -3,61 +3,234 @@ package mc.sbm.OperaWebSocket.websocket;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
 /**
- * Handles message fragmentation and reassembly for large WebSocket payloads
+ * Handles message fragmentation and reassembly for large WebSocket payloads.
+ * <p>
+ * Fragments are accumulated as UTF-8 bytes in fixed-size segments borrowed from a
+ * {@link BufferPool}: text fragments are encoded straight into the segments and binary fragments
+ * are copied as-is. The complete message is handed over as an {@link AssembledMessage} that owns
+ * the segments, so nothing is copied at assembly time and buffers are recycled across messages.
+ * A message that fits in one segment and is no larger than the compact threshold is copied into
+ * an exact-size array instead and its segment is returned at once, so small queued messages do
+ * not each pin a whole segment. Every message is copied that way while the pool's in-use limit
+ * is reached.
+ * Each chunk written to a segment is also fed to an {@link IncrementalEnvelopeParser}, so the
+ * envelope is usually known before the last fragment arrives.
  */
 public class MessageAssembler {
 
     private static final Logger logger = LoggerFactory.getLogger(MessageAssembler.class);
     private static final int MAX_MESSAGE_BUFFER_SIZE = 50 * 1024 * 1024; // 50MB limit
 
-    private final StringBuilder messageBuffer = new StringBuilder();
+    private final BufferPool bufferPool;
+    private final IncrementalEnvelopeParser envelopeParser;
+    private final int compactThreshold;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private byte[][] segments = new byte[8][];
+    private int[] segmentLengths = new int[8];
+    private int segmentCount;
+    private int size;
+    private int fragments;
+    private long firstFragmentNanos;
+    private String pendingHighSurrogate = "";
+
+    public MessageAssembler(BufferPool bufferPool, IncrementalEnvelopeParser envelopeParser) {
+        this(bufferPool, envelopeParser, 0);
+    }
 
     /**
-     * Appends a message fragment to the buffer
+     * @param compactThreshold size in bytes up to which a single-segment message is copied out of
+     *                         its segment
+     */
+    public MessageAssembler(BufferPool bufferPool, IncrementalEnvelopeParser envelopeParser, int compactThreshold) {
+        this.bufferPool = bufferPool;
+        this.envelopeParser = envelopeParser;
+        this.compactThreshold = compactThreshold;
+    }
+
+    /**
+     * Appends a text fragment to the buffer, encoding it as UTF-8
      *
      * @param fragment the message fragment
      * @throws IllegalStateException if buffer size exceeds maximum
      */
     public synchronized void appendFragment(String fragment) {
-        if (messageBuffer.length() + fragment.length() > MAX_MESSAGE_BUFFER_SIZE) {
+        // A surrogate pair split across fragments is carried over to the next one
+        startFragment();
+        CharBuffer input = pendingHighSurrogate.isEmpty()
+                ? CharBuffer.wrap(fragment)
+                : CharBuffer.wrap(pendingHighSurrogate + fragment);
+
+        // Every char encodes to at least one byte
+        checkLimit(size + input.remaining());
+        encode(input, false);
+        pendingHighSurrogate = input.hasRemaining() ? input.toString() : "";
+        fragments++;
+        logger.debug("Appended text fragment ({} chars), total buffer size: {} bytes", fragment.length(), size);
+    }
+
+    /**
+     * Appends a binary fragment to the buffer
+     *
+     * @param fragment the message fragment
+     * @throws IllegalStateException if buffer size exceeds maximum
+     */
+    public synchronized void appendFragment(ByteBuffer fragment) {
+        int length = fragment.remaining();
+        startFragment();
+        checkLimit(size + length);
+        while (fragment.hasRemaining()) {
+            int last = currentSegment();
+            int count = Math.min(fragment.remaining(), segments[last].length - segmentLengths[last]);
+            fragment.get(segments[last], segmentLengths[last], count);
+            envelopeParser.feed(segments[last], segmentLengths[last], count);
+            segmentLengths[last] += count;
+            size += count;
+        }
+        fragments++;
+        logger.debug("Appended binary fragment ({} bytes), total buffer size: {} bytes", length, size);
+    }
+
+    private void startFragment() {
+        if (fragments == 0) {
+            firstFragmentNanos = System.nanoTime();
+        }
+    }
+
+    private void encode(CharBuffer input, boolean endOfInput) {
+        while (true) {
+            int last = currentSegment();
+            byte[] segment = segments[last];
+            ByteBuffer out = ByteBuffer.wrap(segment, segmentLengths[last], segment.length - segmentLengths[last]);
+            CoderResult result = encoder.encode(input, out, endOfInput);
+            int written = out.position() - segmentLengths[last];
+            envelopeParser.feed(segment, segmentLengths[last], written);
+            size += written;
+            segmentLengths[last] = out.position();
+            checkLimit(size);
+            if (!result.isOverflow()) {
+                return;
+            }
+            // The next character does not fit in the tail of this segment
+            addSegment();
+        }
+    }
+
+    /**
+     * Gets the index of the segment to write to, adding one if the last segment is full
+     */
+    private int currentSegment() {
+        if (segmentCount == 0 || segmentLengths[segmentCount - 1] == segments[segmentCount - 1].length) {
+            addSegment();
+        }
+        return segmentCount - 1;
+    }
+
+    private void addSegment() {
+        if (segmentCount == segments.length) {
+            segments = Arrays.copyOf(segments, segmentCount * 2);
+            segmentLengths = Arrays.copyOf(segmentLengths, segmentCount * 2);
+        }
+        segments[segmentCount] = bufferPool.acquire();
+        segmentLengths[segmentCount] = 0;
+        segmentCount++;
+    }
+
+    private void checkLimit(long required) {
+        if (required > MAX_MESSAGE_BUFFER_SIZE) {
             clear();
             throw new IllegalStateException("Message buffer size exceeded maximum limit");
         }
-        messageBuffer.append(fragment);
-        logger.debug("Appended fragment ({} bytes), total buffer size: {} bytes",
-                fragment.length(), messageBuffer.length());
     }
 
     /**
-     * Gets the complete assembled message and clears the buffer
+     * Gets the complete assembled message and resets the assembler.
+     * Ownership of the segments moves to the returned message.
      *
-     * @return the complete message
+     * @return the complete message as UTF-8 bytes
      */
-    public synchronized String getCompleteMessage() {
-        String completeMessage = messageBuffer.toString();
-        messageBuffer.setLength(0);
-        logger.debug("Assembled complete message ({} bytes)", completeMessage.length());
+    public synchronized AssembledMessage getCompleteMessage() {
+        if (!pendingHighSurrogate.isEmpty()) {
+            // Dangling high surrogate at end of message: let the encoder emit its replacement
+            encode(CharBuffer.wrap(pendingHighSurrogate), true);
+        }
+        encoder.reset();
+
+        AssembledMessage completeMessage;
+        if ((segmentCount <= 1 && size <= compactThreshold) || bufferPool.isInUseLimitReached()) {
+            completeMessage = AssembledMessage.wrap(copySegments(), 0);
+        } else {
+            completeMessage = new AssembledMessage(
+                    Arrays.copyOf(segments, segmentCount),
+                    Arrays.copyOf(segmentLengths, segmentCount),
+                    size,
+                    bufferPool
+            );
+        }
+        completeMessage.setEnvelopeFields(envelopeParser.result());
+        completeMessage.setAssemblyStats(fragments, firstFragmentNanos, System.nanoTime() - firstFragmentNanos,
+                envelopeParser.getParseNanos());
+        logger.debug("Assembled complete message from {} fragments ({} bytes in {} segments)",
+                fragments, size, segmentCount);
+        reset();
         return completeMessage;
     }
 
+    /**
+     * Copies the message into an exact-size array and returns the segments to the pool
+     */
+    private byte[] copySegments() {
+        byte[] bytes = new byte[size];
+        int position = 0;
+        for (int i = 0; i < segmentCount; i++) {
+            System.arraycopy(segments[i], 0, bytes, position, segmentLengths[i]);
+            position += segmentLengths[i];
+            bufferPool.release(segments[i]);
+        }
+        return bytes;
+    }
+
     /**
      * Checks if buffer contains any fragments
      *
      * @return true if buffer has data
      */
     public synchronized boolean hasFragments() {
-        return messageBuffer.length() > 0;
+        return fragments > 0;
     }
 
     /**
-     * Clears the message buffer
+     * Clears the message buffer and returns its segments to the pool
      */
     public synchronized void clear() {
-        if (messageBuffer.length() > 0) {
-            logger.warn("Clearing message buffer ({} bytes lost)", messageBuffer.length());
-            messageBuffer.setLength(0);
+        if (size > 0) {
+            logger.warn("Clearing message buffer ({} bytes lost)", size);
+        }
+        for (int i = 0; i < segmentCount; i++) {
+            bufferPool.release(segments[i]);
         }
+        encoder.reset();
+        reset();
+    }
+
+    private void reset() {
+        envelopeParser.reset();
+        Arrays.fill(segments, 0, segmentCount, null);
+        segmentCount = 0;
+        size = 0;
+        fragments = 0;
+        pendingHighSurrogate = "";
     }
 
     /**
@@ -66,6 +239,6 @@ public class MessageAssembler {
      * @return buffer size in bytes
      */
     public synchronized int getBufferSize() {
-        return messageBuffer.length();
+        return size;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,361 @@
+package mc.sbm.OperaWebSocket.websocket;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Bounded hand-off between the WebSocket receive thread and message processing.
+ * <p>
+ * The receive thread only enqueues complete messages; a drain task on the processing
+ * executor consumes them in arrival order. At most one drain task runs per queue, so
+ * ordering is preserved even when the executor is shared.
+ */
+public class MessageIngestQueue {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageIngestQueue.class);
+    private static final int MAX_MESSAGES_PER_DRAIN = 256;
+    private static final int DROP_LOG_INTERVAL = 1000;
+    private static final long SPILL_FULL_WAIT_MILLIS = 100;
+
+    /**
+     * What to do when the in-memory queue is full
+     */
+    public enum BackpressurePolicy {
+        /** Block the receive thread until space is available */
+        BLOCK,
+        /** Discard the oldest queued message to make room */
+        DROP_OLDEST,
+        /**
+         * Overflow to a local file, drained in order once the queue catches up. Blocks like
+         * {@link #BLOCK} while the file is at its maximum size.
+         */
+        SPILL_TO_DISK
+    }
+
+    private final String name;
+    private final int capacity;
+    private final BackpressurePolicy policy;
+    private final BlockingQueue<AssembledMessage> queue;
+    private final DiskSpillBuffer spillBuffer;
+    private final Object spillLock = new Object();
+    private final Executor executor;
+    private final Consumer<AssembledMessage> handler;
+    private final Consumer<Exception> errorHandler;
+
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    private final AtomicInteger highWaterMark = new AtomicInteger();
+    private final Object idleLock = new Object();
+    private CompletableFuture<Void> idle;
+    private volatile boolean running = true;
+
+    public MessageIngestQueue(String name, int capacity, BackpressurePolicy policy, Path spillDirectory,
+                              long spillMaxBytes, Executor executor, Consumer<AssembledMessage> handler,
+                              Consumer<Exception> errorHandler) {
+        this.name = name;
+        this.capacity = capacity;
+        this.policy = policy;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.spillBuffer = policy == BackpressurePolicy.SPILL_TO_DISK
+                ? new DiskSpillBuffer(spillDirectory.resolve(name + ".spill"), spillMaxBytes)
+                : null;
+        this.executor = executor;
+        this.handler = handler;
+        this.errorHandler = errorHandler;
+        logger.info("Ingest queue '{}' created - Capacity: {}, Backpressure policy: {}", name, capacity, policy);
+    }
+
+    /**
+     * Hands a complete message over to the processing stage
+     *
+     * @param message the complete message; the queue takes ownership of its buffers
+     * @return false if the message was rejected because the queue is shut down or the thread was interrupted
+     */
+    public boolean offer(AssembledMessage message) {
+        if (!running) {
+            logger.warn("Ingest queue '{}' is shut down, discarding message ({} bytes)", name, message.length());
+            dropped.incrementAndGet();
+            message.release();
+            return false;
+        }
+
+        try {
+            switch (policy) {
+                case BLOCK:
+                    queue.put(message);
+                    break;
+                case DROP_OLDEST:
+                    while (!queue.offer(message)) {
+                        AssembledMessage oldest = queue.poll();
+                        if (oldest != null) {
+                            oldest.release();
+                            long total = dropped.incrementAndGet();
+                            if (total % DROP_LOG_INTERVAL == 1) {
+                                logger.warn("Ingest queue '{}' full, dropped oldest message ({} dropped so far)",
+                                        name, total);
+                            }
+                        }
+                    }
+                    break;
+                case SPILL_TO_DISK:
+                    if (!offerOrSpill(message)) {
+                        dropped.incrementAndGet();
+                        message.release();
+                        return false;
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("Unsupported backpressure policy: " + policy);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            dropped.incrementAndGet();
+            message.release();
+            return false;
+        } catch (IOException e) {
+            logger.error("Failed to spill message to disk on ingest queue '{}'", name, e);
+            dropped.incrementAndGet();
+            message.release();
+            return false;
+        }
+
+        enqueued.incrementAndGet();
+        highWaterMark.accumulateAndGet(queue.size(), Math::max);
+        scheduleDrain();
+        return true;
+    }
+
+    /**
+     * @return false if the queue was shut down while waiting for room
+     */
+    private boolean offerOrSpill(AssembledMessage message) throws IOException, InterruptedException {
+        boolean blocked = false;
+        synchronized (spillLock) {
+            while (true) {
+                if (!running) {
+                    return false;
+                }
+                // Once spilling has started, keep spilling until the file is drained to preserve ordering
+                if (spillBuffer.isEmpty() && queue.offer(message)) {
+                    return true;
+                }
+                if (spillBuffer.hasRoomFor(message.length())) {
+                    break;
+                }
+                if (!blocked) {
+                    logger.warn("Ingest queue '{}' spill full ({} bytes), blocking until it drains",
+                            name, spillBuffer.getSizeBytes());
+                    blocked = true;
+                }
+                spillLock.wait(SPILL_FULL_WAIT_MILLIS);
+            }
+            if (spillBuffer.isEmpty()) {
+                logger.warn("Ingest queue '{}' full ({} messages), spilling to disk", name, capacity);
+            }
+            // Flattening releases the pooled segments; the spilled copy lives on disk only
+            spillBuffer.append(message.toByteArray(), message.getReceivedAtNanos());
+            spilled.incrementAndGet();
+            return true;
+        }
+    }
+
+    private AssembledMessage next() throws IOException {
+        AssembledMessage message = queue.poll();
+        if (message == null && spillBuffer != null) {
+            synchronized (spillLock) {
+                DiskSpillBuffer.Record spilledMessage = spillBuffer.poll();
+                if (spilledMessage != null) {
+                    message = AssembledMessage.wrap(spilledMessage.getMessage(), spilledMessage.getReceivedAtNanos());
+                    if (spillBuffer.isEmpty()) {
+                        logger.info("Ingest queue '{}' spill drained, back to in-memory buffering", name);
+                        spillLock.notifyAll();
+                    }
+                }
+            }
+        }
+        return message;
+    }
+
+    private void scheduleDrain() {
+        if (running && draining.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                draining.set(false);
+                logger.warn("Processing executor rejected drain task for ingest queue '{}'", name);
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            for (int i = 0; i < MAX_MESSAGES_PER_DRAIN && running; i++) {
+                AssembledMessage message = next();
+                if (message == null) {
+                    break;
+                }
+                process(message);
+            }
+        } catch (IOException e) {
+            logger.error("Failed to read spilled message on ingest queue '{}'", name, e);
+        } finally {
+            draining.set(false);
+        }
+
+        // Yield between batches so queues sharing the executor are served fairly
+        if (getDepth() > 0) {
+            scheduleDrain();
+        } else {
+            signalIfIdle();
+        }
+    }
+
+    /**
+     * Gets a future completed once the queue is empty and no message is being processed. Meant
+     * for a queue that no longer receives messages; a message offered afterwards may or may not
+     * be covered.
+     */
+    public CompletableFuture<Void> whenIdle() {
+        CompletableFuture<Void> waiter;
+        synchronized (idleLock) {
+            if (idle == null) {
+                idle = new CompletableFuture<>();
+            }
+            waiter = idle;
+        }
+        signalIfIdle();
+        return waiter;
+    }
+
+    private void signalIfIdle() {
+        if (draining.get() || getDepth() > 0) {
+            return;
+        }
+        CompletableFuture<Void> waiter;
+        synchronized (idleLock) {
+            waiter = idle;
+            idle = null;
+        }
+        if (waiter != null) {
+            waiter.complete(null);
+        }
+    }
+
+    private void process(AssembledMessage message) {
+        try {
+            handler.accept(message);
+            processed.incrementAndGet();
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            try {
+                errorHandler.accept(e);
+            } catch (Exception handlerError) {
+                logger.error("Error handler failed on ingest queue '{}'", name, handlerError);
+            }
+        } finally {
+            message.release();
+        }
+    }
+
+    /**
+     * Stops accepting messages and releases the spill file. Messages still queued are discarded.
+     */
+    public void shutdown() {
+        running = false;
+        int discarded = 0;
+        for (AssembledMessage message = queue.poll(); message != null; message = queue.poll()) {
+            message.release();
+            discarded++;
+        }
+        if (spillBuffer != null) {
+            synchronized (spillLock) {
+                discarded += spillBuffer.size();
+                spillBuffer.close();
+                spillLock.notifyAll();
+            }
+        }
+        if (discarded > 0) {
+            logger.warn("Ingest queue '{}' shut down with {} unprocessed messages", name, discarded);
+        }
+        signalIfIdle();
+    }
+
+    // Monitoring getters
+    public String getName() {
+        return name;
+    }
+
+    public BackpressurePolicy getPolicy() {
+        return policy;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getMemoryDepth() {
+        return queue.size();
+    }
+
+    public int getSpillDepth() {
+        if (spillBuffer == null) {
+            return 0;
+        }
+        synchronized (spillLock) {
+            return spillBuffer.size();
+        }
+    }
+
+    public long getSpillSizeBytes() {
+        if (spillBuffer == null) {
+            return 0;
+        }
+        synchronized (spillLock) {
+            return spillBuffer.getSizeBytes();
+        }
+    }
+
+    public int getDepth() {
+        return getMemoryDepth() + getSpillDepth();
+    }
+
+    public int getHighWaterMark() {
+        return highWaterMark.get();
+    }
+
+    public long getEnqueuedCount() {
+        return enqueued.get();
+    }
+
+    public long getProcessedCount() {
+        return processed.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getSpilledCount() {
+        return spilled.get();
+    }
+}
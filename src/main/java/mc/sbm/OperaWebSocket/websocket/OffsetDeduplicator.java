@@ -0,0 +1,122 @@
+package mc.sbm.OperaWebSocket.websocket;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers which stream offsets of a chain were already seen, to drop redelivered events.
+ * <p>
+ * Offsets are kept in a sliding bitmap covering the last {@code windowSize} offsets up to the
+ * highest one seen, one bit per offset, so a window of 2^24 offsets takes 2 MB regardless of
+ * traffic. When a higher offset arrives the window slides forward and the bits it passes over are
+ * cleared. Offsets at or below the checkpoint are duplicates by definition; offsets above the
+ * checkpoint that have already left the window cannot be decided and are let through, since
+ * publishing an event twice is preferable to losing it.
+ */
+public class OffsetDeduplicator {
+
+    private final long[] words;
+    private final long windowSize;
+    private final int mask;
+    private long highest = -1;
+
+    private final AtomicLong uniqueCount = new AtomicLong();
+    private final AtomicLong duplicateCount = new AtomicLong();
+
+    /**
+     * @param windowSize number of offsets remembered, rounded up to a power of two of at least 64
+     */
+    public OffsetDeduplicator(int windowSize) {
+        int size = Math.max(64, windowSize <= 1 ? 1 : Integer.highestOneBit(windowSize - 1) << 1);
+        this.windowSize = size;
+        this.mask = size - 1;
+        this.words = new long[size >>> 6];
+    }
+
+    /**
+     * Records an offset and checks whether it was seen before
+     *
+     * @param offset stream offset of the event
+     * @param checkpoint offset up to which every event is known to be published, or a negative value
+     * @return true if the event is new and should be published
+     */
+    public synchronized boolean firstSeen(long offset, long checkpoint) {
+        if (offset <= checkpoint) {
+            duplicateCount.incrementAndGet();
+            return false;
+        }
+        if (offset > highest) {
+            slideTo(offset);
+        } else if (offset <= highest - windowSize) {
+            uniqueCount.incrementAndGet();
+            return true;
+        } else if (isSet(offset)) {
+            duplicateCount.incrementAndGet();
+            return false;
+        }
+        set(offset);
+        uniqueCount.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Forgets an offset whose event was not published, so a redelivery is accepted
+     */
+    public synchronized void forget(long offset) {
+        if (offset <= highest && offset > highest - windowSize) {
+            int index = (int) (offset & mask);
+            words[index >>> 6] &= ~(1L << index);
+        }
+    }
+
+    private void slideTo(long offset) {
+        if (highest < 0 || offset - highest >= windowSize) {
+            Arrays.fill(words, 0L);
+        } else {
+            // Clear the bits of the offsets the window moves over, whole words where possible
+            long next = highest + 1;
+            while (next <= offset) {
+                int index = (int) (next & mask);
+                if ((index & 63) == 0 && offset - next >= 63) {
+                    words[index >>> 6] = 0L;
+                    next += 64;
+                } else {
+                    words[index >>> 6] &= ~(1L << index);
+                    next++;
+                }
+            }
+        }
+        highest = offset;
+    }
+
+    private boolean isSet(long offset) {
+        int index = (int) (offset & mask);
+        return (words[index >>> 6] & (1L << index)) != 0;
+    }
+
+    private void set(long offset) {
+        int index = (int) (offset & mask);
+        words[index >>> 6] |= 1L << index;
+    }
+
+    public long getWindowSize() {
+        return windowSize;
+    }
+
+    public long getUniqueCount() {
+        return uniqueCount.get();
+    }
+
+    public long getDuplicateCount() {
+        return duplicateCount.get();
+    }
+
+    /**
+     * Gets the share of checked events that were duplicates
+     */
+    public double getHitRatio() {
+        long duplicates = duplicateCount.get();
+        long total = duplicates + uniqueCount.get();
+        return total == 0 ? 0.0 : (double) duplicates / total;
+    }
+}
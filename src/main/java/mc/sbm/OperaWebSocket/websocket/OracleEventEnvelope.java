@@ -0,0 +1,145 @@
+package mc.sbm.OperaWebSocket.websocket;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Parsed view of a single GraphQL-WS message.
+ * <p>
+ * Built once per message and shared by the business handler and the Kafka routing step.
+ * Routing fields are extracted up front by {@link EnvelopeExtractor}; the full JSON tree
+ * is only materialized the first time {@link #getRoot()} or {@link #getDetail()} is called,
+ * and the message is only flattened into a single array when {@link #getRawPayload()} is called.
+ */
+public class OracleEventEnvelope {
+
+    public static final long NO_OFFSET = -1L;
+
+    private final String type;
+    private final String moduleName;
+    private final String eventName;
+    private final long offset;
+    private final String hotelId;
+    private final String primaryKey;
+    private final boolean hasDetail;
+    private final AssembledMessage message;
+    private final ObjectMapper objectMapper;
+
+    private JsonNode root;
+
+    OracleEventEnvelope(String type, String moduleName, String eventName, long offset, String hotelId,
+                        String primaryKey, boolean hasDetail, AssembledMessage message, ObjectMapper objectMapper) {
+        this.type = type;
+        this.moduleName = moduleName;
+        this.eventName = eventName;
+        this.offset = offset;
+        this.hotelId = hotelId;
+        this.primaryKey = primaryKey;
+        this.hasDetail = hasDetail;
+        this.message = message;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Checks if this is a "next" message carrying a routable newEvent
+     */
+    public boolean isEvent() {
+        return "next".equals(type) && moduleName != null && eventName != null;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getModuleName() {
+        return moduleName;
+    }
+
+    public String getEventName() {
+        return eventName;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Gets the hotel the event belongs to, or null if the event is chain-wide
+     */
+    public String getHotelId() {
+        return hotelId;
+    }
+
+    /**
+     * Gets the key of the business entity the event is about, e.g. the reservation ID of a
+     * reservation event or the profile ID of a profile event
+     */
+    public String getPrimaryKey() {
+        return primaryKey;
+    }
+
+    /**
+     * Gets the newEvent node, parsing the message tree on first access
+     */
+    public JsonNode getNewEvent() {
+        return getRoot().path("payload").path("data").path("newEvent");
+    }
+
+    public boolean hasOffset() {
+        return offset != NO_OFFSET;
+    }
+
+    public boolean hasDetail() {
+        return hasDetail;
+    }
+
+    /**
+     * Gets the raw UTF-8 message bytes. The first call flattens the assembled segments into one
+     * array; the array is then shared, not copied, and must not be modified.
+     */
+    public byte[] getRawPayload() {
+        return message.toByteArray();
+    }
+
+    public int getPayloadLength() {
+        return message.length();
+    }
+
+    /**
+     * Gets the underlying assembled message
+     */
+    public AssembledMessage getMessage() {
+        return message;
+    }
+
+    /**
+     * Gets the full message tree, parsing it on first access
+     */
+    public synchronized JsonNode getRoot() {
+        if (root == null) {
+            try {
+                root = message.isFlattened()
+                        ? objectMapper.readTree(message.toByteArray())
+                        : objectMapper.readTree(message.inputStream());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to parse message tree", e);
+            }
+        }
+        return root;
+    }
+
+    /**
+     * Gets the newEvent detail node, parsing the message tree on first access
+     *
+     * @return the detail node, or null if absent
+     */
+    public JsonNode getDetail() {
+        if (!hasDetail) {
+            return null;
+        }
+        return getNewEvent().get("detail");
+    }
+}
@@ -2,11 +2,26 @@ package mc.sbm.OperaWebSocket.websocket;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import mc.sbm.OperaWebSocket.config.OracleHospitalityConfig;
+import mc.sbm.OperaWebSocket.service.EventLatencyTracker;
 import mc.sbm.OperaWebSocket.service.KafkaProducerService;
+import mc.sbm.OperaWebSocket.service.KafkaSpillService;
+import mc.sbm.OperaWebSocket.service.OffsetCheckpointService;
+import mc.sbm.OperaWebSocket.service.StreamingMetrics;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeaders;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Processes incoming Oracle Hospitality event messages
  */
@@ -15,46 +30,119 @@ public class OracleEventMessageProcessor {
 
     private static final Logger logger = LoggerFactory.getLogger(OracleEventMessageProcessor.class);
 
-    private final ObjectMapper objectMapper;
+    /** Epoch millis at which the event's first frame was received from OHIP */
+    public static final String RECEIVED_AT_HEADER = "ohip-received-at";
+    /** Millis between OHIP receive and the Kafka send */
+    public static final String INGEST_LATENCY_HEADER = "ohip-ingest-latency-ms";
+
+    private final EnvelopeExtractor envelopeExtractor;
+    private final EventFilter eventFilter;
+    private final Map<String, EventFilter> chainFilters = new HashMap<>();
+    private final boolean singleChain;
+    private final KafkaKeyExtractor keyExtractor;
+    private final TopicRouter topicRouter;
+    private final EventHandlerPipeline handlerPipeline;
     private final KafkaProducerService kafkaProducerService;
+    private final KafkaSpillService spillService;
+    private final OffsetCheckpointService checkpointService;
+    private final StreamingMetrics metrics;
+    private final EventLatencyTracker latencyTracker;
+    private final OracleHospitalityConfig.DedupConfig dedupConfig;
+    private final Map<String, OffsetDeduplicator> deduplicators = new ConcurrentHashMap<>();
 
-    public OracleEventMessageProcessor(ObjectMapper objectMapper, KafkaProducerService kafkaProducerService) {
-        this.objectMapper = objectMapper;
+    public OracleEventMessageProcessor(ObjectMapper objectMapper, OracleHospitalityConfig config,
+                                       TopicRouter topicRouter, EventHandlerPipeline handlerPipeline,
+                                       KafkaProducerService kafkaProducerService,
+                                       KafkaSpillService spillService, OffsetCheckpointService checkpointService, StreamingMetrics metrics,
+                                       EventLatencyTracker latencyTracker) {
+        this.envelopeExtractor = new EnvelopeExtractor(objectMapper);
+        this.eventFilter = new EventFilter(config.getFilter());
+        List<OracleHospitalityConfig.ChainConfig> chains = config.getEffectiveChains();
+        for (OracleHospitalityConfig.ChainConfig chain : chains) {
+            if (chain.getFilter() != null) {
+                chainFilters.put(chain.getChainCode(), new EventFilter(chain.getFilter()));
+            }
+        }
+        this.singleChain = chains.size() == 1;
+        this.keyExtractor = new KafkaKeyExtractor(
+                config.getKafkaKey().getStrategy(), config.getKafkaKey().getJsonPointer());
+        this.topicRouter = topicRouter;
+        this.handlerPipeline = handlerPipeline;
         this.kafkaProducerService = kafkaProducerService;
+        this.spillService = spillService;
+        this.checkpointService = checkpointService;
+        this.metrics = metrics;
+        this.latencyTracker = latencyTracker;
+        this.dedupConfig = config.getDedup();
+    }
+
+    /**
+     * Gets the extractor used to read envelopes, shared with the receive-side assembler
+     */
+    public EnvelopeExtractor getEnvelopeExtractor() {
+        return envelopeExtractor;
+    }
+
+    /**
+     * Gets the event filter of a chain: its own if configured, otherwise the top-level one
+     */
+    public EventFilter getEventFilter(String chainCode) {
+        return chainFilters.getOrDefault(chainCode, eventFilter);
+    }
+
+    /**
+     * Gets the hotel to restrict a chain's subscription to, or null to stream the whole chain.
+     * The top-level filter only restricts the subscription when a single chain is ingested,
+     * since its hotel belongs to one chain and would otherwise be sent to all of them.
+     */
+    public String getSubscriptionHotelCode(String chainCode) {
+        EventFilter filter = chainFilters.get(chainCode);
+        if (filter == null && singleChain) {
+            filter = eventFilter;
+        }
+        return filter != null ? filter.getSubscriptionHotelCode() : null;
     }
 
     /**
-     * Processes a complete message payload
+     * Processes a complete message payload and releases its buffers
+     *
+     * @param payload the complete message as UTF-8 bytes
+     * @param sessionId GraphQL-WS session ID, used as Kafka key by the SESSION key strategy
+     * @param chainCode chain the message was received for, used for offset checkpointing
      */
-    public void processMessage(String payload, String sessionId) {
+    public void processMessage(AssembledMessage payload, String sessionId, String chainCode) {
         try {
-            JsonNode jsonNode = objectMapper.readTree(payload);
+            long parseStart = System.nanoTime();
+            OracleEventEnvelope envelope = envelopeExtractor.extract(payload);
+            metrics.recordParse(payload.getParseNanos() + System.nanoTime() - parseStart);
 
-            JsonNode typeNode = jsonNode.get("type");
-            if (typeNode == null) {
+            String messageType = envelope.getType();
+            if (messageType == null) {
                 logger.warn("Received message without 'type' field. Message length: {} bytes. First 200 chars: {}",
                         payload.length(),
-                        payload.substring(0, Math.min(200, payload.length())));
+                        new String(payload.inputStream().readNBytes(200), StandardCharsets.UTF_8));
                 return;
             }
 
-            String messageType = typeNode.asText();
-
             switch (messageType) {
                 case "connection_ack":
-                    handleConnectionAck(jsonNode);
+                    handleConnectionAck(envelope.getRoot());
                     break;
                 case "next":
-                    handleEventMessage(jsonNode);
-                    sendToKafka(payload, sessionId);
+                    if (isFiltered(envelope, chainCode) || isDuplicate(envelope, chainCode)) {
+                        break;
+                    }
+                    handleEventMessage(envelope, chainCode);
+                    sendToKafka(envelope, sessionId, chainCode);
                     break;
                 case "error":
-                    handleErrorMessage(jsonNode);
+                    handleErrorMessage(envelope.getRoot());
                     break;
                 case "complete":
-                    handleCompleteMessage(jsonNode);
+                    handleCompleteMessage(envelope.getRoot());
                     break;
                 case "pong":
+                    // Round trip already recorded by the session's keep-alive on receipt
                     logger.debug("Pong received - connection alive");
                     break;
                 default:
@@ -64,6 +152,58 @@ public class OracleEventMessageProcessor {
         } catch (Exception e) {
             logger.error("Error processing message", e);
             throw new RuntimeException("Message processing failed", e);
+        } finally {
+            payload.release();
+        }
+    }
+
+    /**
+     * Checks whether an event is excluded by the configured filter. Its offset is checkpointed
+     * right away so a resubscription does not fetch it again.
+     */
+    private boolean isFiltered(OracleEventEnvelope envelope, String chainCode) {
+        if (!envelope.isEvent()
+                || getEventFilter(chainCode).accepts(envelope.getModuleName(), envelope.getEventName(), envelope.getHotelId())) {
+            return false;
+        }
+        metrics.recordFilteredEvent();
+        if (envelope.hasOffset()) {
+            checkpointService.track(chainCode, envelope.getOffset());
+            checkpointService.acknowledge(chainCode, envelope.getOffset());
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether an event's offset was already received, e.g. after a reconnect replayed it
+     */
+    private boolean isDuplicate(OracleEventEnvelope envelope, String chainCode) {
+        if (!dedupConfig.isEnabled() || !envelope.hasOffset()) {
+            return false;
+        }
+        long offset = envelope.getOffset();
+        if (deduplicator(chainCode).firstSeen(offset, checkpointService.getOffset(chainCode))) {
+            return false;
+        }
+        logger.debug("Dropping duplicate event at offset {} for chain {}", offset, chainCode);
+        return true;
+    }
+
+    private OffsetDeduplicator deduplicator(String chainCode) {
+        return deduplicators.computeIfAbsent(chainCode, key -> {
+            OffsetDeduplicator deduplicator = new OffsetDeduplicator(dedupConfig.getWindowSize());
+            metrics.bindDeduplicator(chainCode, deduplicator);
+            return deduplicator;
+        });
+    }
+
+    /**
+     * Records that an event was not published and may be accepted again when redelivered
+     */
+    private void notPublished(String chainCode, long offset) {
+        checkpointService.fail(chainCode, offset);
+        if (dedupConfig.isEnabled()) {
+            deduplicator(chainCode).forget(offset);
         }
     }
 
@@ -75,24 +215,25 @@ public class OracleEventMessageProcessor {
         }
     }
 
-    private void handleEventMessage(JsonNode jsonNode) {
+    private void handleEventMessage(OracleEventEnvelope envelope, String chainCode) {
         try {
-            JsonNode payload = jsonNode.get("payload");
-            JsonNode data = payload.get("data");
-            JsonNode newEvent = data.get("newEvent");
+            if (!envelope.isEvent()) {
+                logger.warn("Event message without newEvent data received");
+                return;
+            }
 
-            String moduleName = newEvent.get("moduleName").asText();
-            String eventName = newEvent.get("eventName").asText();
-            long offset = newEvent.get("metadata").get("offset").asLong();
+            String moduleName = envelope.getModuleName();
+            String eventName = envelope.getEventName();
+            long offset = envelope.getOffset();
 
             logger.info("Event received - Module: {}, Event: {}, Offset: {}",
                     moduleName, eventName, offset);
+            metrics.recordEvent(moduleName, eventName);
 
-            if (newEvent.has("detail")) {
-                JsonNode detail = newEvent.get("detail");
-                logger.debug("Event detail: {}", detail.toString());
-                processBusinessEvent(moduleName, eventName, offset, detail);
+            if (envelope.hasDetail() && logger.isTraceEnabled()) {
+                logger.trace("Event detail: {}", envelope.getDetail());
             }
+            handlerPipeline.dispatch(chainCode, envelope);
 
         } catch (Exception e) {
             logger.error("Error handling event message", e);
@@ -109,50 +250,110 @@ public class OracleEventMessageProcessor {
         logger.info("Stream completed by server");
     }
 
-    /**
-     * Process business events - can be overridden or extended
-     */
-    protected void processBusinessEvent(String moduleName, String eventName, long offset, JsonNode detail) {
-        logger.info("Processing event: {}.{} at offset {}", moduleName, eventName, offset);
-        // Implement custom business logic here
-    }
-
-    private void sendToKafka(String message, String sessionId) {
+    private void sendToKafka(OracleEventEnvelope envelope, String sessionId, String chainCode) {
+        // Set while this method owns a tracked offset or a registered direct send, to release them on failure
+        boolean tracked = false;
+        boolean directSend = false;
+        long offset = envelope.getOffset();
         try {
-            // Parse message to extract moduleName and eventName for dynamic topic
-            JsonNode jsonNode = objectMapper.readTree(message);
-
-            // Check if this is an event message with data
-            if (jsonNode.has("type") && "next".equals(jsonNode.get("type").asText())) {
-                JsonNode payload = jsonNode.get("payload");
-                if (payload != null && payload.has("data")) {
-                    JsonNode data = payload.get("data");
-                    if (data.has("newEvent")) {
-                        JsonNode newEvent = data.get("newEvent");
-                        String moduleName = newEvent.get("moduleName").asText();
-                        String eventName = newEvent.get("eventName").asText();
-
-                        // Replace spaces with underscores for topic name
-                        String sanitizedModuleName = moduleName.replace(" ", "_");
-                        String sanitizedEventName = eventName.replace(" ", "_");
-
-                        // Create dynamic topic name: opera-RESERVATION-CHECK IN
-                        String dynamicTopic = String.format("opera-%s-%s", sanitizedModuleName, sanitizedEventName);
-
-                        kafkaProducerService.sendMessageToTopic(dynamicTopic, sessionId, message);
-                        logger.debug("Message sent to Kafka topic '{}' ({} bytes)", dynamicTopic, message.length());
-                        return;
+            if (envelope.isEvent()) {
+                TopicRouter.Route route = topicRouter.route(envelope.getModuleName(), envelope.getEventName());
+                boolean checkpointed = envelope.hasOffset();
+                if (route.isDropped()) {
+                    metrics.recordDroppedEvent();
+                    if (checkpointed) {
+                        checkpointService.track(chainCode, offset);
+                        checkpointService.acknowledge(chainCode, offset);
                     }
+                    logger.debug("Event {}/{} dropped by routing rules", envelope.getModuleName(), envelope.getEventName());
+                    return;
+                }
+
+                String dynamicTopic = route.getTopic();
+                String key = keyExtractor.extract(envelope, sessionId, chainCode);
+                byte[] message = envelope.getRawPayload();
+                long receivedAtNanos = envelope.getMessage().getReceivedAtNanos();
+                Iterable<Header> headers = latencyHeaders(receivedAtNanos);
+
+                if (checkpointed) {
+                    checkpointService.track(chainCode, offset);
+                    tracked = true;
+                }
+                // Queue behind the events already spilled; see KafkaSpillService for ordering around the switch
+                if (!spillService.beginDirectSend()) {
+                    spill(chainCode, checkpointed, offset, dynamicTopic, key, message, headers);
+                    tracked = false;
+                    return;
                 }
+                directSend = true;
+
+                CompletableFuture<?> send = kafkaProducerService.sendMessageToTopic(dynamicTopic, key, message, headers);
+                // From here on the callback resolves the offset and the direct send
+                tracked = false;
+                directSend = false;
+                send.whenComplete((result, ex) -> {
+                    try {
+                        if (ex == null) {
+                            if (receivedAtNanos != 0) {
+                                latencyTracker.record(dynamicTopic, receivedAtNanos);
+                            }
+                            if (checkpointed) {
+                                checkpointService.acknowledge(chainCode, offset);
+                            }
+                        } else {
+                            spill(chainCode, checkpointed, offset, dynamicTopic, key, message, headers);
+                        }
+                    } finally {
+                        spillService.directSendCompleted();
+                    }
+                });
+                logger.debug("Message sent to Kafka topic '{}' with key '{}' ({} bytes)", dynamicTopic, key, message.length);
+                return;
             }
 
             // Fallback: send to default topic if not an event message
+            byte[] message = envelope.getRawPayload();
             kafkaProducerService.sendMessage(sessionId, message);
-            logger.debug("Message sent to default Kafka topic ({} bytes)", message.length());
+            logger.debug("Message sent to default Kafka topic ({} bytes)", message.length);
 
         } catch (Exception e) {
             logger.error("Failed to send message to Kafka", e);
-            // Don't fail the entire message processing if Kafka is down
+            // Don't fail the entire message processing if Kafka is down, but don't leave the offset pending
+            if (tracked) {
+                notPublished(chainCode, offset);
+            }
+            if (directSend) {
+                spillService.directSendCompleted();
+            }
+        }
+    }
+
+    /**
+     * Hands an event to the Kafka spill; its offset is reported as not published if the spill
+     * cannot keep it
+     */
+    private void spill(String chainCode, boolean checkpointed, long offset, String topic, String key,
+                       byte[] message, Iterable<Header> headers) {
+        long spillOffset = checkpointed ? offset : OffsetCheckpointService.NO_OFFSET;
+        spillService.spill(chainCode, spillOffset, topic, key, message, headers).thenAccept(kept -> {
+            if (!kept && checkpointed) {
+                notPublished(chainCode, offset);
+            }
+        });
+    }
+
+    /**
+     * Builds the headers that let consumers measure latency from OHIP receive time
+     */
+    private static Iterable<Header> latencyHeaders(long receivedAtNanos) {
+        if (receivedAtNanos == 0) {
+            return null;
         }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - receivedAtNanos);
+        long receivedAtMillis = System.currentTimeMillis() - elapsedMillis;
+        RecordHeaders headers = new RecordHeaders();
+        headers.add(RECEIVED_AT_HEADER, Long.toString(receivedAtMillis).getBytes(StandardCharsets.UTF_8));
+        headers.add(INGEST_LATENCY_HEADER, Long.toString(elapsedMillis).getBytes(StandardCharsets.UTF_8));
+        return headers;
     }
-}
\ No newline at end of file
+}
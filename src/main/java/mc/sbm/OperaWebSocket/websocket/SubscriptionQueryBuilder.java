@@ -0,0 +1,175 @@
+package mc.sbm.OperaWebSocket.websocket;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Builds the GraphQL {@code newEvent} subscription query from a configurable selection set.
+ * <p>
+ * Fields are given as dot-separated paths, e.g. {@code detail.newValue}, and rendered as nested
+ * selections. Every path segment must be a valid GraphQL name, and the fields the pipeline relies
+ * on ({@code metadata.offset}, {@code moduleName}, {@code eventName}) are always selected. The
+ * {@code detail} selection is rendered last, since OHIP returns fields in selection order and the
+ * envelope parser stops reading once it reaches {@code detail}. Argument values are escaped as
+ * GraphQL string literals.
+ */
+public class SubscriptionQueryBuilder {
+
+    /** Selection used when none is configured */
+    public static final List<String> DEFAULT_FIELDS = List.of(
+            "metadata.offset", "moduleName", "eventName", "hotelId", "primaryKey",
+            "detail.oldValue", "detail.newValue", "detail.elementName");
+
+    private static final List<String> REQUIRED_FIELDS = List.of("metadata.offset", "moduleName", "eventName");
+    private static final Pattern NAME = Pattern.compile("[_A-Za-z][_0-9A-Za-z]*");
+    private static final String DETAIL = "detail";
+    private static final int MAX_DEPTH = 4;
+
+    private final Map<String, Map<String, ?>> selection = new LinkedHashMap<>();
+    private String chainCode;
+    private String hotelCode;
+    private long offset;
+
+    public SubscriptionQueryBuilder() {
+        select(REQUIRED_FIELDS);
+    }
+
+    /**
+     * Adds fields to the selection
+     *
+     * @param paths dot-separated field paths
+     * @throws IllegalArgumentException if a path is empty, too deep or not made of GraphQL names
+     */
+    public SubscriptionQueryBuilder select(Collection<String> paths) {
+        for (String path : paths) {
+            select(path);
+        }
+        return this;
+    }
+
+    /**
+     * Adds a field to the selection
+     *
+     * @param path dot-separated field path
+     * @throws IllegalArgumentException if the path is empty, too deep or not made of GraphQL names
+     */
+    @SuppressWarnings("unchecked")
+    public SubscriptionQueryBuilder select(String path) {
+        if (path == null || path.trim().isEmpty()) {
+            throw new IllegalArgumentException("Empty field in subscription selection");
+        }
+        String[] segments = path.trim().split("\\.", -1);
+        if (segments.length > MAX_DEPTH) {
+            throw new IllegalArgumentException("Subscription field '" + path + "' is nested deeper than " + MAX_DEPTH);
+        }
+        for (String segment : segments) {
+            if (!NAME.matcher(segment).matches()) {
+                throw new IllegalArgumentException("Invalid subscription field '" + path + "'");
+            }
+        }
+
+        Map<String, Map<String, ?>> level = selection;
+        for (String segment : segments) {
+            Map<String, Map<String, ?>> child = (Map<String, Map<String, ?>>) level.get(segment);
+            if (child == null) {
+                child = new LinkedHashMap<>();
+                level.put(segment, child);
+            }
+            level = child;
+        }
+        return this;
+    }
+
+    public SubscriptionQueryBuilder chainCode(String chainCode) {
+        this.chainCode = chainCode;
+        return this;
+    }
+
+    /**
+     * Restricts the subscription to one hotel; null streams the whole chain
+     */
+    public SubscriptionQueryBuilder hotelCode(String hotelCode) {
+        this.hotelCode = hotelCode;
+        return this;
+    }
+
+    public SubscriptionQueryBuilder offset(long offset) {
+        this.offset = offset;
+        return this;
+    }
+
+    /**
+     * Builds the subscription query
+     *
+     * @throws IllegalStateException if no chain code was set
+     */
+    public String build() {
+        if (chainCode == null || chainCode.isEmpty()) {
+            throw new IllegalStateException("Subscription requires a chain code");
+        }
+        StringBuilder query = new StringBuilder(256);
+        query.append("subscription { newEvent(input: { chainCode: ").append(quote(chainCode));
+        if (hotelCode != null) {
+            query.append(" hotelCode: ").append(quote(hotelCode));
+        }
+        query.append(" offset: ").append(quote(Long.toString(offset))).append("}) ");
+        appendSelection(query, selection, true);
+        return query.append(" }").toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void appendSelection(StringBuilder query, Map<String, Map<String, ?>> fields, boolean topLevel) {
+        List<String> names = new ArrayList<>(fields.keySet());
+        if (topLevel && names.remove(DETAIL)) {
+            names.add(DETAIL);
+        }
+        query.append('{');
+        for (String name : names) {
+            query.append(' ').append(name);
+            Map<String, Map<String, ?>> children = (Map<String, Map<String, ?>>) fields.get(name);
+            if (!children.isEmpty()) {
+                query.append(' ');
+                appendSelection(query, children, false);
+            }
+        }
+        query.append(" }");
+    }
+
+    /**
+     * Quotes a value as a GraphQL string literal
+     */
+    static String quote(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    quoted.append("\\\"");
+                    break;
+                case '\\':
+                    quoted.append("\\\\");
+                    break;
+                case '\n':
+                    quoted.append("\\n");
+                    break;
+                case '\r':
+                    quoted.append("\\r");
+                    break;
+                case '\t':
+                    quoted.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
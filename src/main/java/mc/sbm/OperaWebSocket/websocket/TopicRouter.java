@@ -0,0 +1,173 @@
+package mc.sbm.OperaWebSocket.websocket;
+
+import jakarta.annotation.PostConstruct;
+import mc.sbm.OperaWebSocket.config.OracleHospitalityConfig;
+import mc.sbm.OperaWebSocket.service.KafkaProducerService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Routing table from (moduleName, eventName) to the Kafka topic of an event.
+ * <p>
+ * Routes are resolved once per event type against the configured rules and cached in a two-level
+ * map, so routing a known event is two map lookups with no string building. The first rule whose
+ * module and event match (exactly, or {@code *}) decides the action; events matching no rule use
+ * the default action. Topics of the configured pre-warm events are resolved at startup and their
+ * metadata fetched, so the first event of each does not wait on a metadata request.
+ */
+@Component
+public class TopicRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(TopicRouter.class);
+    private static final String WILDCARD = "*";
+
+    public enum Action {
+        /** {@code <prefix>-<module>-<event>} */
+        EVENT_TOPIC,
+        /** {@code <prefix>-<module>}, collapsing all events of a module */
+        MODULE_TOPIC,
+        /** The default topic {@code oracle.hospitality.kafka.topic} */
+        DEFAULT_TOPIC,
+        /** The topic named by the rule */
+        TOPIC,
+        /** Not published; the offset is still checkpointed */
+        DROP
+    }
+
+    /**
+     * Resolved destination of an event type
+     */
+    public static final class Route {
+
+        private static final Route DROPPED = new Route(null);
+
+        private final String topic;
+
+        private Route(String topic) {
+            this.topic = topic;
+        }
+
+        /**
+         * Gets the topic, or null if the event is dropped
+         */
+        public String getTopic() {
+            return topic;
+        }
+
+        public boolean isDropped() {
+            return topic == null;
+        }
+    }
+
+    private final OracleHospitalityConfig.RoutingConfig config;
+    private final String defaultTopic;
+    private final KafkaProducerService kafkaProducerService;
+    private final Map<String, Map<String, Route>> routes = new ConcurrentHashMap<>();
+
+    public TopicRouter(OracleHospitalityConfig config,
+                       @Value("${oracle.hospitality.kafka.topic}") String defaultTopic,
+                       KafkaProducerService kafkaProducerService) {
+        this.config = config.getRouting();
+        this.defaultTopic = defaultTopic;
+        this.kafkaProducerService = kafkaProducerService;
+
+        for (OracleHospitalityConfig.RouteRule rule : this.config.getRules()) {
+            if (rule.getAction() == Action.TOPIC && (rule.getTopic() == null || rule.getTopic().isEmpty())) {
+                throw new IllegalArgumentException("Routing rule for " + rule.getModule() + "/" + rule.getEvent()
+                        + " has action TOPIC but no topic");
+            }
+        }
+    }
+
+    /**
+     * Resolves the pre-warm events and fetches metadata for their topics
+     */
+    @PostConstruct
+    public void prewarm() {
+        Set<String> topics = new LinkedHashSet<>();
+        for (String entry : config.getPrewarmEvents()) {
+            int separator = entry.indexOf(':');
+            if (separator <= 0 || separator == entry.length() - 1) {
+                logger.warn("Ignoring pre-warm entry '{}'; expected MODULE:EVENT", entry);
+                continue;
+            }
+            Route route = route(entry.substring(0, separator).trim(), entry.substring(separator + 1).trim());
+            if (!route.isDropped()) {
+                topics.add(route.getTopic());
+            }
+        }
+        if (!topics.isEmpty()) {
+            kafkaProducerService.prewarmTopics(topics);
+        }
+    }
+
+    /**
+     * Gets the route of an event type
+     */
+    public Route route(String moduleName, String eventName) {
+        Map<String, Route> events = routes.get(moduleName);
+        if (events != null) {
+            Route route = events.get(eventName);
+            if (route != null) {
+                return route;
+            }
+        }
+        return routes.computeIfAbsent(moduleName, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(eventName, key -> resolve(moduleName, eventName));
+    }
+
+    private Route resolve(String moduleName, String eventName) {
+        Action action = config.getDefaultAction();
+        String ruleTopic = null;
+        for (OracleHospitalityConfig.RouteRule rule : config.getRules()) {
+            if (matches(rule.getModule(), moduleName) && matches(rule.getEvent(), eventName)) {
+                action = rule.getAction();
+                ruleTopic = rule.getTopic();
+                break;
+            }
+        }
+
+        Route route;
+        switch (action) {
+            case EVENT_TOPIC:
+                route = new Route(config.getTopicPrefix() + "-" + sanitize(moduleName) + "-" + sanitize(eventName));
+                break;
+            case MODULE_TOPIC:
+                route = new Route(config.getTopicPrefix() + "-" + sanitize(moduleName));
+                break;
+            case DEFAULT_TOPIC:
+                route = new Route(defaultTopic);
+                break;
+            case TOPIC:
+                route = new Route(ruleTopic);
+                break;
+            default:
+                route = Route.DROPPED;
+        }
+        logger.info("Route for {}/{}: {}", moduleName, eventName, route.isDropped() ? "dropped" : route.getTopic());
+        return route;
+    }
+
+    private static boolean matches(String pattern, String value) {
+        return pattern == null || WILDCARD.equals(pattern) || pattern.equals(value);
+    }
+
+    private static String sanitize(String name) {
+        // Topic names cannot contain spaces
+        return name.replace(" ", "_");
+    }
+
+    /**
+     * Gets the number of cached event types
+     */
+    public int size() {
+        return routes.values().stream().mapToInt(Map::size).sum();
+    }
+}
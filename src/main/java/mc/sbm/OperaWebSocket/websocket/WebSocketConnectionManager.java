@@ -22,7 +22,10 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * Manages WebSocket connection lifecycle and state
+ * Manages WebSocket connection lifecycle and state.
+ * <p>
+ * One instance tracks one session; instances for different chains can share a single
+ * {@link StandardWebSocketClient} (and therefore its container) created by {@link #createClient(int)}.
  */
 @Service
 public class WebSocketConnectionManager {
@@ -36,21 +39,33 @@ public class WebSocketConnectionManager {
     private Instant lastMessageReceived;
 
     public WebSocketConnectionManager() {
-        this.webSocketClient = new StandardWebSocketClient();
+        this(new StandardWebSocketClient());
+    }
+
+    public WebSocketConnectionManager(StandardWebSocketClient webSocketClient) {
+        this.webSocketClient = webSocketClient;
     }
 
     /**
      * Configures WebSocket container with buffer sizes
      */
     public void configureContainer(int maxTextMessageBufferSize) {
+        webSocketClient = createClient(maxTextMessageBufferSize);
+    }
+
+    /**
+     * Creates a WebSocket client on a container configured with buffer sizes, to be shared
+     * by every connection manager
+     */
+    public static StandardWebSocketClient createClient(int maxTextMessageBufferSize) {
         try {
             WebSocketContainer container = ContainerProvider.getWebSocketContainer();
             container.setDefaultMaxTextMessageBufferSize(maxTextMessageBufferSize);
             container.setDefaultMaxBinaryMessageBufferSize(maxTextMessageBufferSize);
             container.setDefaultMaxSessionIdleTimeout(300000); // 5 minutes
 
-            webSocketClient = new StandardWebSocketClient(container);
             logger.info("WebSocket container configured - Max message size: {} bytes", maxTextMessageBufferSize);
+            return new StandardWebSocketClient(container);
         } catch (Exception e) {
             logger.error("Failed to configure WebSocket container", e);
             throw new RuntimeException("Container configuration failed", e);
@@ -61,6 +76,16 @@ public class WebSocketConnectionManager {
      * Configures proxy settings
      */
     public void configureProxy(String proxyHost, int proxyPort) {
+        installProxy(proxyHost, proxyPort);
+        WebSocketContainer container = ContainerProvider.getWebSocketContainer();
+        webSocketClient = new StandardWebSocketClient(container);
+    }
+
+    /**
+     * Routes outgoing connections of the whole JVM through an HTTP proxy. Call before
+     * {@link #createClient(int)} so the shared container picks it up.
+     */
+    public static void installProxy(String proxyHost, int proxyPort) {
         try {
             logger.info("Configuring proxy: {}:{}", proxyHost, proxyPort);
 
@@ -85,9 +110,6 @@ public class WebSocketConnectionManager {
                 }
             });
 
-            WebSocketContainer container = ContainerProvider.getWebSocketContainer();
-            webSocketClient = new StandardWebSocketClient(container);
-
             logger.info("Proxy configuration completed successfully");
         } catch (Exception e) {
             logger.error("Failed to configure proxy", e);
@@ -103,6 +125,18 @@ public class WebSocketConnectionManager {
         }
     }
 
+    /**
+     * Replaces the current session with an already open one, e.g. a promoted hot standby
+     *
+     * @return the replaced session, to be closed by the caller
+     */
+    public WebSocketSession swapSession(WebSocketSession session) {
+        WebSocketSession previous = sessionRef.getAndSet(session);
+        isConnected.set(session.isOpen());
+        lastMessageReceived = Instant.now();
+        return previous;
+    }
+
     public WebSocketSession getSession() {
         return sessionRef.get();
     }
@@ -161,4 +195,22 @@ public class WebSocketConnectionManager {
         }
         isConnected.set(false);
     }
-}
\ No newline at end of file
+
+    /**
+     * Closes the given session, clearing it as the current session if it still is.
+     * Used by delayed closes, which must not close a session opened in the meantime.
+     */
+    public void closeSession(WebSocketSession expected) {
+        if (sessionRef.compareAndSet(expected, null)) {
+            isConnected.set(false);
+        }
+        if (expected.isOpen()) {
+            try {
+                expected.close();
+                logger.info("WebSocket session closed");
+            } catch (IOException e) {
+                logger.error("Error closing WebSocket session", e);
+            }
+        }
+    }
+}
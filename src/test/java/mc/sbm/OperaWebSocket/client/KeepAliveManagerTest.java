@@ -0,0 +1,80 @@
+package mc.sbm.OperaWebSocket.client;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mc.sbm.OperaWebSocket.config.OracleHospitalityConfig;
+import mc.sbm.OperaWebSocket.service.StreamingMetrics;
+import mc.sbm.OperaWebSocket.websocket.WebSocketConnectionManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeepAliveManagerTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final WebSocketConnectionManager connectionManager = new WebSocketConnectionManager(null);
+    private final StreamingMetrics metrics = new StreamingMetrics(new SimpleMeterRegistry());
+    private final AtomicInteger pings = new AtomicInteger();
+    private final CompletableFuture<String> dead = new CompletableFuture<>();
+
+    @AfterEach
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private KeepAliveManager keepAlive(long idleProbeSeconds, KeepAliveManager.PingSender pingSender) {
+        OracleHospitalityConfig config = new OracleHospitalityConfig();
+        config.setPingIntervalSeconds(240);
+        config.getKeepAlive().setIdleProbeSeconds(idleProbeSeconds);
+        config.getKeepAlive().setPongTimeoutSeconds(1);
+        config.getKeepAlive().setMaxMissedPongs(2);
+        connectionManager.setConnected(true);
+        connectionManager.updateLastMessageReceived();
+        return new KeepAliveManager("CHAIN", config, scheduler, connectionManager, pingSender, dead::complete, metrics);
+    }
+
+    @Test
+    void silentLinkIsDetectedLongBeforeThePingInterval() throws Exception {
+        KeepAliveManager keepAlive = keepAlive(1, pings::incrementAndGet);
+        keepAlive.start();
+
+        // Idle probe after 1 s, then two pong timeouts of 1 s
+        assertEquals("2 pong(s) missed", dead.get(10, TimeUnit.SECONDS));
+        assertEquals(2, pings.get());
+    }
+
+    @Test
+    void answeredProbesKeepTheLinkAlive() throws Exception {
+        KeepAliveManager[] holder = new KeepAliveManager[1];
+        holder[0] = keepAlive(1, () -> {
+            pings.incrementAndGet();
+            connectionManager.updateLastMessageReceived();
+            scheduler.execute(() -> holder[0].pongReceived());
+        });
+        holder[0].start();
+
+        Thread.sleep(4_500);
+        assertFalse(dead.isDone());
+        assertTrue(pings.get() >= 2, "pings " + pings.get());
+        assertTrue(holder[0].getLastRoundTripMillis() >= 0);
+    }
+
+    @Test
+    void withoutIdleProbeOnlyTheIntervalPings() throws Exception {
+        KeepAliveManager keepAlive = keepAlive(0, pings::incrementAndGet);
+        keepAlive.start();
+
+        Thread.sleep(2_500);
+        assertEquals(0, pings.get());
+        assertFalse(dead.isDone());
+        keepAlive.stop();
+    }
+}
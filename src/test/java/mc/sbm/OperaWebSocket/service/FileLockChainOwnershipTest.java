@@ -0,0 +1,138 @@
+package mc.sbm.OperaWebSocket.service;
+
+import mc.sbm.OperaWebSocket.config.OracleHospitalityConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileLockChainOwnershipTest {
+
+    private static final List<String> CHAINS = List.of("CHAIN1", "CHAIN2", "CHAIN3");
+    private static final long TIMEOUT_MILLIS = 5_000;
+
+    @TempDir
+    Path directory;
+
+    private final List<Runnable> cleanups = new ArrayList<>();
+
+    @AfterEach
+    void cleanup() {
+        for (int i = cleanups.size() - 1; i >= 0; i--) {
+            cleanups.get(i).run();
+        }
+    }
+
+    /**
+     * One node: its own checkpoint service on the shared checkpoint directory, and a coordinator
+     */
+    private final class Node implements ChainOwnershipCoordinator.Listener {
+
+        final OffsetCheckpointService checkpoints;
+        final FileLockChainOwnership ownership;
+        final Map<String, Long> acquiredAt = new ConcurrentHashMap<>();
+        final Set<String> released = ConcurrentHashMap.newKeySet();
+
+        Node(String nodeId, int maxChainsPerNode) {
+            OracleHospitalityConfig config = new OracleHospitalityConfig();
+            config.getCheckpoint().setDirectory(directory.resolve("checkpoints").toString());
+            // Flushed explicitly on release only, so the handover is what makes the offset visible
+            config.getCheckpoint().setFlushIntervalMillis(3_600_000);
+            config.getCluster().setLockDirectory(directory.resolve("locks").toString());
+            config.getCluster().setRebalanceIntervalMillis(50);
+            config.getCluster().setMaxChainsPerNode(maxChainsPerNode);
+
+            checkpoints = new OffsetCheckpointService(config);
+            checkpoints.init();
+            ownership = new FileLockChainOwnership(config.getCluster(), nodeId, checkpoints);
+            cleanups.add(checkpoints::cleanup);
+            cleanups.add(ownership::stop);
+        }
+
+        void start() {
+            ownership.start(CHAINS, this);
+        }
+
+        @Override
+        public void onChainAcquired(String chainCode) {
+            acquiredAt.put(chainCode, checkpoints.getOffset(chainCode));
+        }
+
+        @Override
+        public void onChainsReleased(Collection<String> chainCodes) {
+            released.addAll(chainCodes);
+        }
+    }
+
+    private static void await(BooleanSupplier condition, String description) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Timed out waiting until " + description);
+            }
+            Thread.sleep(20);
+        }
+    }
+
+    @Test
+    void chainsFailOverWithTheFlushedCheckpoint() throws Exception {
+        Node first = new Node("node-1", 0);
+        first.start();
+        await(() -> first.ownership.getOwnedChains().size() == CHAINS.size(), "the first node owns every chain");
+
+        Node second = new Node("node-2", 0);
+        second.start();
+        Thread.sleep(200);
+        assertTrue(second.ownership.getOwnedChains().isEmpty());
+
+        first.checkpoints.track("CHAIN1", 41);
+        first.checkpoints.track("CHAIN1", 42);
+        first.checkpoints.acknowledge("CHAIN1", 41);
+        first.checkpoints.acknowledge("CHAIN1", 42);
+        assertEquals(-1, second.checkpoints.getOffset("CHAIN1"));
+
+        first.ownership.stop();
+        assertEquals(new HashSet<>(CHAINS), first.released);
+        assertTrue(first.ownership.getOwnedChains().isEmpty());
+
+        await(() -> second.ownership.getOwnedChains().size() == CHAINS.size(), "the second node owns every chain");
+        assertEquals(42, second.acquiredAt.get("CHAIN1").longValue());
+        assertEquals(-1, second.acquiredAt.get("CHAIN2").longValue());
+    }
+
+    @Test
+    void nodeTakesNoMoreThanMaxChainsPerNode() throws Exception {
+        Node first = new Node("node-1", 2);
+        first.start();
+        await(() -> first.ownership.getOwnedChains().size() == 2, "the first node owns two chains");
+
+        Node second = new Node("node-2", 2);
+        second.start();
+        await(() -> second.ownership.getOwnedChains().size() == 1, "the second node owns the remaining chain");
+        Thread.sleep(200);
+
+        assertEquals(2, first.ownership.getOwnedChains().size());
+        assertEquals(1, second.ownership.getOwnedChains().size());
+        Set<String> all = new HashSet<>(first.ownership.getOwnedChains());
+        all.addAll(second.ownership.getOwnedChains());
+        assertEquals(new HashSet<>(CHAINS), all);
+
+        // The freed chains go to the survivor only up to its limit
+        first.ownership.stop();
+        await(() -> second.ownership.getOwnedChains().size() == 2, "the second node takes one more chain");
+        Thread.sleep(200);
+        assertEquals(2, second.ownership.getOwnedChains().size());
+    }
+}
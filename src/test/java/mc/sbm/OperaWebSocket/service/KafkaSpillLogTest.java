@@ -0,0 +1,248 @@
+package mc.sbm.OperaWebSocket.service;
+
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KafkaSpillLogTest {
+
+    private static final int SEGMENT_SIZE = 256;
+    // Segment header, then [length][crc32][body] per record
+    private static final int SEGMENT_HEADER_BYTES = Long.BYTES;
+    private static final int RECORD_HEADER_BYTES = 2 * Integer.BYTES;
+
+    @TempDir
+    Path directory;
+
+    private static KafkaSpillLog.SpilledRecord record(long offset) {
+        List<Header> headers = List.of(new RecordHeader("h", ("v" + offset).getBytes(StandardCharsets.UTF_8)));
+        return new KafkaSpillLog.SpilledRecord("CHAIN", offset, "topic", "key-" + offset, headers,
+                ("value-" + offset).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<Long> offsets(List<KafkaSpillLog.SpilledRecord> records) {
+        List<Long> offsets = new ArrayList<>();
+        for (KafkaSpillLog.SpilledRecord record : records) {
+            offsets.add(record.getOffset());
+        }
+        return offsets;
+    }
+
+    private KafkaSpillLog open() throws IOException {
+        return new KafkaSpillLog(directory, SEGMENT_SIZE, 64L * SEGMENT_SIZE);
+    }
+
+    private long segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    private static List<Long> range(long from, long to) {
+        List<Long> values = new ArrayList<>();
+        for (long value = from; value < to; value++) {
+            values.add(value);
+        }
+        return values;
+    }
+
+    @Test
+    void recordsRoundTripInOrderAcrossSegments() throws IOException {
+        try (KafkaSpillLog log = open()) {
+            for (long offset = 0; offset < 10; offset++) {
+                assertTrue(log.append(record(offset)));
+            }
+            assertTrue(segmentFiles() > 1);
+            assertEquals(10, log.size());
+
+            List<KafkaSpillLog.SpilledRecord> batch = log.readBatch(100);
+            assertEquals(range(0, 10), offsets(batch));
+
+            KafkaSpillLog.SpilledRecord first = batch.get(0);
+            assertEquals("CHAIN", first.getChainCode());
+            assertEquals("topic", first.getTopic());
+            assertEquals("key-0", first.getKey());
+            assertEquals("h", first.getHeaders().get(0).key());
+            assertArrayEquals("v0".getBytes(StandardCharsets.UTF_8), first.getHeaders().get(0).value());
+            assertArrayEquals("value-0".getBytes(StandardCharsets.UTF_8), first.getValue());
+        }
+    }
+
+    @Test
+    void nullKeyAndNoHeadersRoundTrip() throws IOException {
+        try (KafkaSpillLog log = open()) {
+            log.append(new KafkaSpillLog.SpilledRecord("CHAIN", -1, "topic", null, List.of(), new byte[0]));
+
+            KafkaSpillLog.SpilledRecord read = log.readBatch(1).get(0);
+            assertNull(read.getKey());
+            assertEquals(-1, read.getOffset());
+            assertTrue(read.getHeaders().isEmpty());
+            assertEquals(0, read.getValue().length);
+        }
+    }
+
+    @Test
+    void rewindReturnsToLastCommit() throws IOException {
+        try (KafkaSpillLog log = open()) {
+            for (long offset = 0; offset < 6; offset++) {
+                log.append(record(offset));
+            }
+            assertEquals(range(0, 3), offsets(log.readBatch(3)));
+            log.rewind();
+            assertEquals(range(0, 3), offsets(log.readBatch(3)));
+            log.commit();
+            assertEquals(3, log.size());
+
+            assertEquals(range(3, 5), offsets(log.readBatch(2)));
+            log.rewind();
+            assertEquals(range(3, 6), offsets(log.readBatch(10)));
+        }
+    }
+
+    @Test
+    void commitAcrossSegmentsDeletesConsumedSegmentsAndSurvivesReopen() throws IOException {
+        try (KafkaSpillLog log = open()) {
+            for (long offset = 0; offset < 10; offset++) {
+                log.append(record(offset));
+            }
+            long filesBefore = segmentFiles();
+            log.readBatch(7);
+            log.commit();
+
+            assertEquals(3, log.size());
+            assertTrue(segmentFiles() < filesBefore);
+        }
+
+        try (KafkaSpillLog log = open()) {
+            assertEquals(3, log.size());
+            assertEquals(range(7, 10), offsets(log.readBatch(10)));
+        }
+    }
+
+    @Test
+    void fullyDrainedLogStartsOverAndReopensEmpty() throws IOException {
+        try (KafkaSpillLog log = open()) {
+            log.append(record(1));
+            log.readBatch(10);
+            log.commit();
+            assertTrue(log.isEmpty());
+
+            log.append(record(2));
+            assertEquals(List.of(2L), offsets(log.readBatch(10)));
+            log.commit();
+        }
+
+        try (KafkaSpillLog log = open()) {
+            assertTrue(log.isEmpty());
+            assertTrue(log.readBatch(10).isEmpty());
+        }
+    }
+
+    @Test
+    void corruptRecordIsDroppedWithEverythingAfterItOnRecovery() throws IOException {
+        int length = record(0).encodedLength();
+        try (KafkaSpillLog log = new KafkaSpillLog(directory, 4096, 4096)) {
+            for (long offset = 0; offset < 4; offset++) {
+                log.append(record(offset));
+            }
+        }
+        // Flip a body byte of the third record so its checksum no longer matches
+        long third = SEGMENT_HEADER_BYTES + 2L * (RECORD_HEADER_BYTES + length);
+        flipByte(onlySegment(), third + RECORD_HEADER_BYTES + 3);
+
+        try (KafkaSpillLog log = new KafkaSpillLog(directory, 4096, 4096)) {
+            assertEquals(2, log.size());
+            assertEquals(range(0, 2), offsets(log.readBatch(10)));
+
+            // New records go after the last valid one
+            log.rewind();
+            assertTrue(log.append(record(9)));
+            assertEquals(List.of(0L, 1L, 9L), offsets(log.readBatch(10)));
+        }
+    }
+
+    @Test
+    void tornRecordIsDroppedOnRecovery() throws IOException {
+        int length = record(0).encodedLength();
+        try (KafkaSpillLog log = new KafkaSpillLog(directory, 4096, 4096)) {
+            for (long offset = 0; offset < 3; offset++) {
+                log.append(record(offset));
+            }
+        }
+        // A crash after the length was written but before the body: the length runs past the segment
+        long last = SEGMENT_HEADER_BYTES + 2L * (RECORD_HEADER_BYTES + length);
+        try (RandomAccessFile file = new RandomAccessFile(onlySegment().toFile(), "rw")) {
+            file.seek(last);
+            file.writeInt(1_000_000);
+        }
+
+        try (KafkaSpillLog log = new KafkaSpillLog(directory, 4096, 4096)) {
+            assertEquals(range(0, 2), offsets(log.readBatch(10)));
+        }
+    }
+
+    @Test
+    void segmentWithoutValidRecordsIsDeletedOnRecovery() throws IOException {
+        try (KafkaSpillLog log = new KafkaSpillLog(directory, 4096, 4096)) {
+            log.append(record(0));
+        }
+        flipByte(onlySegment(), SEGMENT_HEADER_BYTES + RECORD_HEADER_BYTES);
+
+        try (KafkaSpillLog log = new KafkaSpillLog(directory, 4096, 4096)) {
+            assertTrue(log.isEmpty());
+        }
+        assertEquals(0, segmentFiles());
+    }
+
+    @Test
+    void appendIsRejectedWhenFullOrTooLarge() throws IOException {
+        try (KafkaSpillLog log = new KafkaSpillLog(directory, SEGMENT_SIZE, 2L * SEGMENT_SIZE)) {
+            int appended = 0;
+            while (log.append(record(appended))) {
+                appended++;
+            }
+            assertTrue(appended > 0);
+            assertEquals(appended, log.size());
+            assertEquals(2L * SEGMENT_SIZE, log.getSizeBytes());
+
+            log.readBatch(appended);
+            log.commit();
+            assertFalse(log.append(new KafkaSpillLog.SpilledRecord("CHAIN", 1, "topic", "key", List.of(),
+                    new byte[SEGMENT_SIZE])));
+            assertTrue(log.append(record(100)));
+        }
+    }
+
+    private Path onlySegment() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> segments = files.toList();
+            assertEquals(1, segments.size());
+            return segments.get(0);
+        }
+    }
+
+    private static void flipByte(Path file, long position) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(position);
+            int value = raf.read();
+            raf.seek(position);
+            raf.write(value ^ 0xff);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package mc.sbm.OperaWebSocket.service;
+
+import mc.sbm.OperaWebSocket.config.OracleHospitalityConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OffsetCheckpointServiceTest {
+
+    private static final String CHAIN = "CHAIN1";
+
+    @TempDir
+    Path directory;
+
+    private OffsetCheckpointService service;
+    private final List<String> stalls = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        OracleHospitalityConfig config = new OracleHospitalityConfig();
+        config.getCheckpoint().setDirectory(directory.toString());
+        config.getCheckpoint().setMaxInFlight(3);
+        service = new OffsetCheckpointService(config);
+        service.init();
+        service.setStallListener(CHAIN, stalls::add);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.cleanup();
+    }
+
+    @Test
+    void failureStallsOnceAndResumesBelowFailedOffset() {
+        service.track(CHAIN, 10);
+        service.track(CHAIN, 11);
+        service.track(CHAIN, 12);
+        service.acknowledge(CHAIN, 10);
+        service.fail(CHAIN, 11);
+        service.fail(CHAIN, 12);
+        service.markSpilled(CHAIN, 13);
+
+        assertEquals(1, stalls.size());
+        assertEquals(10, service.getOffset(CHAIN));
+        assertEquals(10, service.getResumeOffset(CHAIN));
+
+        service.resubscribed(CHAIN);
+        service.track(CHAIN, 11);
+        service.track(CHAIN, 12);
+        service.acknowledge(CHAIN, 12);
+        service.acknowledge(CHAIN, 11);
+
+        assertEquals(12, service.getOffset(CHAIN));
+        assertEquals(1, stalls.size());
+    }
+
+    @Test
+    void tooManyUnacknowledgedOffsetsStall() {
+        for (long offset = 1; offset <= 5; offset++) {
+            service.track(CHAIN, offset);
+        }
+
+        assertEquals(1, stalls.size());
+
+        service.resubscribed(CHAIN);
+        service.track(CHAIN, 6);
+        assertEquals(2, stalls.size());
+    }
+
+    @Test
+    void resumeOffsetCoversSpilledOffsets() {
+        service.track(CHAIN, 1);
+        service.track(CHAIN, 2);
+        service.markSpilled(CHAIN, 1);
+
+        assertEquals(2, service.getPendingCount(CHAIN));
+        assertEquals(OffsetCheckpointService.NO_OFFSET, service.getOffset(CHAIN));
+        assertEquals(1, service.getResumeOffset(CHAIN));
+    }
+}
@@ -0,0 +1,143 @@
+package mc.sbm.OperaWebSocket.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OffsetWatermarkTrackerTest {
+
+    @Test
+    void outOfOrderAcknowledgementsAdvanceOnlyContiguously() {
+        OffsetWatermarkTracker tracker = new OffsetWatermarkTracker();
+        for (long offset = 1; offset <= 5; offset++) {
+            tracker.track(offset);
+        }
+
+        assertEquals(OffsetWatermarkTracker.NO_OFFSET, tracker.acknowledge(3));
+        assertEquals(OffsetWatermarkTracker.NO_OFFSET, tracker.acknowledge(5));
+        assertEquals(OffsetWatermarkTracker.NO_OFFSET, tracker.getWatermark());
+
+        assertEquals(1, tracker.acknowledge(1));
+        assertEquals(3, tracker.acknowledge(2));
+        assertEquals(2, tracker.getPendingCount());
+
+        assertEquals(5, tracker.acknowledge(4));
+        assertEquals(0, tracker.getPendingCount());
+        assertEquals(0, tracker.getSendingCount());
+    }
+
+    @Test
+    void unknownAndRepeatedAcknowledgementsAreIgnored() {
+        OffsetWatermarkTracker tracker = new OffsetWatermarkTracker();
+        tracker.track(1);
+
+        assertEquals(OffsetWatermarkTracker.NO_OFFSET, tracker.acknowledge(7));
+        assertEquals(1, tracker.acknowledge(1));
+        assertEquals(OffsetWatermarkTracker.NO_OFFSET, tracker.acknowledge(1));
+        assertEquals(1, tracker.getWatermark());
+    }
+
+    @Test
+    void failedOffsetHoldsWatermarkUntilReplayed() {
+        OffsetWatermarkTracker tracker = new OffsetWatermarkTracker();
+        for (long offset = 1; offset <= 4; offset++) {
+            tracker.track(offset);
+        }
+        tracker.acknowledge(1);
+        assertTrue(tracker.fail(2));
+        tracker.acknowledge(3);
+        tracker.acknowledge(4);
+
+        assertEquals(1, tracker.getWatermark());
+        assertEquals(2, tracker.getLowestFailed());
+        assertEquals(0, tracker.getSendingCount());
+        assertEquals(3, tracker.getPendingCount());
+
+        // The resubscription delivers offset 2 again
+        tracker.track(2);
+        assertEquals(OffsetWatermarkTracker.NO_OFFSET, tracker.getLowestFailed());
+        assertEquals(1, tracker.getSendingCount());
+        assertEquals(4, tracker.acknowledge(2));
+        assertEquals(0, tracker.getPendingCount());
+        assertEquals(1, tracker.getFailedCount());
+    }
+
+    @Test
+    void replayedOffsetCanFailAgain() {
+        OffsetWatermarkTracker tracker = new OffsetWatermarkTracker();
+        tracker.track(1);
+        tracker.fail(1);
+        tracker.track(1);
+        assertTrue(tracker.fail(1));
+
+        assertEquals(1, tracker.getLowestFailed());
+        assertEquals(2, tracker.getFailedCount());
+    }
+
+    @Test
+    void failOfUnknownOrAcknowledgedOffsetIsIgnored() {
+        OffsetWatermarkTracker tracker = new OffsetWatermarkTracker();
+        tracker.track(1);
+        tracker.track(2);
+        tracker.acknowledge(2);
+
+        assertFalse(tracker.fail(2));
+        assertFalse(tracker.fail(9));
+        assertEquals(OffsetWatermarkTracker.NO_OFFSET, tracker.getLowestFailed());
+        assertEquals(0, tracker.getFailedCount());
+    }
+
+    @Test
+    void spilledOffsetsHoldWatermarkButAreNotSending() {
+        OffsetWatermarkTracker tracker = new OffsetWatermarkTracker();
+        tracker.track(1);
+        tracker.track(2);
+        tracker.spilled(1);
+
+        assertEquals(1, tracker.getSendingCount());
+        assertEquals(OffsetWatermarkTracker.NO_OFFSET, tracker.acknowledge(2));
+
+        // Acknowledged once the spill drains it
+        assertEquals(2, tracker.acknowledge(1));
+        assertEquals(0, tracker.getSendingCount());
+    }
+
+    @Test
+    void whenSentCompletesOnceNoDirectSendIsPending() {
+        OffsetWatermarkTracker tracker = new OffsetWatermarkTracker();
+        assertTrue(tracker.whenSent().isDone());
+
+        tracker.track(1);
+        tracker.track(2);
+        tracker.track(3);
+        CompletableFuture<Void> sent = tracker.whenSent();
+        tracker.acknowledge(2);
+        tracker.spilled(1);
+        assertFalse(sent.isDone());
+
+        // A failed offset is replayed by the next owner, so it is not waited for
+        tracker.fail(3);
+        assertTrue(sent.isDone());
+        assertEquals(3, tracker.getPendingCount());
+    }
+
+    @Test
+    void trackReportsWhenFull() {
+        OffsetWatermarkTracker tracker = new OffsetWatermarkTracker(2);
+        assertTrue(tracker.track(1));
+        assertTrue(tracker.track(2));
+        assertFalse(tracker.track(3));
+        assertEquals(3, tracker.getPendingCount());
+
+        tracker.acknowledge(1);
+        assertFalse(tracker.track(4));
+        tracker.acknowledge(2);
+        tracker.acknowledge(3);
+        assertTrue(tracker.track(5));
+        assertEquals(2, tracker.getPendingCount());
+    }
+}
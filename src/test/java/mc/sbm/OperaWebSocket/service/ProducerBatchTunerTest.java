@@ -0,0 +1,177 @@
+package mc.sbm.OperaWebSocket.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProducerBatchTunerTest {
+
+    private static final int MIN_BATCH = 1024;
+    private static final int MAX_BATCH = 1 << 20;
+    private static final int MIN_LINGER = 0;
+    private static final int MAX_LINGER = 20;
+
+    private final List<int[]> applied = new ArrayList<>();
+
+    private static final class FakeProducerFactory implements ProducerFactory<String, byte[]> {
+
+        private final Map<String, Object> configs;
+        private int resets;
+
+        FakeProducerFactory(Map<String, Object> configs) {
+            this.configs = configs;
+        }
+
+        @Override
+        public Producer<String, byte[]> createProducer() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Map<String, Object> getConfigurationProperties() {
+            return configs;
+        }
+
+        @Override
+        public ProducerFactory<String, byte[]> copyWithConfigurationOverride(Map<String, Object> overrides) {
+            Map<String, Object> copy = new HashMap<>(configs);
+            copy.putAll(overrides);
+            return new FakeProducerFactory(copy);
+        }
+
+        @Override
+        public void reset() {
+            resets++;
+        }
+    }
+
+    private static FakeProducerFactory factory(int batchSize, int lingerMs) {
+        Map<String, Object> configs = new HashMap<>();
+        configs.put(ProducerConfig.BATCH_SIZE_CONFIG, batchSize);
+        configs.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+        return new FakeProducerFactory(configs);
+    }
+
+    /**
+     * Tuner that records the settings it would apply instead of replacing the producer
+     */
+    private ProducerBatchTuner tuner(int batchSize, int lingerMs, int minBatch, int maxBatch) {
+        return new ProducerBatchTuner(new KafkaTemplate<>(factory(batchSize, lingerMs)), new SimpleMeterRegistry(),
+                true, minBatch, maxBatch, MIN_LINGER, MAX_LINGER, 60) {
+            @Override
+            void apply(int newBatchSize, int newLingerMs) {
+                applied.add(new int[]{newBatchSize, newLingerMs});
+            }
+        };
+    }
+
+    private void assertApplied(int batchSize, int lingerMs) {
+        assertEquals(1, applied.size());
+        assertEquals(batchSize, applied.get(0)[0], "batch.size");
+        assertEquals(lingerMs, applied.get(0)[1], "linger.ms");
+    }
+
+    @Test
+    void batchSizeCoversOneLingerWindowRoundedUpToPowerOfTwo() {
+        ProducerBatchTuner tuner = tuner(16384, MAX_LINGER, MIN_BATCH, MAX_BATCH);
+        // 10000 records/s of 100 bytes: 200 records per 20 ms window, 30000 bytes with headroom
+        tuner.tune(10_000, 1_000_000, 1.0);
+        assertApplied(32768, MAX_LINGER);
+    }
+
+    @Test
+    void changeBelowFactorOfTwoIsIgnored() {
+        ProducerBatchTuner tuner = tuner(20000, MAX_LINGER, MIN_BATCH, MAX_BATCH);
+        // 32768 is less than twice 20000
+        tuner.tune(10_000, 1_000_000, 1.0);
+        assertTrue(applied.isEmpty());
+
+        // 65536 is at least twice 20000
+        tuner.tune(20_000, 2_000_000, 1.0);
+        assertApplied(65536, MAX_LINGER);
+    }
+
+    @Test
+    void shrinkingByFactorOfTwoIsApplied() {
+        ProducerBatchTuner tuner = tuner(65536, MAX_LINGER, MIN_BATCH, MAX_BATCH);
+        tuner.tune(10_000, 1_000_000, 1.0);
+        assertApplied(32768, MAX_LINGER);
+    }
+
+    @Test
+    void lingerDropsToMinimumWhenBatchesWouldNotFill() {
+        ProducerBatchTuner tuner = tuner(16384, MAX_LINGER, 16384, 16384);
+        // 50 records/s: one record per 20 ms window
+        tuner.tune(50, 5_000, 1.0);
+        assertApplied(16384, MIN_LINGER);
+    }
+
+    @Test
+    void lingerReturnsToMaximumOnceTwoRecordsArrivePerWindow() {
+        ProducerBatchTuner tuner = tuner(16384, MIN_LINGER, 16384, 16384);
+        tuner.tune(99, 9_900, 1.0);
+        assertTrue(applied.isEmpty());
+
+        tuner.tune(100, 10_000, 1.0);
+        assertApplied(16384, MAX_LINGER);
+    }
+
+    @Test
+    void batchSizeStaysWithinBounds() {
+        tuner(16384, MAX_LINGER, MIN_BATCH, MAX_BATCH).tune(1_000_000, 10_000_000_000L, 1.0);
+        assertApplied(MAX_BATCH, MAX_LINGER);
+
+        applied.clear();
+        tuner(16384, MIN_LINGER, MIN_BATCH, MAX_BATCH).tune(1, 10, 1.0);
+        assertApplied(MIN_BATCH, MIN_LINGER);
+    }
+
+    @Test
+    void noTrafficChangesNothing() {
+        ProducerBatchTuner tuner = tuner(16384, MAX_LINGER, MIN_BATCH, MAX_BATCH);
+        tuner.tune(0, 0, 1.0);
+        assertTrue(applied.isEmpty());
+    }
+
+    @Test
+    void oldProducerIsFlushedWithSendsHeldBeforeTheSwap() {
+        FakeProducerFactory initialFactory = factory(16384, MAX_LINGER);
+        ProducerBatchTuner[] tuner = new ProducerBatchTuner[1];
+        List<String> flushes = new ArrayList<>();
+        KafkaTemplate<String, byte[]> initial = new KafkaTemplate<>(initialFactory) {
+            @Override
+            public void flush() {
+                assertSame(this, tuner[0].getTemplate());
+                boolean senderGotLock = CompletableFuture.supplyAsync(() -> tuner[0].sendLock().tryLock()).join();
+                assertFalse(senderGotLock);
+                flushes.add("flushed");
+            }
+        };
+        tuner[0] = new ProducerBatchTuner(initial, new SimpleMeterRegistry(), true,
+                MIN_BATCH, MAX_BATCH, MIN_LINGER, MAX_LINGER, 60);
+
+        tuner[0].apply(32768, MAX_LINGER);
+
+        assertEquals(List.of("flushed"), flushes);
+        assertNotSame(initial, tuner[0].getTemplate());
+        assertEquals(32768, tuner[0].getBatchSize());
+        assertEquals(32768, tuner[0].getTemplate().getProducerFactory().getConfigurationProperties()
+                .get(ProducerConfig.BATCH_SIZE_CONFIG));
+        assertEquals(1, initialFactory.resets);
+    }
+}
@@ -0,0 +1,158 @@
+package mc.sbm.OperaWebSocket.websocket;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IncrementalEnvelopeParserTest {
+
+    private static final String EVENT = "{\"id\":\"1\",\"type\":\"next\",\"payload\":{\"data\":{\"newEvent\":{"
+            + "\"metadata\":{\"offset\":\"1234\",\"uniqueEventId\":\"\u00E9-1\"},"
+            + "\"moduleName\":\"RESERVATION\",\"eventName\":\"CHECK IN\","
+            + "\"hotelId\":\"H\u00D4TEL-\u6771\u4EAC\",\"primaryKey\":\"R-\u20AC42\","
+            + "\"detail\":[{\"elementName\":\"Guest\",\"newValue\":\"Zo\u00EB \uD83D\uDC4B\"}]}}}}";
+
+    private static final String EVENT_WITHOUT_DETAIL = "{\"type\":\"next\",\"payload\":{\"data\":{\"newEvent\":{"
+            + "\"metadata\":{\"offset\":77},\"moduleName\":\"PROFILE\",\"eventName\":\"NEW PROFILE\","
+            + "\"hotelId\":null,\"primaryKey\":\"P-\u00F1\"}}},\"trailer\":\"\u00FC\"}";
+
+    private final EnvelopeExtractor extractor = new EnvelopeExtractor(new ObjectMapper());
+
+    /**
+     * Feeds the message in chunks ending at the given positions and then the rest
+     */
+    private IncrementalEnvelopeParser feed(byte[] bytes, int... cuts) {
+        IncrementalEnvelopeParser parser = extractor.createIncrementalParser();
+        int start = 0;
+        for (int cut : cuts) {
+            parser.feed(bytes, start, cut - start);
+            start = cut;
+        }
+        parser.feed(bytes, start, bytes.length - start);
+        return parser;
+    }
+
+    private OracleEventEnvelope incremental(byte[] bytes, EnvelopeFields fields) throws IOException {
+        AssembledMessage message = AssembledMessage.wrap(bytes, 0);
+        message.setEnvelopeFields(fields);
+        return extractor.extract(message);
+    }
+
+    private OracleEventEnvelope fullParse(byte[] bytes) throws IOException {
+        return extractor.extract(AssembledMessage.wrap(bytes, 0));
+    }
+
+    private static void assertSameEnvelope(OracleEventEnvelope expected, OracleEventEnvelope actual, String split) {
+        assertEquals(expected.getType(), actual.getType(), split);
+        assertEquals(expected.getModuleName(), actual.getModuleName(), split);
+        assertEquals(expected.getEventName(), actual.getEventName(), split);
+        assertEquals(expected.getOffset(), actual.getOffset(), split);
+        assertEquals(expected.getHotelId(), actual.getHotelId(), split);
+        assertEquals(expected.getPrimaryKey(), actual.getPrimaryKey(), split);
+        assertEquals(expected.hasDetail(), actual.hasDetail(), split);
+    }
+
+    @Test
+    void everySplitPointMatchesFullParse() throws IOException {
+        byte[] bytes = EVENT.getBytes(StandardCharsets.UTF_8);
+        OracleEventEnvelope expected = fullParse(bytes);
+        assertEquals("H\u00D4TEL-\u6771\u4EAC", expected.getHotelId());
+        assertEquals(1234, expected.getOffset());
+
+        // Includes cuts inside field names, string values and multi-byte characters
+        for (int cut = 1; cut < bytes.length; cut++) {
+            EnvelopeFields fields = feed(bytes, cut).result();
+            assertNotNull(fields, "split at " + cut);
+            assertSameEnvelope(expected, incremental(bytes, fields), "split at " + cut);
+        }
+    }
+
+    @Test
+    void byteByByteFeedMatchesFullParse() throws IOException {
+        byte[] bytes = EVENT.getBytes(StandardCharsets.UTF_8);
+        int[] cuts = new int[bytes.length - 1];
+        for (int i = 0; i < cuts.length; i++) {
+            cuts[i] = i + 1;
+        }
+        EnvelopeFields fields = feed(bytes, cuts).result();
+
+        assertNotNull(fields);
+        assertSameEnvelope(fullParse(bytes), incremental(bytes, fields), "byte by byte");
+    }
+
+    @Test
+    void stopsOnceDetailStarts() {
+        byte[] bytes = EVENT.getBytes(StandardCharsets.UTF_8);
+        int detailStart = EVENT.indexOf("[{\"elementName\"");
+        int prefix = EVENT.substring(0, detailStart + 1).getBytes(StandardCharsets.UTF_8).length;
+
+        IncrementalEnvelopeParser parser = extractor.createIncrementalParser();
+        parser.feed(bytes, 0, prefix - 1);
+        assertNull(parser.result());
+        parser.feed(bytes, prefix - 1, 1);
+
+        EnvelopeFields fields = parser.result();
+        assertNotNull(fields);
+        assertTrue(fields.hasDetail);
+        assertEquals("R-\u20AC42", fields.primaryKey);
+    }
+
+    @Test
+    void messageWithoutDetailIsOnlyResolvedAtItsEnd() throws IOException {
+        byte[] bytes = EVENT_WITHOUT_DETAIL.getBytes(StandardCharsets.UTF_8);
+        OracleEventEnvelope expected = fullParse(bytes);
+        assertFalse(expected.hasDetail());
+
+        IncrementalEnvelopeParser parser = extractor.createIncrementalParser();
+        for (int i = 0; i < bytes.length; i++) {
+            assertNull(parser.result(), "resolved after " + i + " bytes");
+            parser.feed(bytes, i, 1);
+        }
+        EnvelopeFields fields = parser.result();
+        assertNotNull(fields);
+        assertSameEnvelope(expected, incremental(bytes, fields), "byte by byte");
+
+        for (int cut = 1; cut < bytes.length; cut++) {
+            assertSameEnvelope(expected, incremental(bytes, feed(bytes, cut).result()), "split at " + cut);
+        }
+    }
+
+    @Test
+    void controlMessageResolvesOnType() {
+        byte[] bytes = "{\"type\":\"ka\",\"payload\":{\"ignored\":true}}".getBytes(StandardCharsets.UTF_8);
+        IncrementalEnvelopeParser parser = extractor.createIncrementalParser();
+        parser.feed(bytes, 0, 13);
+
+        EnvelopeFields fields = parser.result();
+        assertNotNull(fields);
+        assertEquals("ka", fields.type);
+    }
+
+    @Test
+    void incompleteOrInvalidMessageHasNoResult() {
+        byte[] truncated = EVENT_WITHOUT_DETAIL.substring(0, 60).getBytes(StandardCharsets.UTF_8);
+        assertNull(feed(truncated).result());
+
+        byte[] invalid = "[\"type\",\"next\"]".getBytes(StandardCharsets.UTF_8);
+        assertNull(feed(invalid).result());
+    }
+
+    @Test
+    void resetStartsTheNextMessageClean() throws IOException {
+        byte[] first = EVENT_WITHOUT_DETAIL.substring(0, 60).getBytes(StandardCharsets.UTF_8);
+        byte[] second = EVENT.getBytes(StandardCharsets.UTF_8);
+        IncrementalEnvelopeParser parser = feed(first);
+        parser.reset();
+        parser.feed(second, 0, second.length);
+
+        assertSameEnvelope(fullParse(second), incremental(second, parser.result()), "after reset");
+    }
+}
@@ -0,0 +1,104 @@
+package mc.sbm.OperaWebSocket.websocket;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MessageAssemblerTest {
+
+    private static final int SEGMENT_SIZE = 64;
+
+    private final EnvelopeExtractor extractor = new EnvelopeExtractor(new ObjectMapper());
+
+    private MessageAssembler assembler(BufferPool pool, int compactThreshold) {
+        return new MessageAssembler(pool, extractor.createIncrementalParser(), compactThreshold);
+    }
+
+    private static String text(int length) {
+        return "x".repeat(length);
+    }
+
+    @Test
+    void smallMessageIsCopiedAndItsSegmentReturned() {
+        BufferPool pool = new BufferPool(SEGMENT_SIZE, 1024);
+        MessageAssembler assembler = assembler(pool, 32);
+
+        assembler.appendFragment(text(10));
+        assembler.appendFragment(text(10));
+        AssembledMessage message = assembler.getCompleteMessage();
+
+        assertTrue(message.isFlattened());
+        assertEquals(20, message.length());
+        assertEquals(0, pool.getInUseSegments());
+        assertEquals(1, pool.getPooledSegments());
+        assertEquals(2, message.getFragmentCount());
+        assertArrayEquals(text(20).getBytes(StandardCharsets.UTF_8), message.toByteArray());
+    }
+
+    @Test
+    void messageAboveThresholdKeepsItsSegments() {
+        BufferPool pool = new BufferPool(SEGMENT_SIZE, 1024);
+        MessageAssembler assembler = assembler(pool, 32);
+
+        assembler.appendFragment(text(40));
+        AssembledMessage message = assembler.getCompleteMessage();
+
+        assertFalse(message.isFlattened());
+        assertEquals(1, pool.getInUseSegments());
+        message.release();
+        assertEquals(0, pool.getInUseSegments());
+    }
+
+    @Test
+    void multiSegmentMessageKeepsItsSegments() {
+        BufferPool pool = new BufferPool(SEGMENT_SIZE, 1024);
+        MessageAssembler assembler = assembler(pool, SEGMENT_SIZE);
+
+        assembler.appendFragment(text(100));
+        AssembledMessage message = assembler.getCompleteMessage();
+
+        assertFalse(message.isFlattened());
+        assertEquals(2, pool.getInUseSegments());
+        assertArrayEquals(text(100).getBytes(StandardCharsets.UTF_8), message.toByteArray());
+        assertEquals(0, pool.getInUseSegments());
+    }
+
+    @Test
+    void everyMessageIsCopiedOnceInUseLimitIsReached() {
+        BufferPool pool = new BufferPool(SEGMENT_SIZE, 1024, 2L * SEGMENT_SIZE);
+        MessageAssembler assembler = assembler(pool, 0);
+
+        assembler.appendFragment(text(50));
+        AssembledMessage first = assembler.getCompleteMessage();
+        assertFalse(first.isFlattened());
+        assertFalse(pool.isInUseLimitReached());
+
+        // Needs two more segments, which reaches the limit while it is assembled
+        assembler.appendFragment(text(100));
+        AssembledMessage second = assembler.getCompleteMessage();
+        assertTrue(second.isFlattened());
+        assertArrayEquals(text(100).getBytes(StandardCharsets.UTF_8), second.toByteArray());
+        assertEquals(1, pool.getInUseSegments());
+
+        first.release();
+        assertEquals(0, pool.getInUseSegments());
+    }
+
+    @Test
+    void copiedMessageKeepsEnvelopeFields() throws Exception {
+        BufferPool pool = new BufferPool(SEGMENT_SIZE, 1024);
+        MessageAssembler assembler = assembler(pool, SEGMENT_SIZE);
+
+        assembler.appendFragment("{\"type\":\"ka\"}");
+        AssembledMessage message = assembler.getCompleteMessage();
+
+        assertTrue(message.isFlattened());
+        assertEquals("ka", extractor.readType(message));
+    }
+}
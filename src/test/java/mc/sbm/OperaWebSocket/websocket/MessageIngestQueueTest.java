@@ -0,0 +1,161 @@
+package mc.sbm.OperaWebSocket.websocket;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MessageIngestQueueTest {
+
+    // Length and receive-time prefix of each spilled record
+    private static final int SPILL_RECORD_HEADER_BYTES = Integer.BYTES + Long.BYTES;
+
+    @TempDir
+    Path spillDirectory;
+
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Executor executor = tasks::add;
+    private final List<Integer> handled = new ArrayList<>();
+
+    private void runTasks() {
+        for (Runnable task = tasks.poll(); task != null; task = tasks.poll()) {
+            task.run();
+        }
+    }
+
+    private MessageIngestQueue queue(int capacity, MessageIngestQueue.BackpressurePolicy policy, long spillMaxBytes) {
+        return new MessageIngestQueue("test", capacity, policy, spillDirectory, spillMaxBytes,
+                executor, message -> handled.add((int) message.toByteArray()[0]), e -> { });
+    }
+
+    private MessageIngestQueue queue() {
+        return queue(4, MessageIngestQueue.BackpressurePolicy.BLOCK, Long.MAX_VALUE);
+    }
+
+    private static AssembledMessage message(int value) {
+        return AssembledMessage.wrap(new byte[]{(byte) value}, 0);
+    }
+
+    private static List<Integer> range(int from, int to) {
+        List<Integer> values = new ArrayList<>();
+        for (int value = from; value <= to; value++) {
+            values.add(value);
+        }
+        return values;
+    }
+
+    @Test
+    void emptyQueueIsIdle() {
+        assertTrue(queue().whenIdle().isDone());
+    }
+
+    @Test
+    void whenIdleCompletesAfterQueuedMessagesAreProcessed() {
+        MessageIngestQueue queue = queue();
+        queue.offer(message(1));
+        queue.offer(message(2));
+
+        CompletableFuture<Void> idle = queue.whenIdle();
+        assertFalse(idle.isDone());
+
+        runTasks();
+        assertEquals(List.of(1, 2), handled);
+        assertTrue(idle.isDone());
+    }
+
+    @Test
+    void shutdownCompletesWaiters() {
+        MessageIngestQueue queue = queue();
+        queue.offer(message(1));
+        CompletableFuture<Void> idle = queue.whenIdle();
+
+        // Shutdown discards the message before the scheduled drain runs
+        queue.shutdown();
+        runTasks();
+        assertTrue(idle.isDone());
+    }
+
+    @Test
+    void dropOldestKeepsTheNewestMessages() {
+        MessageIngestQueue queue = queue(2, MessageIngestQueue.BackpressurePolicy.DROP_OLDEST, Long.MAX_VALUE);
+        for (int value = 1; value <= 5; value++) {
+            assertTrue(queue.offer(message(value)));
+        }
+        assertEquals(3, queue.getDroppedCount());
+        assertEquals(2, queue.getDepth());
+
+        runTasks();
+        assertEquals(List.of(4, 5), handled);
+    }
+
+    @Test
+    void spilledMessagesAreProcessedInArrivalOrder() {
+        MessageIngestQueue queue = queue(2, MessageIngestQueue.BackpressurePolicy.SPILL_TO_DISK, Long.MAX_VALUE);
+        for (int value = 1; value <= 6; value++) {
+            assertTrue(queue.offer(message(value)));
+        }
+        assertEquals(2, queue.getMemoryDepth());
+        assertEquals(4, queue.getSpillDepth());
+        assertEquals(4, queue.getSpilledCount());
+
+        runTasks();
+        assertEquals(range(1, 6), handled);
+        assertEquals(0, queue.getSpillDepth());
+        assertEquals(0, queue.getDroppedCount());
+
+        // Drained spill: back to memory
+        queue.offer(message(7));
+        assertEquals(4, queue.getSpilledCount());
+        runTasks();
+        assertEquals(range(1, 7), handled);
+        queue.shutdown();
+    }
+
+    @Test
+    void fullSpillBlocksUntilItDrains() throws Exception {
+        MessageIngestQueue queue = queue(1, MessageIngestQueue.BackpressurePolicy.SPILL_TO_DISK,
+                2L * (SPILL_RECORD_HEADER_BYTES + 1));
+        for (int value = 1; value <= 3; value++) {
+            assertTrue(queue.offer(message(value)));
+        }
+        assertEquals(2, queue.getSpillDepth());
+
+        CompletableFuture<Boolean> blocked = CompletableFuture.supplyAsync(() -> queue.offer(message(4)));
+        Thread.sleep(300);
+        assertFalse(blocked.isDone());
+
+        runTasks();
+        assertTrue(blocked.get(5, TimeUnit.SECONDS));
+        runTasks();
+        assertEquals(range(1, 4), handled);
+        assertEquals(2, queue.getSpilledCount());
+        queue.shutdown();
+    }
+
+    @Test
+    void shutdownReleasesBlockedOffer() throws Exception {
+        MessageIngestQueue queue = queue(1, MessageIngestQueue.BackpressurePolicy.SPILL_TO_DISK,
+                SPILL_RECORD_HEADER_BYTES + 1);
+        queue.offer(message(1));
+        queue.offer(message(2));
+
+        CompletableFuture<Boolean> blocked = CompletableFuture.supplyAsync(() -> queue.offer(message(3)));
+        Thread.sleep(300);
+        assertFalse(blocked.isDone());
+
+        queue.shutdown();
+        assertFalse(blocked.get(5, TimeUnit.SECONDS));
+        assertEquals(1, queue.getDroppedCount());
+    }
+}
@@ -0,0 +1,166 @@
+package mc.sbm.OperaWebSocket.websocket;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OffsetDeduplicatorTest {
+
+    private static final long NO_CHECKPOINT = -1;
+
+    @Test
+    void windowIsRoundedUpToPowerOfTwo() {
+        assertEquals(64, new OffsetDeduplicator(1).getWindowSize());
+        assertEquals(128, new OffsetDeduplicator(100).getWindowSize());
+        assertEquals(128, new OffsetDeduplicator(128).getWindowSize());
+    }
+
+    @Test
+    void redeliveryWithinWindowIsDuplicate() {
+        OffsetDeduplicator deduplicator = new OffsetDeduplicator(128);
+        assertTrue(deduplicator.firstSeen(10, NO_CHECKPOINT));
+        assertTrue(deduplicator.firstSeen(12, NO_CHECKPOINT));
+        assertTrue(deduplicator.firstSeen(11, NO_CHECKPOINT));
+
+        assertFalse(deduplicator.firstSeen(10, NO_CHECKPOINT));
+        assertFalse(deduplicator.firstSeen(11, NO_CHECKPOINT));
+        assertFalse(deduplicator.firstSeen(12, NO_CHECKPOINT));
+        assertEquals(3, deduplicator.getUniqueCount());
+        assertEquals(3, deduplicator.getDuplicateCount());
+        assertEquals(0.5, deduplicator.getHitRatio());
+    }
+
+    @Test
+    void offsetsAtOrBelowCheckpointAreDuplicates() {
+        OffsetDeduplicator deduplicator = new OffsetDeduplicator(64);
+        assertFalse(deduplicator.firstSeen(5, 5));
+        assertFalse(deduplicator.firstSeen(3, 5));
+        assertTrue(deduplicator.firstSeen(6, 5));
+    }
+
+    @Test
+    void slideClearsOffsetsItPassesOver() {
+        OffsetDeduplicator deduplicator = new OffsetDeduplicator(64);
+        assertTrue(deduplicator.firstSeen(0, NO_CHECKPOINT));
+        assertTrue(deduplicator.firstSeen(70, NO_CHECKPOINT));
+
+        // 64 shares its bit with 0, which the slide left behind
+        assertTrue(deduplicator.firstSeen(64, NO_CHECKPOINT));
+        assertFalse(deduplicator.firstSeen(64, NO_CHECKPOINT));
+        assertFalse(deduplicator.firstSeen(70, NO_CHECKPOINT));
+    }
+
+    @Test
+    void slideAcrossWholeWordsClearsThem() {
+        OffsetDeduplicator deduplicator = new OffsetDeduplicator(256);
+        for (long offset = 0; offset < 256; offset++) {
+            assertTrue(deduplicator.firstSeen(offset, NO_CHECKPOINT));
+        }
+        // Clears bits 0-199: three whole words, then part of the fourth
+        assertTrue(deduplicator.firstSeen(255 + 200, NO_CHECKPOINT));
+        for (long offset = 256; offset < 455; offset++) {
+            assertTrue(deduplicator.firstSeen(offset, NO_CHECKPOINT), "offset " + offset);
+        }
+        for (long offset = 200; offset < 256; offset++) {
+            assertFalse(deduplicator.firstSeen(offset, NO_CHECKPOINT), "offset " + offset);
+        }
+    }
+
+    @Test
+    void jumpOfAtLeastWindowSizeClearsEverything() {
+        OffsetDeduplicator deduplicator = new OffsetDeduplicator(64);
+        for (long offset = 0; offset < 64; offset++) {
+            deduplicator.firstSeen(offset, NO_CHECKPOINT);
+        }
+        assertTrue(deduplicator.firstSeen(63 + 64, NO_CHECKPOINT));
+        for (long offset = 64; offset < 127; offset++) {
+            assertTrue(deduplicator.firstSeen(offset, NO_CHECKPOINT), "offset " + offset);
+        }
+
+        assertTrue(deduplicator.firstSeen(10_000, NO_CHECKPOINT));
+        assertTrue(deduplicator.firstSeen(10_000 - 1, NO_CHECKPOINT));
+        assertFalse(deduplicator.firstSeen(10_000, NO_CHECKPOINT));
+    }
+
+    @Test
+    void offsetsThatLeftTheWindowAreLetThrough() {
+        OffsetDeduplicator deduplicator = new OffsetDeduplicator(64);
+        assertTrue(deduplicator.firstSeen(1, NO_CHECKPOINT));
+        assertTrue(deduplicator.firstSeen(100, NO_CHECKPOINT));
+
+        // Below highest - windowSize: undecidable, so published again rather than lost
+        assertTrue(deduplicator.firstSeen(1, NO_CHECKPOINT));
+        assertTrue(deduplicator.firstSeen(36, NO_CHECKPOINT));
+        assertTrue(deduplicator.firstSeen(36, NO_CHECKPOINT));
+        // The oldest offset still in the window is remembered
+        assertTrue(deduplicator.firstSeen(37, NO_CHECKPOINT));
+        assertFalse(deduplicator.firstSeen(37, NO_CHECKPOINT));
+    }
+
+    @Test
+    void forgottenOffsetIsAcceptedOnRedelivery() {
+        OffsetDeduplicator deduplicator = new OffsetDeduplicator(64);
+        assertTrue(deduplicator.firstSeen(5, NO_CHECKPOINT));
+        assertTrue(deduplicator.firstSeen(6, NO_CHECKPOINT));
+
+        deduplicator.forget(5);
+        assertTrue(deduplicator.firstSeen(5, NO_CHECKPOINT));
+        assertFalse(deduplicator.firstSeen(5, NO_CHECKPOINT));
+        assertFalse(deduplicator.firstSeen(6, NO_CHECKPOINT));
+    }
+
+    @Test
+    void forgetOutsideWindowChangesNothing() {
+        OffsetDeduplicator deduplicator = new OffsetDeduplicator(64);
+        deduplicator.firstSeen(200, NO_CHECKPOINT);
+        deduplicator.firstSeen(137, NO_CHECKPOINT);
+
+        // 73 maps to the same bit as 137 but left the window
+        deduplicator.forget(73);
+        deduplicator.forget(300);
+        assertFalse(deduplicator.firstSeen(137, NO_CHECKPOINT));
+        assertFalse(deduplicator.firstSeen(200, NO_CHECKPOINT));
+    }
+
+    @Test
+    void matchesExactSetWithinWindow() {
+        int windowSize = 128;
+        OffsetDeduplicator deduplicator = new OffsetDeduplicator(windowSize);
+        Set<Long> seen = new HashSet<>();
+        long highest = -1;
+        Random random = new Random(42);
+        long base = 0;
+
+        for (int i = 0; i < 50_000; i++) {
+            int step = random.nextInt(10);
+            if (step == 0) {
+                base += random.nextInt(3 * windowSize);
+            }
+            long offset = Math.max(0, base + random.nextInt(windowSize) - windowSize / 2);
+
+            if (random.nextInt(20) == 0) {
+                deduplicator.forget(offset);
+                if (offset <= highest && offset > highest - windowSize) {
+                    seen.remove(offset);
+                }
+                continue;
+            }
+
+            boolean expected;
+            if (offset > highest) {
+                expected = true;
+                highest = offset;
+            } else {
+                expected = offset <= highest - windowSize || !seen.contains(offset);
+            }
+            seen.add(offset);
+            assertEquals(expected, deduplicator.firstSeen(offset, NO_CHECKPOINT), "offset " + offset + " at " + i);
+        }
+    }
+}
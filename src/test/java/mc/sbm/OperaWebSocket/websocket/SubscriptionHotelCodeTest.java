@@ -0,0 +1,64 @@
+package mc.sbm.OperaWebSocket.websocket;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import mc.sbm.OperaWebSocket.config.OracleHospitalityConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SubscriptionHotelCodeTest {
+
+    private static OracleHospitalityConfig.FilterConfig hotels(String... hotels) {
+        OracleHospitalityConfig.FilterConfig filter = new OracleHospitalityConfig.FilterConfig();
+        filter.setIncludeHotels(List.of(hotels));
+        return filter;
+    }
+
+    private static OracleEventMessageProcessor processor(OracleHospitalityConfig config) {
+        return new OracleEventMessageProcessor(new ObjectMapper(), config, null, null, null, null, null, null, null);
+    }
+
+    @Test
+    void topLevelHotelIsSentForSingleChain() {
+        OracleHospitalityConfig config = new OracleHospitalityConfig();
+        config.setChainCode("CHAIN1");
+        config.setFilter(hotels("HOTEL1"));
+
+        assertEquals("HOTEL1", processor(config).getSubscriptionHotelCode("CHAIN1"));
+    }
+
+    @Test
+    void topLevelHotelIsNotSentToSeveralChains() {
+        OracleHospitalityConfig config = new OracleHospitalityConfig();
+        config.setChains(List.of(new OracleHospitalityConfig.ChainConfig("CHAIN1"),
+                new OracleHospitalityConfig.ChainConfig("CHAIN2")));
+        config.setFilter(hotels("HOTEL1"));
+        OracleEventMessageProcessor processor = processor(config);
+
+        assertNull(processor.getSubscriptionHotelCode("CHAIN1"));
+        assertNull(processor.getSubscriptionHotelCode("CHAIN2"));
+        // Still applied locally
+        assertFalse(processor.getEventFilter("CHAIN2").accepts("RESERVATION", "CHECK IN", "HOTEL2"));
+    }
+
+    @Test
+    void chainFilterReplacesTopLevelFilter() {
+        OracleHospitalityConfig.ChainConfig second = new OracleHospitalityConfig.ChainConfig("CHAIN2");
+        second.setFilter(hotels("HOTEL2"));
+        OracleHospitalityConfig config = new OracleHospitalityConfig();
+        config.setChains(List.of(new OracleHospitalityConfig.ChainConfig("CHAIN1"), second));
+        config.setFilter(hotels("HOTEL1"));
+        OracleEventMessageProcessor processor = processor(config);
+
+        assertNull(processor.getSubscriptionHotelCode("CHAIN1"));
+        assertEquals("HOTEL2", processor.getSubscriptionHotelCode("CHAIN2"));
+        assertTrue(processor.getEventFilter("CHAIN2").accepts("RESERVATION", "CHECK IN", "HOTEL2"));
+        assertFalse(processor.getEventFilter("CHAIN2").accepts("RESERVATION", "CHECK IN", "HOTEL1"));
+        assertTrue(processor.getEventFilter("CHAIN1").accepts("RESERVATION", "CHECK IN", "HOTEL1"));
+    }
+}